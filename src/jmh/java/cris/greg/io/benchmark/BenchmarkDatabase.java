@@ -0,0 +1,107 @@
+package cris.greg.io.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * JDBC access for the benchmarks. Defaults to an in-memory H2 database in PostgreSQL mode;
+ * point it at a scratch Postgres with -Dbench.jdbc.url, -Dbench.jdbc.user and -Dbench.jdbc.password.
+ * Tables are created in their own schema so a shared database is never touched.
+ */
+final class BenchmarkDatabase {
+
+    static final String SCHEMA = "device_bench";
+
+    private static final String URL = System.getProperty("bench.jdbc.url",
+            "jdbc:h2:mem:devices;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+    private static final String USER = System.getProperty("bench.jdbc.user", "sa");
+    private static final String PASSWORD = System.getProperty("bench.jdbc.password", "");
+
+    private BenchmarkDatabase() {
+    }
+
+    static String url() {
+        return URL;
+    }
+
+    static String user() {
+        return USER;
+    }
+
+    static String password() {
+        return PASSWORD;
+    }
+
+    /**
+     * True when bench.jdbc.url points at PostgreSQL rather than the H2 default.
+     */
+    static boolean isPostgres() {
+        return URL.startsWith("jdbc:postgresql:");
+    }
+
+    /**
+     * Opens a connection with the benchmark schema selected.
+     */
+    static Connection connect() throws SQLException {
+        Connection connection = DriverManager.getConnection(URL, USER, PASSWORD);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE SCHEMA IF NOT EXISTS " + SCHEMA);
+        }
+        connection.setSchema(SCHEMA);
+        return connection;
+    }
+
+    /**
+     * Runs a Flyway migration script from the application classpath, statement by statement.
+     *
+     * @param connection the connection to run it on
+     * @param script the file name under db/migration
+     */
+    static void migrate(Connection connection, String script) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            for (String sql : read("db/migration/" + script).split(";")) {
+                String trimmed = stripComments(sql);
+                if (!trimmed.isEmpty()) {
+                    statement.execute(trimmed);
+                }
+            }
+        }
+    }
+
+    /**
+     * Refreshes planner statistics after a bulk load; H2 and Postgres spell it differently.
+     */
+    static void analyze(Connection connection, String table) throws SQLException {
+        boolean h2 = connection.getMetaData().getDatabaseProductName().startsWith("H2");
+        try (Statement statement = connection.createStatement()) {
+            statement.execute((h2 ? "ANALYZE TABLE " : "ANALYZE ") + table);
+        }
+    }
+
+    private static String read(String resource) {
+        try (InputStream in = BenchmarkDatabase.class.getClassLoader().getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IllegalStateException("Migration not found: " + resource);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String stripComments(String sql) {
+        StringBuilder result = new StringBuilder();
+        for (String line : sql.split("\n")) {
+            if (!line.trim().startsWith("--")) {
+                result.append(line).append('\n');
+            }
+        }
+        return result.toString().trim();
+    }
+}
@@ -0,0 +1,102 @@
+package cris.greg.io.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.github.luben.zstd.ZstdOutputStream;
+import cris.greg.io.model.Device;
+import cris.greg.io.model.DeviceState;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Size and serialization time of a large device list in each response format, uncompressed and with each
+ * Content-Encoding the server offers. The score is the time to write one response; its size is printed before
+ * each trial as "Payload: n bytes". Mappers come from Jackson2ObjectMapperBuilder like those of the controllers,
+ * gzip uses the default level like Tomcat and Netty, and zstd level 3 like ZstdCompressionFilter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class DeviceFormatBenchmark {
+
+    public enum Format { JSON, SMILE, CBOR }
+
+    public enum Encoding { IDENTITY, GZIP, ZSTD }
+
+    @Param({"10000", "100000"})
+    private int devices;
+
+    @Param
+    private Format format;
+
+    @Param
+    private Encoding encoding;
+
+    private ObjectWriter listWriter;
+    private List<Device> list;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        ObjectMapper objectMapper;
+        switch (format) {
+            case SMILE:
+                objectMapper = Jackson2ObjectMapperBuilder.smile().build();
+                break;
+            case CBOR:
+                objectMapper = Jackson2ObjectMapperBuilder.cbor().build();
+                break;
+            default:
+                objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        }
+        listWriter = objectMapper.writerFor(objectMapper.getTypeFactory().constructCollectionType(List.class, Device.class));
+        list = new ArrayList<>(devices);
+        for (int i = 0; i < devices; i++) {
+            list.add(device(i));
+        }
+        System.out.printf("Payload: %d bytes%n", write().length);
+    }
+
+    @Benchmark
+    public byte[] write() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(devices * 64);
+        try (OutputStream out = encode(bytes)) {
+            listWriter.writeValue(out, list);
+        }
+        return bytes.toByteArray();
+    }
+
+    private OutputStream encode(OutputStream out) throws IOException {
+        switch (encoding) {
+            case GZIP:
+                return new GZIPOutputStream(out, 8192);
+            case ZSTD:
+                return new ZstdOutputStream(out, 3);
+            default:
+                return out;
+        }
+    }
+
+    private static Device device(int i) {
+        return Device.builder()
+                .id(UUID.randomUUID())
+                .name("device-" + i)
+                .brand("brand-" + (i % 50))
+                .state(DeviceState.values()[i % DeviceState.values().length])
+                .creationTime(LocalDateTime.now().minusMinutes(i))
+                .version((long) i)
+                .build();
+    }
+}
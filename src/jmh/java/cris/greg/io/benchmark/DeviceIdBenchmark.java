@@ -0,0 +1,108 @@
+package cris.greg.io.benchmark;
+
+import cris.greg.io.service.DeviceIdGenerator;
+import cris.greg.io.service.RandomDeviceIdGenerator;
+import cris.greg.io.service.TimeOrderedDeviceIdGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Insert throughput into a devices table that already holds millions of rows, with random (v4) and
+ * time-ordered (v7) ids. The score is rows inserted per second, in JDBC batches of one transaction each.
+ * The primary-key index size is printed after loading and again after the run as "Primary key: n bytes for m
+ * rows"; it is only known on PostgreSQL, where the difference also shows as buffer cache misses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class DeviceIdBenchmark {
+
+    public enum Generator { RANDOM, TIME_ORDERED }
+
+    private static final int BATCH = 1000;
+    private static final int BRANDS = 200;
+    private static final String[] STATES = {"AVAILABLE", "IN_USE", "INACTIVE"};
+    private static final String INSERT = "INSERT INTO devices (id, name, brand, state, creation_time) VALUES (?, ?, ?, ?, ?)";
+
+    @Param({"1000000", "5000000"})
+    private int rows;
+
+    @Param
+    private Generator generator;
+
+    private DeviceIdGenerator ids;
+    private Connection connection;
+    private PreparedStatement insert;
+    private int inserted;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        ids = generator == Generator.RANDOM ? new RandomDeviceIdGenerator() : new TimeOrderedDeviceIdGenerator();
+        connection = BenchmarkDatabase.connect();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS devices");
+        }
+        BenchmarkDatabase.migrate(connection, "V1__create_devices_table.sql");
+        connection.setAutoCommit(false);
+        insert = connection.prepareStatement(INSERT);
+        long start = System.nanoTime();
+        while (inserted < rows) {
+            insertBatch();
+        }
+        System.out.printf("Loaded %d rows in %d ms%n", inserted, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        printIndexSize();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        printIndexSize();
+        insert.close();
+        connection.setAutoCommit(true);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS devices");
+        }
+        connection.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void insertBatch() throws SQLException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        for (int i = 0; i < BATCH; i++) {
+            insert.setObject(1, ids.next());
+            insert.setString(2, "device-" + (inserted + i));
+            insert.setString(3, "brand-" + random.nextInt(BRANDS));
+            insert.setString(4, STATES[random.nextInt(STATES.length)]);
+            insert.setTimestamp(5, now);
+            insert.addBatch();
+        }
+        insert.executeBatch();
+        connection.commit();
+        inserted += BATCH;
+    }
+
+    private void printIndexSize() throws SQLException {
+        if (!BenchmarkDatabase.isPostgres()) {
+            return;
+        }
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT pg_relation_size('devices_pkey')")) {
+            resultSet.next();
+            System.out.printf("Primary key: %d bytes for %d rows%n", resultSet.getLong(1), inserted);
+        }
+        connection.commit();
+    }
+}
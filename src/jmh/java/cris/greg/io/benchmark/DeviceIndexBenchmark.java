@@ -0,0 +1,132 @@
+package cris.greg.io.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of the dashboard lookups (first keyset page by brand, by state and by both) with and without
+ * the indexes from V2__add_device_indexes.sql. Loading 10M rows into in-memory H2 needs several GB of heap;
+ * run that size against Postgres or with a larger -Xmx in jvmArgsAppend.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class DeviceIndexBenchmark {
+
+    private static final int BRANDS = 200;
+    private static final int PAGE_SIZE = 100;
+    private static final int LOAD_BATCH = 10_000;
+    private static final String[] STATES = {"AVAILABLE", "IN_USE", "INACTIVE"};
+    private static final String COLUMNS = "SELECT id, name, brand, state, creation_time FROM devices ";
+    private static final String PAGE = " ORDER BY creation_time, id LIMIT " + (PAGE_SIZE + 1);
+
+    @Param({"1000000", "10000000"})
+    private int rows;
+
+    @Param({"false", "true"})
+    private boolean indexed;
+
+    private Connection connection;
+    private PreparedStatement byBrand;
+    private PreparedStatement byState;
+    private PreparedStatement byBrandAndState;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        connection = BenchmarkDatabase.connect();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS devices");
+        }
+        BenchmarkDatabase.migrate(connection, "V1__create_devices_table.sql");
+        load();
+        if (indexed) {
+            BenchmarkDatabase.migrate(connection, "V2__add_device_indexes.sql");
+        }
+        BenchmarkDatabase.analyze(connection, "devices");
+        byBrand = connection.prepareStatement(COLUMNS + "WHERE brand = ?" + PAGE);
+        byState = connection.prepareStatement(COLUMNS + "WHERE state = ?" + PAGE);
+        byBrandAndState = connection.prepareStatement(COLUMNS + "WHERE brand = ? AND state = ?" + PAGE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS devices");
+        }
+        connection.close();
+    }
+
+    @Benchmark
+    public void firstPageByBrand(Blackhole blackhole) throws SQLException {
+        byBrand.setString(1, randomBrand());
+        consume(byBrand, blackhole);
+    }
+
+    @Benchmark
+    public void firstPageByState(Blackhole blackhole) throws SQLException {
+        byState.setString(1, randomState());
+        consume(byState, blackhole);
+    }
+
+    @Benchmark
+    public void firstPageByBrandAndState(Blackhole blackhole) throws SQLException {
+        byBrandAndState.setString(1, randomBrand());
+        byBrandAndState.setString(2, randomState());
+        consume(byBrandAndState, blackhole);
+    }
+
+    private void load() throws SQLException {
+        connection.setAutoCommit(false);
+        LocalDateTime start = LocalDateTime.now().minusDays(365);
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO devices (id, name, brand, state, creation_time) VALUES (?, ?, ?, ?, ?)")) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < rows; i++) {
+                insert.setObject(1, UUID.randomUUID());
+                insert.setString(2, "device-" + i);
+                insert.setString(3, "brand-" + random.nextInt(BRANDS));
+                insert.setString(4, STATES[random.nextInt(STATES.length)]);
+                insert.setTimestamp(5, Timestamp.valueOf(start.plusSeconds(i)));
+                insert.addBatch();
+                if ((i + 1) % LOAD_BATCH == 0) {
+                    insert.executeBatch();
+                    connection.commit();
+                }
+            }
+            insert.executeBatch();
+            connection.commit();
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    private static void consume(PreparedStatement query, Blackhole blackhole) throws SQLException {
+        try (ResultSet resultSet = query.executeQuery()) {
+            while (resultSet.next()) {
+                blackhole.consume(resultSet.getObject(1));
+            }
+        }
+    }
+
+    private static String randomBrand() {
+        return "brand-" + ThreadLocalRandom.current().nextInt(BRANDS);
+    }
+
+    private static String randomState() {
+        return STATES[ThreadLocalRandom.current().nextInt(STATES.length)];
+    }
+}
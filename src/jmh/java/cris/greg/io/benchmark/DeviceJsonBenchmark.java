@@ -0,0 +1,80 @@
+package cris.greg.io.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import cris.greg.io.model.Device;
+import cris.greg.io.model.DeviceState;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson cost of the response bodies: one device, a page of devices and reading a request body.
+ * The ObjectMapper comes from Jackson2ObjectMapperBuilder, which is what Spring Boot configures for the controllers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DeviceJsonBenchmark {
+
+    @Param({"100", "1000"})
+    private int pageSize;
+
+    private ObjectWriter deviceWriter;
+    private ObjectWriter listWriter;
+    private ObjectReader deviceReader;
+    private Device device;
+    private List<Device> page;
+    private byte[] requestBody;
+
+    @Setup(Level.Trial)
+    public void setUp() throws JsonProcessingException {
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        deviceWriter = objectMapper.writerFor(Device.class);
+        listWriter = objectMapper.writerFor(objectMapper.getTypeFactory().constructCollectionType(List.class, Device.class));
+        deviceReader = objectMapper.readerFor(Device.class);
+        device = device(0);
+        page = new ArrayList<>(pageSize);
+        for (int i = 0; i < pageSize; i++) {
+            page.add(device(i));
+        }
+        requestBody = objectMapper.writeValueAsBytes(device);
+    }
+
+    @Benchmark
+    public byte[] writeDevice() throws JsonProcessingException {
+        return deviceWriter.writeValueAsBytes(device);
+    }
+
+    @Benchmark
+    public byte[] writePage() throws JsonProcessingException {
+        return listWriter.writeValueAsBytes(page);
+    }
+
+    @Benchmark
+    public Device readDevice() throws IOException {
+        return deviceReader.readValue(requestBody);
+    }
+
+    private static Device device(int i) {
+        return Device.builder()
+                .id(UUID.randomUUID())
+                .name("device-" + i)
+                .brand("brand-" + (i % 50))
+                .state(DeviceState.values()[i % DeviceState.values().length])
+                .creationTime(LocalDateTime.now().minusMinutes(i))
+                .version((long) i)
+                .build();
+    }
+}
@@ -0,0 +1,174 @@
+package cris.greg.io.benchmark;
+
+import cris.greg.io.DeviceManagementApiApplication;
+import cris.greg.io.model.Device;
+import cris.greg.io.model.DeviceState;
+import cris.greg.io.service.DeviceBatchService;
+import cris.greg.io.service.DeviceService;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end cost of the DeviceService CRUD paths: executor hand-off, cache, repository and a real PostgreSQL.
+ * The single-device mutations use Postgres-only SQL, so this benchmark starts an embedded PostgreSQL unless
+ * bench.jdbc.url already points at one. Application logging is set to WARN so only the code paths are measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DeviceServiceBenchmark {
+
+    private static final int SEEDED = 10_000;
+    private static final int BRANDS = 50;
+    private static final int PAGE_SIZE = 100;
+    private static final String CREATED_BRAND = "bench-created";
+
+    @Param({"true", "false"})
+    private boolean cache;
+
+    private EmbeddedPostgres embedded;
+    private ConfigurableApplicationContext context;
+    private DeviceService deviceService;
+    private JdbcTemplate jdbcTemplate;
+    private final List<UUID> ids = new ArrayList<>(SEEDED);
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        String url = BenchmarkDatabase.url();
+        String user = BenchmarkDatabase.user();
+        String password = BenchmarkDatabase.password();
+        if (!BenchmarkDatabase.isPostgres()) {
+            embedded = EmbeddedPostgres.start();
+            url = embedded.getJdbcUrl("postgres", "postgres");
+            user = "postgres";
+            password = "";
+        }
+        try (Connection connection = DriverManager.getConnection(url, user, password);
+             Statement statement = connection.createStatement()) {
+            statement.execute("DROP SCHEMA IF EXISTS " + BenchmarkDatabase.SCHEMA + " CASCADE");
+        }
+        context = new SpringApplicationBuilder(DeviceManagementApiApplication.class)
+                .web(WebApplicationType.NONE)
+                .logStartupInfo(false)
+                .run(
+                        "--spring.datasource.url=" + url,
+                        "--spring.datasource.username=" + user,
+                        "--spring.datasource.password=" + password,
+                        "--spring.datasource.hikari.schema=" + BenchmarkDatabase.SCHEMA,
+                        "--spring.flyway.schemas=" + BenchmarkDatabase.SCHEMA,
+                        "--spring.flyway.default-schema=" + BenchmarkDatabase.SCHEMA,
+                        "--spring.jpa.show-sql=false",
+                        "--spring.jmx.enabled=false",
+                        "--logging.level.root=WARN",
+                        "--device.cache.enabled=" + cache);
+        deviceService = context.getBean(DeviceService.class);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+        seed(context.getBean(DeviceBatchService.class));
+        if (cache) {
+            ids.forEach(id -> deviceService.getDeviceById(id).join());
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void removeCreated() {
+        jdbcTemplate.update("DELETE FROM devices WHERE brand = ?", CREATED_BRAND);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        jdbcTemplate.execute("DROP SCHEMA IF EXISTS " + BenchmarkDatabase.SCHEMA + " CASCADE");
+        context.close();
+        if (embedded != null) {
+            embedded.close();
+        }
+    }
+
+    @Benchmark
+    public Device getDeviceById() {
+        return deviceService.getDeviceById(randomId()).join();
+    }
+
+    @Benchmark
+    public Object getFirstPage() {
+        return deviceService.getAllDevices(null, null, PAGE_SIZE).join();
+    }
+
+    @Benchmark
+    public Object getFirstPageByBrand() {
+        return deviceService.getDevicesByBrand(randomBrand(), null, null, PAGE_SIZE).join();
+    }
+
+    @Benchmark
+    public Device createDevice() {
+        return deviceService.saveDevice(newDevice(CREATED_BRAND)).join();
+    }
+
+    @Benchmark
+    public Device updateDevice() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Device changes = Device.builder()
+                .name("renamed-" + random.nextInt(1000))
+                .brand(randomBrand())
+                .state(DeviceState.AVAILABLE)
+                .build();
+        return deviceService.updateDevice(randomId(), changes, null).join();
+    }
+
+    @Benchmark
+    public Device updateDeviceState() {
+        DeviceState state = ThreadLocalRandom.current().nextBoolean() ? DeviceState.AVAILABLE : DeviceState.INACTIVE;
+        return deviceService.updateDeviceState(randomId(), state, null).join();
+    }
+
+    @Benchmark
+    public void createAndDeleteDevice() {
+        Device device = deviceService.saveDevice(newDevice(CREATED_BRAND)).join();
+        deviceService.deleteDevice(device.getId(), null).join();
+    }
+
+    /**
+     * Seeds devices that are never IN_USE, so updates always pass the IN_USE rule. With the cache enabled
+     * every seeded device is read once, so getDeviceById measures hits rather than the cold start.
+     */
+    private void seed(DeviceBatchService batchService) {
+        List<Device> devices = new ArrayList<>(SEEDED);
+        for (int i = 0; i < SEEDED; i++) {
+            devices.add(newDevice(randomBrand()));
+        }
+        batchService.createDevices(devices).join().forEach(result -> ids.add(result.getId()));
+    }
+
+    private static Device newDevice(String brand) {
+        return Device.builder()
+                .name("device-" + ThreadLocalRandom.current().nextInt(1_000_000))
+                .brand(brand)
+                .state(DeviceState.AVAILABLE)
+                .build();
+    }
+
+    private UUID randomId() {
+        return ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+    }
+
+    private static String randomBrand() {
+        return "brand-" + ThreadLocalRandom.current().nextInt(BRANDS);
+    }
+}
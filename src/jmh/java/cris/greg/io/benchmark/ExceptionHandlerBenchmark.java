@@ -0,0 +1,71 @@
+package cris.greg.io.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import cris.greg.io.config.DeviceProperties;
+import cris.greg.io.exception.DeviceValidationException;
+import cris.greg.io.exception.GlobalExceptionHandler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of an error response: throwing a DeviceValidationException, which captures no stack trace, and getting
+ * the GlobalExceptionHandler's serialized problem body. createStackTraceException is the cost of an exception
+ * that does capture one, for comparison. The "reused" variants take a pre-built exception, so the difference
+ * to "thrown" is the exception construction alone.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExceptionHandlerBenchmark {
+
+    private GlobalExceptionHandler handler;
+    private DeviceValidationException notFound;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        handler = new GlobalExceptionHandler(new DeviceProperties(), new SimpleMeterRegistry(), objectMapper);
+        notFound = new DeviceValidationException("Device not found", HttpStatus.NOT_FOUND);
+    }
+
+    @Benchmark
+    public DeviceValidationException createException() {
+        return new DeviceValidationException("Device not found", HttpStatus.NOT_FOUND);
+    }
+
+    @Benchmark
+    public RuntimeException createStackTraceException() {
+        return new RuntimeException("Device not found");
+    }
+
+    @Benchmark
+    public ResponseEntity<Object> handleReused() {
+        return handler.handleDeviceValidationException(notFound);
+    }
+
+    @Benchmark
+    public ResponseEntity<Object> handleThrown() {
+        try {
+            throw new DeviceValidationException("Device not found", HttpStatus.NOT_FOUND);
+        } catch (DeviceValidationException e) {
+            return handler.handleDeviceValidationException(e);
+        }
+    }
+
+    @Benchmark
+    public byte[] handleThrownAndWrite() {
+        try {
+            throw new DeviceValidationException("Device not found", HttpStatus.NOT_FOUND);
+        } catch (DeviceValidationException e) {
+            return (byte[]) handler.handleDeviceValidationException(e).getBody();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package cris.greg.io.benchmark;
+
+import cris.greg.io.config.DeviceProperties;
+import cris.greg.io.service.DeviceTaskExecutor;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hand-off overhead of the service pattern CompletableFuture.supplyAsync(task, executor).join() with a
+ * trivial task, against calling the task directly and against the common pool. The contended variant
+ * runs more callers than the executor has permits, so queueing on the semaphore shows up.
+ * VIRTUAL falls back to a platform pool on runtimes older than Java 21.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExecutorBenchmark {
+
+    @Param({"PLATFORM", "VIRTUAL"})
+    private DeviceProperties.ExecutorType type;
+
+    private DeviceTaskExecutor executor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        DeviceProperties.Executor settings = new DeviceProperties().getExecutor();
+        settings.setType(type);
+        executor = DeviceTaskExecutor.create(settings);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        executor.destroy();
+    }
+
+    @Benchmark
+    public Integer direct() {
+        return task();
+    }
+
+    @Benchmark
+    public Integer commonPool() {
+        return CompletableFuture.supplyAsync(ExecutorBenchmark::task).join();
+    }
+
+    @Benchmark
+    public Integer deviceExecutor() {
+        return CompletableFuture.supplyAsync(ExecutorBenchmark::task, executor).join();
+    }
+
+    @Benchmark
+    @Threads(32)
+    public Integer deviceExecutorContended() {
+        return CompletableFuture.supplyAsync(ExecutorBenchmark::task, executor).join();
+    }
+
+    private static Integer task() {
+        return 42;
+    }
+}
@@ -0,0 +1,133 @@
+package cris.greg.io.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histograms (microseconds, from the intended start of each request) and status counts per
+ * request name, plus the totals. Status 0 stands for a request that failed without a response.
+ * Recording is thread-safe; {@link #reset()} discards the warmup.
+ */
+final class LoadReport {
+
+    private static final String TOTAL = "TOTAL";
+
+    private final ConcurrentMap<String, Operation> operations = new ConcurrentHashMap<>();
+
+    void record(String name, int status, long latencyMicros) {
+        operation(name).record(status, latencyMicros);
+        operation(TOTAL).record(status, latencyMicros);
+    }
+
+    void skipped(String name) {
+        operation(name).skipped.increment();
+        operation(TOTAL).skipped.increment();
+    }
+
+    void reset() {
+        operations.clear();
+    }
+
+    void print(PrintStream out, double elapsedSeconds) {
+        out.printf("%-28s %9s %9s %8s %10s %10s %10s %10s %8s%n",
+                "request", "count", "req/s", "errors", "p50 ms", "p99 ms", "p999 ms", "max ms", "skipped");
+        for (Map.Entry<String, Operation> entry : sorted().entrySet()) {
+            Histogram histogram = entry.getValue().histogram();
+            Operation operation = entry.getValue();
+            out.printf("%-28s %9d %9.1f %8d %10.2f %10.2f %10.2f %10.2f %8d%n",
+                    entry.getKey(), histogram.getTotalCount(), histogram.getTotalCount() / elapsedSeconds,
+                    operation.errors(), millis(histogram, 50), millis(histogram, 99), millis(histogram, 99.9),
+                    histogram.getMaxValue() / 1000.0, operation.skipped.sum());
+        }
+    }
+
+    void write(Path file, String scenario, double rate, double elapsedSeconds, ObjectMapper objectMapper) throws IOException {
+        ObjectNode root = objectMapper.createObjectNode();
+        root.put("scenario", scenario);
+        root.put("targetRate", rate);
+        root.put("elapsedSeconds", elapsedSeconds);
+        ArrayNode results = root.putArray("results");
+        for (Map.Entry<String, Operation> entry : sorted().entrySet()) {
+            Histogram histogram = entry.getValue().histogram();
+            ObjectNode result = results.addObject();
+            result.put("request", entry.getKey());
+            result.put("count", histogram.getTotalCount());
+            result.put("throughput", histogram.getTotalCount() / elapsedSeconds);
+            result.put("skipped", entry.getValue().skipped.sum());
+            ObjectNode statuses = result.putObject("statuses");
+            new TreeMap<>(entry.getValue().statuses).forEach((status, count) -> statuses.put(String.valueOf(status), count.sum()));
+            ObjectNode latency = result.putObject("latencyMillis");
+            latency.put("p50", millis(histogram, 50));
+            latency.put("p90", millis(histogram, 90));
+            latency.put("p99", millis(histogram, 99));
+            latency.put("p999", millis(histogram, 99.9));
+            latency.put("max", histogram.getMaxValue() / 1000.0);
+        }
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(file.toFile(), root);
+    }
+
+    private Operation operation(String name) {
+        return operations.computeIfAbsent(name, key -> new Operation());
+    }
+
+    private Map<String, Operation> sorted() {
+        Map<String, Operation> sorted = new TreeMap<>((a, b) -> a.equals(TOTAL) ? 1 : b.equals(TOTAL) ? -1 : a.compareTo(b));
+        sorted.putAll(operations);
+        return sorted;
+    }
+
+    private static double millis(Histogram histogram, double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    private static final class Operation {
+
+        private final Recorder recorder = new Recorder(3);
+        private final ConcurrentMap<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+        private final LongAdder skipped = new LongAdder();
+        private Histogram histogram;
+
+        void record(int status, long latencyMicros) {
+            recorder.recordValue(Math.max(latencyMicros, 1));
+            statuses.computeIfAbsent(status, key -> new LongAdder()).increment();
+        }
+
+        /**
+         * Takes the histogram once; call only after recording has stopped.
+         */
+        synchronized Histogram histogram() {
+            if (histogram == null) {
+                histogram = recorder.getIntervalHistogram();
+            }
+            return histogram;
+        }
+
+        /**
+         * Server errors and failed exchanges (status 0). Rule rejections such as 404 and 406 are part of the
+         * mix and only show up in the per-status counts.
+         */
+        long errors() {
+            long errors = 0;
+            for (Map.Entry<Integer, LongAdder> entry : statuses.entrySet()) {
+                if (entry.getKey() == 0 || entry.getKey() >= 500) {
+                    errors += entry.getValue().sum();
+                }
+            }
+            return errors;
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package cris.greg.io.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import cris.greg.io.DeviceManagementApiApplication;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop HTTP load generator. Requests are sent at a fixed rate whatever the response times are, and
+ * latency is measured from the moment each request was due, so a slow server shows up as latency rather
+ * than as a lower request rate (no coordinated omission).
+ * <p>
+ * Without --target the application is started in this JVM against an embedded PostgreSQL, or against
+ * --jdbc-url when given; with --target an already running instance is loaded. --profile=reactive starts the
+ * WebFlux and R2DBC stack instead of the servlet one. Options are --key=value: scenario, rate, duration,
+ * warmup (seconds), seed, brands, target, profile, jdbc-url, jdbc-user, jdbc-password, max-in-flight and out.
+ */
+public final class LoadTest {
+
+    private static final String SCHEMA = "device_loadtest";
+    private static final int SEED_CHUNK = 1000;
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    private final LoadReport report = new LoadReport();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Map<String, String> options;
+    private final String baseUrl;
+    private Placeholders placeholders;
+
+    private LoadTest(Map<String, String> options, String baseUrl) {
+        this.options = options;
+        this.baseUrl = baseUrl;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        EmbeddedPostgres embedded = null;
+        ConfigurableApplicationContext context = null;
+        String target = options.get("target");
+        try {
+            if (target == null) {
+                String url = options.get("jdbc-url");
+                String user = options.getOrDefault("jdbc-user", "postgres");
+                String password = options.getOrDefault("jdbc-password", "");
+                if (url == null) {
+                    embedded = EmbeddedPostgres.start();
+                    url = embedded.getJdbcUrl("postgres", "postgres");
+                }
+                context = startApplication(url, user, password, options.get("profile"));
+                target = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+            }
+            new LoadTest(options, target).run();
+        } finally {
+            if (context != null) {
+                context.close();
+            }
+            if (embedded != null) {
+                embedded.close();
+            }
+        }
+    }
+
+    private void run() throws IOException, InterruptedException {
+        Scenario scenario = Scenario.load(options.getOrDefault("scenario", "read-heavy"), objectMapper);
+        double rate = Double.parseDouble(options.getOrDefault("rate", "200"));
+        long warmup = Long.parseLong(options.getOrDefault("warmup", "10"));
+        long duration = Long.parseLong(options.getOrDefault("duration", "60"));
+        int brands = Integer.parseInt(options.getOrDefault("brands", "50"));
+        placeholders = new Placeholders(seed(Integer.parseInt(options.getOrDefault("seed", "10000")), brands), brands);
+
+        System.out.printf("Scenario %s against %s at %.0f req/s: %ds warmup, %ds measured%n",
+                scenario.name(), baseUrl, rate, warmup, duration);
+        drive(scenario, rate, TimeUnit.SECONDS.toNanos(warmup));
+        report.reset();
+        long start = System.nanoTime();
+        drive(scenario, rate, TimeUnit.SECONDS.toNanos(duration));
+        awaitInFlight();
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        report.print(System.out, elapsed);
+        String out = options.getOrDefault("out", "target/loadtest-result.json");
+        report.write(Paths.get(out), scenario.name(), rate, elapsed, objectMapper);
+        System.out.println("Results written to " + out);
+    }
+
+    /**
+     * Sends one request every 1/rate seconds for the given time. A request that would exceed max-in-flight
+     * is counted as skipped instead of waiting, so the schedule never slips.
+     */
+    private void drive(Scenario scenario, double rate, long durationNanos) {
+        int maxInFlight = Integer.parseInt(options.getOrDefault("max-in-flight", "10000"));
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        long start = System.nanoTime();
+        for (long i = 0; i * intervalNanos < durationNanos; i++) {
+            long intended = start + i * intervalNanos;
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            RequestTemplate template = scenario.next();
+            if (inFlight.get() >= maxInFlight) {
+                report.skipped(template.name());
+                continue;
+            }
+            send(template, intended);
+        }
+    }
+
+    private void send(RequestTemplate template, long intendedNanos) {
+        String path = template.path(placeholders);
+        JsonNode body = template.hasBody() ? template.body(placeholders) : null;
+        if (path == null || (template.hasBody() && body == null)) {
+            report.skipped(template.name());
+            return;
+        }
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(REQUEST_TIMEOUT)
+                .header("Accept", template.accept());
+        if (body != null) {
+            request.header("Content-Type", template.contentType())
+                    .method(template.method(), HttpRequest.BodyPublishers.ofString(toBody(body, template.contentType())));
+        } else {
+            request.method(template.method(), HttpRequest.BodyPublishers.noBody());
+        }
+        inFlight.incrementAndGet();
+        client.sendAsync(request.build(), HttpResponse.BodyHandlers.ofByteArray())
+                .whenComplete((response, failure) -> {
+                    long latencyMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intendedNanos);
+                    inFlight.decrementAndGet();
+                    if (failure != null) {
+                        report.record(template.name(), 0, latencyMicros);
+                        return;
+                    }
+                    report.record(template.name(), response.statusCode(), latencyMicros);
+                    if ("POST".equals(template.method())) {
+                        collectCreatedIds(response);
+                    }
+                });
+    }
+
+    /**
+     * Queues the ids of devices created by a POST, from a single device or from batch results.
+     */
+    private void collectCreatedIds(HttpResponse<byte[]> response) {
+        if (response.statusCode() >= 300) {
+            return;
+        }
+        try {
+            JsonNode json = objectMapper.readTree(response.body());
+            if (json.isObject() && json.hasNonNull("id")) {
+                placeholders.created(json.get("id").asText());
+            } else if (json.isArray()) {
+                for (JsonNode result : json) {
+                    if (result.path("status").asInt() == 201 && result.hasNonNull("id")) {
+                        placeholders.created(result.get("id").asText());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // Not a device body; nothing to collect.
+        }
+    }
+
+    private String toBody(JsonNode body, String contentType) {
+        if (!contentType.startsWith("application/x-ndjson") || !body.isArray()) {
+            return body.toString();
+        }
+        StringBuilder lines = new StringBuilder();
+        for (JsonNode item : body) {
+            lines.append(item.toString()).append('\n');
+        }
+        return lines.toString();
+    }
+
+    /**
+     * Creates the devices the {id} placeholder draws from, through the batch endpoint. None is IN_USE.
+     */
+    private List<UUID> seed(int count, int brands) throws IOException, InterruptedException {
+        List<UUID> ids = new ArrayList<>(count);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int from = 0; from < count; from += SEED_CHUNK) {
+            ArrayNode devices = objectMapper.createArrayNode();
+            for (int i = from; i < Math.min(from + SEED_CHUNK, count); i++) {
+                ObjectNode device = devices.addObject();
+                device.put("name", "seed-" + i);
+                device.put("brand", Placeholders.brand(random.nextInt(brands)));
+                device.put("state", random.nextBoolean() ? "AVAILABLE" : "INACTIVE");
+            }
+            HttpResponse<byte[]> response = client.send(HttpRequest.newBuilder(URI.create(baseUrl + "/api/devices/batch"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(devices.toString()))
+                    .build(), HttpResponse.BodyHandlers.ofByteArray());
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException("Seeding failed with status " + response.statusCode());
+            }
+            for (JsonNode result : objectMapper.readTree(response.body())) {
+                ids.add(UUID.fromString(result.get("id").asText()));
+            }
+        }
+        System.out.printf("Seeded %d devices%n", ids.size());
+        return ids;
+    }
+
+    private void awaitInFlight() throws InterruptedException {
+        long deadline = System.nanoTime() + REQUEST_TIMEOUT.toNanos();
+        while (inFlight.get() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Starts the application on a random port with its tables in their own schema, so a shared database is
+     * never touched. SQL and request logging are turned down so the load generator measures the server.
+     */
+    private static ConfigurableApplicationContext startApplication(String url, String user, String password, String profile)
+            throws SQLException {
+        try (Connection connection = DriverManager.getConnection(url, user, password);
+             Statement statement = connection.createStatement()) {
+            statement.execute("DROP SCHEMA IF EXISTS " + SCHEMA + " CASCADE");
+        }
+        List<String> args = new ArrayList<>();
+        if (profile != null) {
+            args.add("--spring.profiles.active=" + profile);
+            args.add("--spring.r2dbc.url=" + url.replaceFirst("^jdbc:", "r2dbc:").replaceFirst("\\?.*$", ""));
+            args.add("--spring.r2dbc.properties.schema=" + SCHEMA);
+        }
+        Collections.addAll(args,
+                "--server.port=0",
+                "--spring.datasource.url=" + url,
+                "--spring.datasource.username=" + user,
+                "--spring.datasource.password=" + password,
+                "--spring.datasource.hikari.schema=" + SCHEMA,
+                "--spring.flyway.schemas=" + SCHEMA,
+                "--spring.flyway.default-schema=" + SCHEMA,
+                "--spring.jpa.show-sql=false",
+                "--logging.level.root=WARN");
+        return new SpringApplicationBuilder(DeviceManagementApiApplication.class)
+                .logStartupInfo(false)
+                .run(args.toArray(new String[0]));
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --key=value, got " + arg);
+            }
+            int split = arg.indexOf('=');
+            options.put(arg.substring(2, split), arg.substring(split + 1));
+        }
+        return options;
+    }
+}
@@ -0,0 +1,51 @@
+package cris.greg.io.loadtest;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Values for the scenario placeholders. Seeded ids are read-only; ids of devices created during the run
+ * are queued so a later delete template can consume each one exactly once.
+ */
+final class Placeholders {
+
+    private static final String[] STATES = {"AVAILABLE", "IN_USE", "INACTIVE"};
+
+    private final List<UUID> seededIds;
+    private final int brands;
+    private final Queue<String> createdIds = new ConcurrentLinkedQueue<>();
+
+    Placeholders(List<UUID> seededIds, int brands) {
+        this.seededIds = seededIds;
+        this.brands = brands;
+    }
+
+    String value(String placeholder) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        switch (placeholder) {
+            case "id":
+                return seededIds.get(random.nextInt(seededIds.size())).toString();
+            case "createdId":
+                return createdIds.poll();
+            case "brand":
+                return brand(random.nextInt(brands));
+            case "state":
+                return STATES[random.nextInt(STATES.length)];
+            case "name":
+                return "load-" + random.nextInt(1_000_000);
+            default:
+                throw new IllegalArgumentException("Unknown placeholder {" + placeholder + "}");
+        }
+    }
+
+    void created(String id) {
+        createdIds.add(id);
+    }
+
+    static String brand(int i) {
+        return "brand-" + i;
+    }
+}
@@ -0,0 +1,151 @@
+package cris.greg.io.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * One line of a scenario file. Placeholders in the path and in string values of the body are replaced
+ * per request: {id} (a seeded device), {createdId} (a device created earlier in the run, consumed once),
+ * {brand}, {state} and {name}. When repeat is set the body is sent as an array of that many expanded copies.
+ */
+final class RequestTemplate {
+
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\{(\\w+)}");
+
+    private final String name;
+    private final int weight;
+    private final String method;
+    private final String path;
+    private final JsonNode body;
+    private final int repeat;
+    private final String contentType;
+    private final String accept;
+
+    private RequestTemplate(String name, int weight, String method, String path, JsonNode body, int repeat,
+                            String contentType, String accept) {
+        this.name = name;
+        this.weight = weight;
+        this.method = method;
+        this.path = path;
+        this.body = body;
+        this.repeat = repeat;
+        this.contentType = contentType;
+        this.accept = accept;
+    }
+
+    static RequestTemplate of(JsonNode line) {
+        String method = line.path("method").asText("GET");
+        String path = line.path("path").asText(null);
+        if (path == null) {
+            throw new IllegalArgumentException("Scenario line without a path: " + line);
+        }
+        String name = line.path("name").asText(method + " " + path);
+        JsonNode body = line.get("body");
+        return new RequestTemplate(name, line.path("weight").asInt(1), method, path, body,
+                line.path("repeat").asInt(0), line.path("contentType").asText("application/json"),
+                line.path("accept").asText("application/json"));
+    }
+
+    String name() {
+        return name;
+    }
+
+    int weight() {
+        return weight;
+    }
+
+    String method() {
+        return method;
+    }
+
+    String contentType() {
+        return contentType;
+    }
+
+    String accept() {
+        return accept;
+    }
+
+    boolean hasBody() {
+        return body != null;
+    }
+
+    /**
+     * @return the expanded path, or null if a placeholder has no value (e.g. no created device left)
+     */
+    String path(Placeholders placeholders) {
+        return expand(path, placeholders);
+    }
+
+    /**
+     * @return the expanded body, or null if a placeholder has no value
+     */
+    JsonNode body(Placeholders placeholders) {
+        if (repeat <= 0) {
+            return expand(body, placeholders);
+        }
+        ArrayNode items = JsonNodeFactory.instance.arrayNode(repeat);
+        for (int i = 0; i < repeat; i++) {
+            JsonNode item = expand(body, placeholders);
+            if (item == null) {
+                return null;
+            }
+            items.add(item);
+        }
+        return items;
+    }
+
+    private static JsonNode expand(JsonNode node, Placeholders placeholders) {
+        if (node.isTextual()) {
+            String value = expand(node.asText(), placeholders);
+            return value == null ? null : TextNode.valueOf(value);
+        }
+        if (node.isObject()) {
+            ObjectNode copy = JsonNodeFactory.instance.objectNode();
+            Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                JsonNode value = expand(field.getValue(), placeholders);
+                if (value == null) {
+                    return null;
+                }
+                copy.set(field.getKey(), value);
+            }
+            return copy;
+        }
+        if (node.isArray()) {
+            ArrayNode copy = JsonNodeFactory.instance.arrayNode(node.size());
+            for (JsonNode element : node) {
+                JsonNode value = expand(element, placeholders);
+                if (value == null) {
+                    return null;
+                }
+                copy.add(value);
+            }
+            return copy;
+        }
+        return node;
+    }
+
+    private static String expand(String text, Placeholders placeholders) {
+        Matcher matcher = PLACEHOLDER.matcher(text);
+        StringBuffer result = new StringBuffer();
+        while (matcher.find()) {
+            String value = placeholders.value(matcher.group(1));
+            if (value == null) {
+                return null;
+            }
+            matcher.appendReplacement(result, Matcher.quoteReplacement(value));
+        }
+        matcher.appendTail(result);
+        return result.toString();
+    }
+}
@@ -0,0 +1,91 @@
+package cris.greg.io.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A weighted request mix read from JSONL, one {@link RequestTemplate} per line. Blank lines and lines
+ * starting with // are skipped.
+ */
+final class Scenario {
+
+    private final String name;
+    private final List<RequestTemplate> templates;
+    private final int[] cumulativeWeights;
+
+    private Scenario(String name, List<RequestTemplate> templates) {
+        this.name = name;
+        this.templates = templates;
+        this.cumulativeWeights = new int[templates.size()];
+        int total = 0;
+        for (int i = 0; i < templates.size(); i++) {
+            total += templates.get(i).weight();
+            cumulativeWeights[i] = total;
+        }
+    }
+
+    /**
+     * Loads a scenario from a file path, or from the bundled scenarios/&lt;name&gt;.jsonl when no such file exists.
+     */
+    static Scenario load(String location, ObjectMapper objectMapper) throws IOException {
+        Path file = Paths.get(location);
+        if (Files.isRegularFile(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                return parse(file.getFileName().toString(), in, objectMapper);
+            }
+        }
+        String resource = "scenarios/" + location + (location.endsWith(".jsonl") ? "" : ".jsonl");
+        try (InputStream in = Scenario.class.getClassLoader().getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IllegalArgumentException("Scenario not found: " + location);
+            }
+            return parse(location, in, objectMapper);
+        }
+    }
+
+    private static Scenario parse(String name, InputStream in, ObjectMapper objectMapper) throws IOException {
+        List<RequestTemplate> templates = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String trimmed = line.trim();
+            if (!trimmed.isEmpty() && !trimmed.startsWith("//")) {
+                templates.add(RequestTemplate.of(objectMapper.readTree(trimmed)));
+            }
+        }
+        if (templates.isEmpty()) {
+            throw new IllegalArgumentException("Scenario " + name + " has no requests");
+        }
+        return new Scenario(name, Collections.unmodifiableList(templates));
+    }
+
+    String name() {
+        return name;
+    }
+
+    List<RequestTemplate> templates() {
+        return templates;
+    }
+
+    RequestTemplate next() {
+        int pick = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (pick < cumulativeWeights[i]) {
+                return templates.get(i);
+            }
+        }
+        throw new IllegalStateException("Unreachable");
+    }
+}
@@ -0,0 +1,202 @@
+package cris.greg.io.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup time of the packaged application, to track it from build to build. Each run starts a new JVM, the
+ * same java as this one, and measures the wall time until /actuator/health answers, together with the
+ * application.ready.time the application reports about itself; the first --warmup runs are left out.
+ * <p>
+ * --mode=jar starts target/device-management-api-*.jar; --mode=startup starts the output of the startup Maven
+ * profile in target/startup, with Spring AOT and the class data sharing archive. Options are --key=value: mode,
+ * runs, warmup, profile, jdbc-url, jdbc-user, jdbc-password, timeout (seconds) and out.
+ */
+public final class StartupTime {
+
+    private static final Duration POLL_INTERVAL = Duration.ofMillis(50);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(1))
+            .build();
+    private final Map<String, String> options;
+
+    private StartupTime(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new StartupTime(parse(args)).run();
+    }
+
+    private void run() throws IOException, InterruptedException {
+        String mode = options.getOrDefault("mode", "jar");
+        int runs = Integer.parseInt(options.getOrDefault("runs", "5"));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "1"));
+        List<Double> ready = new ArrayList<>();
+        List<Double> reported = new ArrayList<>();
+        System.out.printf("Startup of %s: %d warmup and %d measured runs%n", mode, warmup, runs);
+        for (int i = 0; i < warmup + runs; i++) {
+            double[] run = start(mode);
+            System.out.printf("%s run %d: ready after %.2f s, application.ready.time %.2f s%n",
+                    i < warmup ? "Warmup" : "Measured", i + 1, run[0], run[1]);
+            if (i >= warmup) {
+                ready.add(run[0]);
+                reported.add(run[1]);
+            }
+        }
+        Collections.sort(ready);
+        Collections.sort(reported);
+        System.out.printf("Ready: min %.2f s, median %.2f s, max %.2f s%n", ready.get(0), median(ready), ready.get(ready.size() - 1));
+        System.out.printf("application.ready.time: min %.2f s, median %.2f s, max %.2f s%n",
+                reported.get(0), median(reported), reported.get(reported.size() - 1));
+
+        String out = options.getOrDefault("out", "target/startup-result.json");
+        ObjectNode result = objectMapper.createObjectNode();
+        result.put("mode", mode);
+        result.put("profile", options.getOrDefault("profile", "prod"));
+        result.put("runs", runs);
+        result.put("readyMedianSeconds", median(ready));
+        result.put("reportedReadyMedianSeconds", median(reported));
+        ready.forEach(result.putArray("readySeconds")::add);
+        reported.forEach(result.putArray("reportedReadySeconds")::add);
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(Paths.get(out).toFile(), result);
+        System.out.println("Results written to " + out);
+    }
+
+    /**
+     * @return the seconds until health answered and the application.ready.time the application reported
+     */
+    private double[] start(String mode) throws IOException, InterruptedException {
+        int port = freePort();
+        List<String> command = command(mode, port);
+        Path log = Files.createTempFile("startup-", ".log");
+        Process process = new ProcessBuilder(command)
+                .directory(workingDirectory(mode))
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile())
+                .start();
+        long started = System.nanoTime();
+        try {
+            String base = "http://localhost:" + port;
+            long deadline = started + TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("timeout", "120")));
+            while (!healthy(base)) {
+                if (!process.isAlive() || System.nanoTime() > deadline) {
+                    throw new IllegalStateException("Application did not start, see " + log);
+                }
+                Thread.sleep(POLL_INTERVAL.toMillis());
+            }
+            double ready = (System.nanoTime() - started) / 1e9;
+            JsonNode metric = get(base + "/actuator/metrics/application.ready.time");
+            Files.deleteIfExists(log);
+            return new double[]{ready, metric.path("measurements").path(0).path("value").asDouble()};
+        } finally {
+            process.destroy();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    private List<String> command(String mode, int port) {
+        String java = ProcessHandle.current().info().command().orElse("java");
+        List<String> command = new ArrayList<>();
+        command.add(java);
+        if ("startup".equals(mode)) {
+            Collections.addAll(command, "-XX:SharedArchiveFile=app.jsa", "-Dspring.aot.enabled=true", "-jar", "application.jar");
+        } else if ("jar".equals(mode)) {
+            Collections.addAll(command, "-jar", applicationJar().getAbsolutePath());
+        } else {
+            throw new IllegalArgumentException("Unknown mode: " + mode);
+        }
+        command.add("--server.port=" + port);
+        command.add("--spring.profiles.active=" + options.getOrDefault("profile", "prod"));
+        if (options.containsKey("jdbc-url")) {
+            command.add("--spring.datasource.url=" + options.get("jdbc-url"));
+        }
+        if (options.containsKey("jdbc-user")) {
+            command.add("--spring.datasource.username=" + options.get("jdbc-user"));
+        }
+        if (options.containsKey("jdbc-password")) {
+            command.add("--spring.datasource.password=" + options.get("jdbc-password"));
+        }
+        return command;
+    }
+
+    private static File workingDirectory(String mode) {
+        File directory = new File("startup".equals(mode) ? "target/startup" : ".");
+        if (!directory.isDirectory()) {
+            throw new IllegalStateException("Missing " + directory + ", build it with mvn -Pstartup package");
+        }
+        return directory;
+    }
+
+    private static File applicationJar() {
+        File[] jars = new File("target").listFiles((directory, name) ->
+                name.startsWith("device-management-api-") && name.endsWith(".jar"));
+        if (jars == null || jars.length == 0) {
+            throw new IllegalStateException("No application jar in target, build it with mvn package");
+        }
+        return jars[0];
+    }
+
+    private boolean healthy(String base) throws InterruptedException {
+        try {
+            HttpResponse<Void> response = client.send(HttpRequest.newBuilder(URI.create(base + "/actuator/health")).build(),
+                    HttpResponse.BodyHandlers.discarding());
+            return response.statusCode() == 200;
+        } catch (IOException e) {
+            // Not listening yet
+            return false;
+        }
+    }
+
+    private JsonNode get(String url) throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = client.send(HttpRequest.newBuilder(URI.create(url)).build(),
+                HttpResponse.BodyHandlers.ofByteArray());
+        return objectMapper.readTree(response.body());
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static double median(List<Double> sorted) {
+        int middle = sorted.size() / 2;
+        return sorted.size() % 2 == 1 ? sorted.get(middle) : (sorted.get(middle - 1) + sorted.get(middle)) / 2;
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --key=value, got " + arg);
+            }
+            int split = arg.indexOf('=');
+            options.put(arg.substring(2, split), arg.substring(split + 1));
+        }
+        return options;
+    }
+}
@@ -1,11 +1,14 @@
 package cris.greg.io;
 
+import cris.greg.io.config.DeviceProperties;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 
 @SpringBootApplication
+@EnableConfigurationProperties(DeviceProperties.class)
 public class DeviceManagementApiApplication {
     public static void main(String[] args) {
         SpringApplication.run(DeviceManagementApiApplication.class, args);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,126 @@
+package cris.greg.io.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.github.luben.zstd.util.Native;
+import org.reactivestreams.Publisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.boot.web.codec.CodecCustomizer;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.cbor.Jackson2CborDecoder;
+import org.springframework.http.codec.cbor.Jackson2CborEncoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.codec.json.Jackson2SmileDecoder;
+import org.springframework.http.codec.json.Jackson2SmileEncoder;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+/**
+ * Response formats and compression. Besides JSON, both stacks read and write CBOR (application/cbor) and Smile
+ * (application/x-jackson-smile), chosen by the Accept and Content-Type headers. Their ObjectMappers come from
+ * Spring Boot's Jackson2ObjectMapperBuilder, so devices have the same properties and date format in every
+ * format. Compression follows server.compression: the containers offer gzip, and zstd is added for Tomcat by
+ * {@link ZstdCompressionFilter}; Reactor Netty offers zstd by itself once zstd-jni is on the classpath.
+ */
+@Configuration
+public class CodecConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(CodecConfig.class);
+    private static final MimeType SMILE = new MimeType("application", "x-jackson-smile");
+
+    @Bean
+    @Profile("!reactive")
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2CborHttpMessageConverter(cborMapper(builder));
+    }
+
+    @Bean
+    @Profile("!reactive")
+    public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2SmileHttpMessageConverter(smileMapper(builder));
+    }
+
+    @Bean
+    @Profile("reactive")
+    public CodecCustomizer binaryCodecCustomizer(ObjectMapper objectMapper, Jackson2ObjectMapperBuilder builder) {
+        ObjectMapper cborMapper = cborMapper(builder);
+        ObjectMapper smileMapper = smileMapper(builder);
+        return configurer -> {
+            // WebFlux has no default Jackson CBOR codecs, and custom writers are tried before the default ones, so
+            // JSON is registered again ahead of CBOR to stay the format for Accept: */*. Without explicit MIME
+            // types the binary codecs would claim JSON.
+            configurer.customCodecs().registerWithDefaultConfig(new Jackson2JsonEncoder(objectMapper));
+            configurer.customCodecs().registerWithDefaultConfig(new CborEncoder(cborMapper));
+            configurer.customCodecs().registerWithDefaultConfig(new Jackson2CborDecoder(cborMapper, MediaType.APPLICATION_CBOR));
+            configurer.defaultCodecs().jackson2SmileEncoder(new Jackson2SmileEncoder(smileMapper, SMILE));
+            configurer.defaultCodecs().jackson2SmileDecoder(new Jackson2SmileDecoder(smileMapper, SMILE));
+        };
+    }
+
+    @Bean
+    @Profile("!reactive")
+    @ConditionalOnProperty(prefix = "server.compression", name = "enabled", havingValue = "true")
+    public FilterRegistrationBean<ZstdCompressionFilter> zstdCompressionFilter(ServerProperties serverProperties) {
+        FilterRegistrationBean<ZstdCompressionFilter> registration =
+                new FilterRegistrationBean<>(new ZstdCompressionFilter(serverProperties.getCompression()));
+        registration.setEnabled(zstdAvailable());
+        return registration;
+    }
+
+    private static ObjectMapper cborMapper(Jackson2ObjectMapperBuilder builder) {
+        return builder.createXmlMapper(false).factory(new CBORFactory()).build();
+    }
+
+    private static ObjectMapper smileMapper(Jackson2ObjectMapperBuilder builder) {
+        return builder.createXmlMapper(false).factory(new SmileFactory()).build();
+    }
+
+    /**
+     * Jackson's CBOR encoder refuses every {@code encode} call, which is also how WebFlux writes a single value.
+     * This one writes single values, such as a page of devices; streams stay JSON or NDJSON.
+     */
+    private static final class CborEncoder extends Jackson2CborEncoder {
+
+        private CborEncoder(ObjectMapper mapper) {
+            super(mapper, MediaType.APPLICATION_CBOR);
+        }
+
+        @Override
+        public Flux<DataBuffer> encode(Publisher<?> inputStream, DataBufferFactory bufferFactory, ResolvableType elementType,
+                                       MimeType mimeType, Map<String, Object> hints) {
+            if (!(inputStream instanceof Mono)) {
+                return super.encode(inputStream, bufferFactory, elementType, mimeType, hints);
+            }
+            return Mono.from(inputStream)
+                    .map(value -> encodeValue(value, bufferFactory, elementType, mimeType, hints))
+                    .flux();
+        }
+    }
+
+    private static boolean zstdAvailable() {
+        try {
+            Native.load();
+            return true;
+        } catch (LinkageError e) {
+            logger.warn("zstd native library not available for this platform, responses are only gzip-compressed", e);
+            return false;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package cris.greg.io.config;
+
+import cris.greg.io.service.DeviceIdGenerator;
+import cris.greg.io.service.RandomDeviceIdGenerator;
+import cris.greg.io.service.TimeOrderedDeviceIdGenerator;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class DeviceIdConfig {
+
+    @Bean
+    public DeviceIdGenerator deviceIdGenerator(DeviceProperties properties) {
+        if (properties.getIds().getGenerator() == DeviceProperties.IdGeneratorType.RANDOM) {
+            return new RandomDeviceIdGenerator();
+        }
+        return new TimeOrderedDeviceIdGenerator();
+    }
+}
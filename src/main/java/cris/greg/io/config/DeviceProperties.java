@@ -0,0 +1,192 @@
+package cris.greg.io.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Application settings bound from the {@code device.*} namespace in application.yml.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "device")
+public class DeviceProperties {
+
+    private final Pagination pagination = new Pagination();
+    private final Cache cache = new Cache();
+    private final Executor executor = new Executor();
+    private final Batch batch = new Batch();
+    private final Changes changes = new Changes();
+    private final Outbox outbox = new Outbox();
+    private final Stats stats = new Stats();
+    private final Ids ids = new Ids();
+    private final Replicas replicas = new Replicas();
+    private final Coalescing coalescing = new Coalescing();
+    private final RateLimit rateLimit = new RateLimit();
+
+    @Getter
+    @Setter
+    public static class Pagination {
+        /** Page size used when the client does not ask for one. */
+        private int defaultSize = 100;
+        /** Largest page a client can request; bigger values are capped. */
+        private int maxSize = 1000;
+        /** Answers a first page without devices with 404 when true; false returns 200 with an empty list. */
+        private boolean emptyNotFound = true;
+    }
+
+    @Getter
+    @Setter
+    public static class Cache {
+        /** Serves getDeviceById from memory when true; every lookup hits the database when false. */
+        private boolean enabled = true;
+        /** Maximum number of cached entries, found and not found alike. */
+        private long maximumSize = 100_000;
+        /** How long a found device stays cached. */
+        private Duration ttl = Duration.ofMinutes(5);
+        /** How long an unknown id is remembered as not found. */
+        private Duration negativeTtl = Duration.ofSeconds(10);
+    }
+
+    @Getter
+    @Setter
+    public static class Executor {
+        /** VIRTUAL runs each task on its own virtual thread, PLATFORM on a fixed pool of maxConcurrency threads. */
+        private ExecutorType type = ExecutorType.VIRTUAL;
+        /** Tasks allowed to run at once; match it to the datasource pool so tasks never wait on a connection. */
+        private int maxConcurrency = 10;
+        /** Tasks allowed to wait for a slot before new ones are rejected with 503. */
+        private int queueCapacity = 1000;
+        /** Value of the Retry-After header sent when a task is rejected. */
+        private Duration retryAfter = Duration.ofSeconds(1);
+        /** How long shutdown waits for running and queued tasks to finish. */
+        private Duration shutdownTimeout = Duration.ofSeconds(30);
+    }
+
+    @Getter
+    @Setter
+    public static class Batch {
+        /** Largest number of items accepted by one bulk request. */
+        private int maxItems = 10_000;
+        /** Items written per transaction; keep it equal to hibernate.jdbc.batch_size. */
+        private int chunkSize = 500;
+    }
+
+    @Getter
+    @Setter
+    public static class Changes {
+        /** Recent changes kept in memory for clients resuming with Last-Event-ID. */
+        private int bufferSize = 10_000;
+        /** Changes queued for one client before it is disconnected as too slow; it resumes from the buffer. */
+        private int subscriberQueue = 1000;
+        /** How long a change stream stays open before the client has to reconnect. */
+        private Duration timeout = Duration.ofMinutes(30);
+        /** Interval of the keep-alive comments, which also detect clients that went away. */
+        private Duration heartbeat = Duration.ofSeconds(15);
+    }
+
+    @Getter
+    @Setter
+    public static class Outbox {
+        /** Runs the relay that numbers and publishes outbox events; keep it on at least one instance. */
+        private boolean relayEnabled = true;
+        /** Where the relay publishes events. */
+        private OutboxSink sink = OutboxSink.IN_PROCESS;
+        /** NDJSON file appended to by the file sink. */
+        private String file = "device-events.ndjson";
+        /** Pause between relay runs once it has caught up. */
+        private Duration pollInterval = Duration.ofMillis(200);
+        /** Events relayed per transaction. */
+        private int batchSize = 500;
+        /** How long relayed events stay readable through the events endpoint. */
+        private Duration retention = Duration.ofDays(7);
+    }
+
+    public enum ExecutorType {
+        VIRTUAL,
+        PLATFORM
+    }
+
+    @Getter
+    @Setter
+    public static class Stats {
+        /** Answers the stats endpoint from counters kept up to date from the outbox instead of querying devices. */
+        private boolean inMemory = false;
+        /** Pause between reads of newly relayed outbox events by the counters. */
+        private Duration pollInterval = Duration.ofMillis(500);
+    }
+
+    public enum OutboxSink {
+        IN_PROCESS,
+        FILE
+    }
+
+    @Getter
+    @Setter
+    public static class Ids {
+        /** How new device ids are made; time-ordered ids keep primary-key inserts at the right edge of the index. */
+        private IdGeneratorType generator = IdGeneratorType.TIME_ORDERED;
+    }
+
+    public enum IdGeneratorType {
+        TIME_ORDERED,
+        RANDOM
+    }
+
+    @Getter
+    @Setter
+    public static class Replicas {
+        /** JDBC URLs of the read replicas; empty sends every statement to spring.datasource. */
+        private List<String> urls = new ArrayList<>();
+        /** User for the replicas, or null for spring.datasource.username. */
+        private String username;
+        /** Password for the replicas, or null for spring.datasource.password. */
+        private String password;
+        /** Connections per replica pool. */
+        private int maximumPoolSize = 10;
+        /** How long a read waits for a replica connection before it tries the next replica. */
+        private Duration connectionTimeout = Duration.ofSeconds(1);
+        /** Pause between checks of each replica's connectivity and replication lag. */
+        private Duration healthCheckInterval = Duration.ofSeconds(5);
+        /** Replicas further behind the primary than this get no reads until they catch up. */
+        private Duration maxLag = Duration.ofSeconds(10);
+    }
+
+    @Getter
+    @Setter
+    public static class Coalescing {
+        /** Lets concurrent identical reads share one query. */
+        private boolean enabled = true;
+        /** How long a completed read is still handed to identical reads; zero only shares reads still running. */
+        private Duration window = Duration.ZERO;
+    }
+
+    @Getter
+    @Setter
+    public static class RateLimit {
+        /** Limits the requests of each client to /api; off lets every client use the whole executor. */
+        private boolean enabled = false;
+        /** Tokens each client gets back per second; a request takes one token. */
+        private double rate = 50;
+        /** Tokens a client can hold, so the requests it may send at once after being idle. */
+        private int burst = 100;
+        /** Tokens taken by the requests in expensiveRequests, capped at burst. */
+        private int expensiveCost = 10;
+        /** Requests that cost expensiveCost, as "METHOD /path", or "/path" for every method. */
+        private List<String> expensiveRequests = new ArrayList<>(Arrays.asList("GET /api/devices",
+                "GET /api/devices/stream", "DELETE /api/devices/flush", "/api/devices/batch"));
+        /**
+         * Header naming the client, such as an API key, to be set only behind a gateway that has validated it;
+         * clients that do not send it are told apart by address. Unset, every client is known by address, so one
+         * cannot get a fresh bucket by sending a new value with each request.
+         */
+        private String clientHeader;
+        /** Clients whose buckets are kept; beyond that the least recently seen start again with a full bucket. */
+        private long maxClients = 100_000;
+    }
+}
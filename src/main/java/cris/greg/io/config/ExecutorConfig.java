@@ -0,0 +1,14 @@
+package cris.greg.io.config;
+
+import cris.greg.io.service.DeviceTaskExecutor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class ExecutorConfig {
+
+    @Bean
+    public DeviceTaskExecutor deviceTaskExecutor(DeviceProperties properties) {
+        return DeviceTaskExecutor.create(properties.getExecutor());
+    }
+}
@@ -0,0 +1,123 @@
+package cris.greg.io.config;
+
+import cris.greg.io.service.DeviceCache;
+import cris.greg.io.service.DeviceChangeFeed;
+import cris.greg.io.service.DeviceEventRelay;
+import cris.greg.io.service.DeviceRateLimiter;
+import cris.greg.io.service.DeviceReadCoalescer;
+import cris.greg.io.service.DeviceStatsCounter;
+import cris.greg.io.service.DeviceTaskExecutor;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Micrometer meters for the device executor, change feed, outbox relay, stats counter and cache. HTTP,
+ * repository, Hikari and JVM meters come from the Spring Boot Actuator auto-configuration; histograms are
+ * switched on per meter under {@code management.metrics.distribution} in application.yml.
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public MeterBinder deviceExecutorMetrics(DeviceTaskExecutor executor) {
+        return registry -> {
+            Gauge.builder("device.executor.queued", executor, DeviceTaskExecutor::getQueueDepth)
+                    .description("Tasks waiting for a concurrency permit")
+                    .register(registry);
+            Gauge.builder("device.executor.active", executor, DeviceTaskExecutor::getActiveCount)
+                    .description("Tasks currently running")
+                    .register(registry);
+            FunctionCounter.builder("device.executor.completed", executor, DeviceTaskExecutor::getCompletedCount)
+                    .description("Tasks finished since startup")
+                    .register(registry);
+            FunctionCounter.builder("device.executor.rejected", executor, DeviceTaskExecutor::getRejectedCount)
+                    .description("Tasks rejected because the queue was full")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder deviceChangeFeedMetrics(DeviceChangeFeed changeFeed) {
+        return registry -> {
+            Gauge.builder("device.changes.subscribers", changeFeed, DeviceChangeFeed::getSubscriberCount)
+                    .description("Clients streaming device changes")
+                    .register(registry);
+            FunctionCounter.builder("device.changes.overflows", changeFeed, DeviceChangeFeed::getOverflowCount)
+                    .description("Clients dropped because they fell behind")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder deviceEventRelayMetrics(DeviceEventRelay relay) {
+        return registry -> {
+            FunctionCounter.builder("device.outbox.relayed", relay, DeviceEventRelay::getRelayedCount)
+                    .description("Outbox events relayed to the sink")
+                    .register(registry);
+            FunctionCounter.builder("device.outbox.failures", relay, DeviceEventRelay::getFailureCount)
+                    .description("Relay runs that failed and were retried")
+                    .register(registry);
+            Gauge.builder("device.outbox.last.seq", relay, DeviceEventRelay::getLastSeq)
+                    .description("Seq of the latest relayed event")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder deviceStatsMetrics(DeviceStatsCounter counter) {
+        return registry -> Gauge.builder("device.stats.last.seq", counter, DeviceStatsCounter::getLastSeq)
+                .description("Seq of the latest outbox event in the in-memory device counts")
+                .register(registry);
+    }
+
+    @Bean
+    public MeterBinder deviceReadCoalescerMetrics(DeviceReadCoalescer coalescer) {
+        return registry -> {
+            FunctionCounter.builder("device.reads.executed", coalescer, DeviceReadCoalescer::getExecutedCount)
+                    .description("Reads that ran a query")
+                    .register(registry);
+            FunctionCounter.builder("device.reads.coalesced", coalescer, DeviceReadCoalescer::getCoalescedCount)
+                    .description("Reads answered by a query already running or just completed")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder deviceRateLimiterMetrics(DeviceRateLimiter limiter) {
+        return registry -> {
+            FunctionCounter.builder("device.ratelimit.allowed", limiter, DeviceRateLimiter::getAllowedCount)
+                    .description("Requests let through by the rate limiter")
+                    .register(registry);
+            FunctionCounter.builder("device.ratelimit.limited", limiter, DeviceRateLimiter::getLimitedCount)
+                    .description("Requests answered with 429")
+                    .register(registry);
+            Gauge.builder("device.ratelimit.clients", limiter, DeviceRateLimiter::getClientCount)
+                    .description("Clients with a rate limit bucket")
+                    .register(registry);
+        };
+    }
+
+    /**
+     * Uses the names and tags of Micrometer's own cache meters, so standard cache dashboards work unchanged.
+     */
+    @Bean
+    public MeterBinder deviceCacheMetrics(DeviceCache cache) {
+        return registry -> {
+            FunctionCounter.builder("cache.gets", cache, DeviceCache::getHitCount)
+                    .tags("cache", "device", "result", "hit")
+                    .register(registry);
+            FunctionCounter.builder("cache.gets", cache, DeviceCache::getMissCount)
+                    .tags("cache", "device", "result", "miss")
+                    .register(registry);
+            FunctionCounter.builder("cache.evictions", cache, DeviceCache::getEvictionCount)
+                    .tags("cache", "device")
+                    .register(registry);
+            Gauge.builder("cache.size", cache, DeviceCache::getSize)
+                    .tags("cache", "device")
+                    .register(registry);
+        };
+    }
+}
@@ -0,0 +1,25 @@
+package cris.greg.io.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import cris.greg.io.service.DeviceEventSink;
+import cris.greg.io.service.FileDeviceEventSink;
+import cris.greg.io.service.InProcessDeviceEventSink;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Paths;
+
+@Configuration
+public class OutboxConfig {
+
+    @Bean
+    public DeviceEventSink deviceEventSink(DeviceProperties properties, ApplicationEventPublisher publisher,
+                                           ObjectMapper objectMapper) {
+        DeviceProperties.Outbox outbox = properties.getOutbox();
+        if (outbox.getSink() == DeviceProperties.OutboxSink.FILE) {
+            return new FileDeviceEventSink(Paths.get(outbox.getFile()), objectMapper);
+        }
+        return new InProcessDeviceEventSink(publisher);
+    }
+}
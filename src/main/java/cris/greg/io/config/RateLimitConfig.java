@@ -0,0 +1,39 @@
+package cris.greg.io.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import cris.greg.io.service.DeviceRateLimiter;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.Ordered;
+
+/**
+ * Per-client rate limiting of the API on either stack. Whether it is on is read from device.rate-limit.enabled
+ * when the application starts, so the startup build can switch it on at runtime like any other setting.
+ */
+@Configuration
+public class RateLimitConfig {
+
+    /**
+     * Ordered right after Spring Boot's observation filter, so limited requests still show up in
+     * http.server.requests with status 429.
+     */
+    @Bean
+    @Profile("!reactive")
+    public FilterRegistrationBean<RateLimitFilter> rateLimitFilter(DeviceRateLimiter limiter, DeviceProperties properties,
+                                                                   ObjectMapper objectMapper) {
+        FilterRegistrationBean<RateLimitFilter> registration =
+                new FilterRegistrationBean<>(new RateLimitFilter(limiter, properties.getRateLimit(), objectMapper));
+        registration.addUrlPatterns("/api/*");
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 2);
+        return registration;
+    }
+
+    @Bean
+    @Profile("reactive")
+    public ReactiveRateLimitFilter reactiveRateLimitFilter(DeviceRateLimiter limiter, DeviceProperties properties,
+                                                           ObjectMapper objectMapper) {
+        return new ReactiveRateLimitFilter(limiter, properties.getRateLimit(), objectMapper);
+    }
+}
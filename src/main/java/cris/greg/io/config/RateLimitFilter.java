@@ -0,0 +1,88 @@
+package cris.greg.io.config;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import cris.greg.io.service.DeviceRateLimiter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ProblemDetail;
+import org.springframework.util.StringUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.UrlPathHelper;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Answers requests of a client that has used up its {@link DeviceRateLimiter} bucket with 429 and a Retry-After
+ * of the seconds until the bucket holds enough tokens again. It runs before the request reaches a controller,
+ * so a limited request costs no executor slot and no parsing of its body.
+ */
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    static final String TOO_MANY_REQUESTS = "Too many requests from this client. Retry the request later.";
+
+    private final DeviceRateLimiter limiter;
+    private final String clientHeader;
+    private final byte[] body;
+
+    public RateLimitFilter(DeviceRateLimiter limiter, DeviceProperties.RateLimit settings, ObjectMapper objectMapper) {
+        this.limiter = limiter;
+        this.clientHeader = StringUtils.hasText(settings.getClientHeader()) ? settings.getClientHeader() : null;
+        this.body = problemBody(objectMapper);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !limiter.isEnabled();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        // Decoded and without ;parameters, as the handler mapping matches it, so /api/device%73 costs like /api/devices
+        String path = UrlPathHelper.defaultInstance.getPathWithinApplication(request);
+        String key = clientHeader == null ? null : request.getHeader(clientHeader);
+        String client = clientOf(key, request.getRemoteAddr());
+        long wait = limiter.acquire(client, limiter.costOf(request.getMethod(), path));
+        if (wait == 0) {
+            chain.doFilter(request, response);
+            return;
+        }
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds(wait)));
+        response.setContentType(MediaType.APPLICATION_PROBLEM_JSON_VALUE);
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+
+    /**
+     * @param key the value of the client header, if one is configured and the request sends it
+     * @param address the address the request came from
+     * @return the bucket of the client
+     */
+    static String clientOf(String key, String address) {
+        return key != null && !key.isEmpty() ? "key:" + key : "address:" + address;
+    }
+
+    /**
+     * @return the wait rounded up to whole seconds, as Retry-After takes them
+     */
+    static long retryAfterSeconds(long waitNanos) {
+        return (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1);
+    }
+
+    static byte[] problemBody(ObjectMapper objectMapper) {
+        try {
+            return objectMapper.writeValueAsBytes(
+                    ProblemDetail.forStatusAndDetail(HttpStatus.TOO_MANY_REQUESTS, TOO_MANY_REQUESTS));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot write problem detail", e);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package cris.greg.io.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import cris.greg.io.service.DeviceRateLimiter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.PathContainer;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.util.StringUtils;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+
+/**
+ * WebFlux variant of {@link RateLimitFilter} for the reactive profile, with the same buckets, status and body.
+ */
+public class ReactiveRateLimitFilter implements WebFilter {
+
+    private static final String API = "/api/";
+
+    private final DeviceRateLimiter limiter;
+    private final String clientHeader;
+    private final byte[] body;
+
+    public ReactiveRateLimitFilter(DeviceRateLimiter limiter, DeviceProperties.RateLimit settings,
+                                   ObjectMapper objectMapper) {
+        this.limiter = limiter;
+        this.clientHeader = StringUtils.hasText(settings.getClientHeader()) ? settings.getClientHeader() : null;
+        this.body = RateLimitFilter.problemBody(objectMapper);
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        String path = pathOf(request.getPath().pathWithinApplication());
+        if (!limiter.isEnabled() || !path.startsWith(API)) {
+            return chain.filter(exchange);
+        }
+        InetSocketAddress remoteAddress = request.getRemoteAddress();
+        String address = remoteAddress == null ? null : remoteAddress.getHostString();
+        String key = clientHeader == null ? null : request.getHeaders().getFirst(clientHeader);
+        String client = RateLimitFilter.clientOf(key, address);
+        long wait = limiter.acquire(client, limiter.costOf(request.getMethod().name(), path));
+        if (wait == 0) {
+            return chain.filter(exchange);
+        }
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+        response.getHeaders().set(HttpHeaders.RETRY_AFTER, String.valueOf(RateLimitFilter.retryAfterSeconds(wait)));
+        response.getHeaders().setContentType(MediaType.APPLICATION_PROBLEM_JSON);
+        response.getHeaders().setContentLength(body.length);
+        return response.writeWith(Mono.fromSupplier(() -> response.bufferFactory().wrap(body)));
+    }
+
+    /**
+     * @return the path decoded and without ;parameters, as the handler mapping matches it
+     */
+    static String pathOf(PathContainer path) {
+        StringBuilder decoded = new StringBuilder();
+        for (PathContainer.Element element : path.elements()) {
+            decoded.append(element instanceof PathContainer.PathSegment
+                    ? ((PathContainer.PathSegment) element).valueToMatch() : element.value());
+        }
+        return decoded.toString();
+    }
+}
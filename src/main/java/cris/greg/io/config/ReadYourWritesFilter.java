@@ -0,0 +1,34 @@
+package cris.greg.io.config;
+
+import cris.greg.io.service.ReplicaReads;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Keeps the reads of a request on the primary when it sends {@value #HEADER}: true, so a client sees the
+ * writes it just made even while the replicas lag behind.
+ */
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+    public static final String HEADER = "X-Read-Your-Writes";
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        if (!Boolean.parseBoolean(request.getHeader(HEADER))) {
+            chain.doFilter(request, response);
+            return;
+        }
+        ReplicaReads.setPrimaryRequired(true);
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            ReplicaReads.setPrimaryRequired(false);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package cris.greg.io.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import cris.greg.io.service.ReplicaReads;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read replicas for the servlet stack. The DataSource is built from spring.datasource as Spring Boot would
+ * build it, and when {@code device.replicas.urls} is set it is wrapped in a {@link ReplicaRoutingDataSource}
+ * that sends the reads of {@link cris.greg.io.service.DeviceService} to the replicas. This is decided when the
+ * application starts, not when it is built, so the startup build picks up replicas from its runtime settings.
+ * The reactive stack keeps a single R2DBC connection factory.
+ */
+@Configuration
+@Profile("!reactive")
+public class ReplicaConfig {
+
+    @Bean
+    public DataSource dataSource(DataSourceProperties dataSourceProperties, Environment environment,
+                                 DeviceProperties properties, ObjectProvider<MeterRegistry> meterRegistry) {
+        HikariDataSource primary = dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(primary));
+        DeviceProperties.Replicas settings = properties.getReplicas();
+        if (settings.getUrls().isEmpty()) {
+            return primary;
+        }
+        List<DataSource> replicas = new ArrayList<>();
+        for (int i = 0; i < settings.getUrls().size(); i++) {
+            replicas.add(replicaPool(primary, settings, i, meterRegistry.getIfAvailable()));
+        }
+        return new ReplicaRoutingDataSource(primary, replicas, settings);
+    }
+
+    @Bean
+    public FilterRegistrationBean<ReadYourWritesFilter> readYourWritesFilter() {
+        return new FilterRegistrationBean<>(new ReadYourWritesFilter());
+    }
+
+    /**
+     * Streaming responses are written on Spring MVC's async executor, so it carries the read-your-writes choice
+     * of the request over. It is the executor MVC falls back to anyway: Spring Boot leaves out its
+     * applicationTaskExecutor because DeviceTaskExecutor is already an Executor.
+     */
+    @Bean
+    public WebMvcConfigurer replicaReadsAsyncSupport() {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("MvcAsync");
+        executor.setTaskDecorator(ReplicaReads::propagate);
+        return new WebMvcConfigurer() {
+            @Override
+            public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+                configurer.setTaskExecutor(executor);
+            }
+        };
+    }
+
+    @Bean
+    public MeterBinder replicaMetrics(DataSource dataSource) {
+        return registry -> {
+            if (!(dataSource instanceof ReplicaRoutingDataSource)) {
+                return;
+            }
+            ReplicaRoutingDataSource routing = (ReplicaRoutingDataSource) dataSource;
+            Gauge.builder("device.replicas.healthy", routing, ReplicaRoutingDataSource::getHealthyCount)
+                    .description("Replicas currently receiving reads")
+                    .register(registry);
+            FunctionCounter.builder("device.replicas.reads", routing, ReplicaRoutingDataSource::getReplicaReadCount)
+                    .description("Connections taken from a replica")
+                    .register(registry);
+            FunctionCounter.builder("device.replicas.fallbacks", routing, ReplicaRoutingDataSource::getFallbackCount)
+                    .description("Replica reads sent to the primary because no replica was healthy")
+                    .register(registry);
+        };
+    }
+
+    /**
+     * A pool that starts even when its replica is down, and gives up on a connection quickly so the read can
+     * move on to the next replica. Hikari meters are tagged pool=replica-1, replica-2 and so on.
+     */
+    private static HikariDataSource replicaPool(HikariDataSource primary, DeviceProperties.Replicas settings, int index,
+                                                MeterRegistry meterRegistry) {
+        HikariDataSource replica = new HikariDataSource();
+        replica.setPoolName("replica-" + (index + 1));
+        replica.setJdbcUrl(settings.getUrls().get(index));
+        replica.setDriverClassName(primary.getDriverClassName());
+        replica.setUsername(settings.getUsername() != null ? settings.getUsername() : primary.getUsername());
+        replica.setPassword(settings.getPassword() != null ? settings.getPassword() : primary.getPassword());
+        replica.setMaximumPoolSize(settings.getMaximumPoolSize());
+        replica.setConnectionTimeout(settings.getConnectionTimeout().toMillis());
+        replica.setReadOnly(true);
+        replica.setInitializationFailTimeout(-1);
+        if (meterRegistry != null) {
+            replica.setMetricRegistry(meterRegistry);
+        }
+        return replica;
+    }
+}
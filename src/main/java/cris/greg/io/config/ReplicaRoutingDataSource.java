@@ -0,0 +1,195 @@
+package cris.greg.io.config;
+
+import cris.greg.io.service.ReplicaReads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The application's DataSource when read replicas are configured. Connections taken while
+ * {@link ReplicaReads#isActive()} come from the healthy replicas in turn, and every other connection comes from
+ * the primary. A replica is left out after a failed connection, or when the health check finds it unreachable or
+ * more than maxLag behind, until a later check passes; with no healthy replica the reads go to the primary.
+ * <p>
+ * Physical connections are taken on the first statement rather than when a transaction begins, so a
+ * {@code @Transactional} read decides where it goes inside the method, where the routing is set.
+ */
+@ManagedResource(objectName = "cris.greg.io:type=ReplicaRoutingDataSource", description = "Read replica routing")
+public class ReplicaRoutingDataSource extends LazyConnectionDataSourceProxy implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    // Replay lag in seconds; zero on a server that is not a standby, or a standby that has replayed all it received
+    private static final String LAG_QUERY = "SELECT CASE WHEN pg_is_in_recovery()"
+            + " AND pg_last_wal_receive_lsn() IS DISTINCT FROM pg_last_wal_replay_lsn()"
+            + " THEN COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()), 0) ELSE 0 END";
+
+    private final DataSource primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final Duration healthCheckInterval;
+    private final double maxLagSeconds;
+    private final AtomicInteger next = new AtomicInteger();
+    private final LongAdder replicaReads = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "device-replica-health");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param primary the pool of the primary, for writes and for reads that must see them
+     * @param replicas the pools of the replicas, in the order of their settings.urls
+     * @param settings the replica settings
+     */
+    public ReplicaRoutingDataSource(DataSource primary, List<DataSource> replicas, DeviceProperties.Replicas settings) {
+        this.primary = primary;
+        for (int i = 0; i < replicas.size(); i++) {
+            this.replicas.add(new Replica(settings.getUrls().get(i), replicas.get(i)));
+        }
+        this.healthCheckInterval = settings.getHealthCheckInterval();
+        this.maxLagSeconds = settings.getMaxLag().toMillis() / 1000.0;
+        setTargetDataSource(new DelegatingDataSource(primary) {
+            @Override
+            public Connection getConnection() throws SQLException {
+                return ReplicaReads.isActive() ? replicaConnection() : primary.getConnection();
+            }
+
+            @Override
+            public Connection getConnection(String username, String password) throws SQLException {
+                return ReplicaReads.isActive() ? replicaConnection() : primary.getConnection(username, password);
+            }
+        });
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        super.afterPropertiesSet();
+        logger.info("Reads go to {} replicas, checked every {}", replicas.size(), healthCheckInterval);
+        scheduler.scheduleWithFixedDelay(this::checkHealth, 0, healthCheckInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() throws InterruptedException, IOException {
+        scheduler.shutdown();
+        scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        for (Replica replica : replicas) {
+            close(replica.dataSource);
+        }
+        close(primary);
+    }
+
+    /**
+     * Round-robin over the replicas, skipping the unhealthy ones.
+     */
+    Connection replicaConnection() throws SQLException {
+        int start = Math.floorMod(next.getAndIncrement(), replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get((start + i) % replicas.size());
+            if (!replica.healthy) {
+                continue;
+            }
+            try {
+                Connection connection = replica.dataSource.getConnection();
+                replicaReads.increment();
+                return connection;
+            } catch (SQLException e) {
+                replica.markDown(e.getMessage());
+            }
+        }
+        fallbacks.increment();
+        return primary.getConnection();
+    }
+
+    void checkHealth() {
+        for (Replica replica : replicas) {
+            try (Connection connection = replica.dataSource.getConnection();
+                 Statement statement = connection.createStatement();
+                 ResultSet resultSet = statement.executeQuery(LAG_QUERY)) {
+                resultSet.next();
+                double lag = resultSet.getDouble(1);
+                if (lag > maxLagSeconds) {
+                    replica.markDown(String.format("%.1f s behind the primary", lag));
+                } else {
+                    replica.markUp();
+                }
+            } catch (SQLException | RuntimeException e) {
+                replica.markDown(e.getMessage());
+            }
+        }
+    }
+
+    private static void close(DataSource dataSource) throws IOException {
+        if (dataSource instanceof Closeable) {
+            ((Closeable) dataSource).close();
+        }
+    }
+
+    @ManagedAttribute(description = "Replicas currently receiving reads")
+    public int getHealthyCount() {
+        int healthy = 0;
+        for (Replica replica : replicas) {
+            if (replica.healthy) {
+                healthy++;
+            }
+        }
+        return healthy;
+    }
+
+    @ManagedAttribute(description = "Connections taken from a replica since startup")
+    public long getReplicaReadCount() {
+        return replicaReads.sum();
+    }
+
+    @ManagedAttribute(description = "Replica reads sent to the primary because no replica was healthy")
+    public long getFallbackCount() {
+        return fallbacks.sum();
+    }
+
+    private static final class Replica {
+
+        private final String url;
+        private final DataSource dataSource;
+        // Assumed healthy until a connection or the first check fails
+        private volatile boolean healthy = true;
+
+        private Replica(String url, DataSource dataSource) {
+            this.url = url;
+            this.dataSource = dataSource;
+        }
+
+        private void markUp() {
+            if (!healthy) {
+                logger.info("Replica {} is back, sending it reads", url);
+                healthy = true;
+            }
+        }
+
+        private void markDown(String reason) {
+            if (healthy) {
+                logger.warn("Replica {} gets no reads: {}", url, reason);
+                healthy = false;
+            }
+        }
+    }
+}
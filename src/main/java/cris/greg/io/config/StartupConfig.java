@@ -0,0 +1,39 @@
+package cris.greg.io.config;
+
+import cris.greg.io.service.DeviceEventRelay;
+import cris.greg.io.service.DeviceStatsCounter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+/**
+ * Keeps the startup build (the {@code startup} Maven profile) behaving like the regular one. Spring AOT fixes
+ * bean conditions at build time, so {@code spring.flyway.enabled=false} would no longer remove the migration on
+ * startup; the strategy below reads it when it runs instead. With {@code spring.main.lazy-initialization}, the
+ * beans that start their own background work are still created at startup.
+ */
+@Configuration
+public class StartupConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(StartupConfig.class);
+
+    @Bean
+    public FlywayMigrationStrategy flywayMigrationStrategy(Environment environment) {
+        return flyway -> {
+            if (environment.getProperty("spring.flyway.enabled", Boolean.class, true)) {
+                flyway.migrate();
+            } else {
+                logger.info("Flyway migrations are disabled, the schema is left as it is");
+            }
+        };
+    }
+
+    @Bean
+    public static LazyInitializationExcludeFilter eagerDeviceWorkers() {
+        return LazyInitializationExcludeFilter.forBeanTypes(DeviceEventRelay.class, DeviceStatsCounter.class);
+    }
+}
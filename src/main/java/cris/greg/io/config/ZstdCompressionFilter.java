@@ -0,0 +1,319 @@
+package cris.greg.io.config;
+
+import com.github.luben.zstd.ZstdOutputStream;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.springframework.boot.web.server.Compression;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.util.MimeType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Compresses responses with zstd for clients that accept it, under the same server.compression settings
+ * Tomcat applies to gzip: only the configured MIME types, and only bodies of at least min-response-size. The
+ * start of each body is buffered until it reaches that size; smaller bodies are sent as they are, with their
+ * Content-Length. Tomcat leaves responses that already have a Content-Encoding alone, so nothing is compressed
+ * twice, and clients that do not accept zstd still get gzip from Tomcat.
+ */
+public class ZstdCompressionFilter extends OncePerRequestFilter {
+
+    static final String ZSTD = "zstd";
+
+    private static final String RESPONSE_ATTRIBUTE = ZstdCompressionFilter.class.getName() + ".response";
+    private static final int LEVEL = 3;
+
+    private final List<MimeType> mimeTypes = new ArrayList<>();
+    private final int minResponseSize;
+
+    public ZstdCompressionFilter(Compression compression) {
+        for (String mimeType : compression.getMimeTypes()) {
+            mimeTypes.add(MimeType.valueOf(mimeType));
+        }
+        this.minResponseSize = (int) compression.getMinResponseSize().toBytes();
+    }
+
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        // Asynchronous controllers write their body during the async dispatch, which has to finish the frame
+        return false;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        CompressingResponse compressing = (CompressingResponse) request.getAttribute(RESPONSE_ATTRIBUTE);
+        if (compressing == null) {
+            if ("HEAD".equals(request.getMethod()) || !acceptsZstd(request.getHeaders(HttpHeaders.ACCEPT_ENCODING))) {
+                chain.doFilter(request, response);
+                return;
+            }
+            compressing = new CompressingResponse(response);
+            request.setAttribute(RESPONSE_ATTRIBUTE, compressing);
+            response = compressing;
+        }
+        // On an async dispatch the response passed in already wraps the compressing one
+        chain.doFilter(request, response);
+        if (!isAsyncStarted(request)) {
+            compressing.finish();
+        }
+    }
+
+    /**
+     * @param acceptEncodings the Accept-Encoding header values
+     * @return true if one of them lists zstd with a weight above zero, or none
+     */
+    static boolean acceptsZstd(Enumeration<String> acceptEncodings) {
+        for (String header : Collections.list(acceptEncodings)) {
+            for (String coding : header.split(",")) {
+                String[] parts = coding.split(";");
+                if (!ZSTD.equalsIgnoreCase(parts[0].trim())) {
+                    continue;
+                }
+                for (int i = 1; i < parts.length; i++) {
+                    String parameter = parts[i].trim().toLowerCase(Locale.ROOT);
+                    if (parameter.startsWith("q=") && !acceptable(parameter.substring(2))) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return false for a weight of zero, and for a malformed or out of range one, which gets no zstd either
+     */
+    private static boolean acceptable(String weight) {
+        try {
+            double q = Double.parseDouble(weight);
+            return q > 0 && q <= 1;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private boolean compressible(HttpServletResponse response) {
+        int status = response.getStatus();
+        if (status == HttpStatus.NO_CONTENT.value() || status == HttpStatus.NOT_MODIFIED.value()
+                || response.getHeader(HttpHeaders.CONTENT_ENCODING) != null || response.getContentType() == null) {
+            return false;
+        }
+        MimeType contentType = MimeType.valueOf(response.getContentType());
+        for (MimeType mimeType : mimeTypes) {
+            if (mimeType.equalsTypeAndSubtype(contentType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private final class CompressingResponse extends HttpServletResponseWrapper {
+
+        private ByteArrayOutputStream buffer = new ByteArrayOutputStream(Math.min(minResponseSize, 8192));
+        private OutputStream target;
+        private ZstdOutputStream zstd;
+        private long contentLength = -1;
+        private ServletOutputStream outputStream;
+        private PrintWriter writer;
+        private boolean finished;
+
+        private CompressingResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            if (writer != null) {
+                throw new IllegalStateException("getWriter() has already been called");
+            }
+            return stream();
+        }
+
+        @Override
+        public PrintWriter getWriter() {
+            if (writer == null) {
+                if (outputStream != null) {
+                    throw new IllegalStateException("getOutputStream() has already been called");
+                }
+                writer = new PrintWriter(new OutputStreamWriter(stream(), Charset.forName(getCharacterEncoding())));
+            }
+            return writer;
+        }
+
+        @Override
+        public void setContentLength(int len) {
+            setContentLengthLong(len);
+        }
+
+        @Override
+        public void setContentLengthLong(long len) {
+            if (target == null) {
+                contentLength = len;
+            } else if (zstd == null) {
+                super.setContentLengthLong(len);
+            }
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                setContentLengthLong(Long.parseLong(value));
+            } else {
+                super.setHeader(name, value);
+            }
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                setContentLengthLong(Long.parseLong(value));
+            } else {
+                super.addHeader(name, value);
+            }
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            flush();
+            if (target != null) {
+                super.flushBuffer();
+            }
+        }
+
+        @Override
+        public void resetBuffer() {
+            if (target == null) {
+                buffer.reset();
+            }
+            super.resetBuffer();
+        }
+
+        @Override
+        public void reset() {
+            if (target == null) {
+                buffer.reset();
+                contentLength = -1;
+            }
+            super.reset();
+        }
+
+        private ServletOutputStream stream() {
+            if (outputStream == null) {
+                outputStream = new CompressingOutputStream();
+            }
+            return outputStream;
+        }
+
+        private void write(byte[] bytes, int offset, int length) throws IOException {
+            if (target != null) {
+                target.write(bytes, offset, length);
+                return;
+            }
+            buffer.write(bytes, offset, length);
+            if (buffer.size() >= minResponseSize) {
+                start(compressible(this));
+            }
+        }
+
+        private void flush() throws IOException {
+            if (target == null && getContentType() != null && !compressible(this)) {
+                // Event streams and other bodies that are never compressed must not wait for the threshold
+                start(false);
+            }
+            // Otherwise a body that may still turn out large enough to compress stays buffered
+            if (target != null) {
+                target.flush();
+            }
+        }
+
+        private void start(boolean compress) throws IOException {
+            HttpServletResponse response = (HttpServletResponse) getResponse();
+            if (compress) {
+                response.setHeader(HttpHeaders.CONTENT_ENCODING, ZSTD);
+                response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+                zstd = new ZstdOutputStream(response.getOutputStream(), LEVEL);
+                target = zstd;
+            } else {
+                if (contentLength >= 0) {
+                    response.setContentLengthLong(contentLength);
+                }
+                target = response.getOutputStream();
+            }
+            buffer.writeTo(target);
+            buffer = null;
+        }
+
+        private void finish() throws IOException {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            if (writer != null) {
+                writer.flush();
+            }
+            if (target == null) {
+                // The whole body is below the threshold, so its length is known
+                contentLength = buffer.size();
+                start(false);
+            }
+            if (zstd != null) {
+                zstd.close();
+            }
+        }
+
+        private final class CompressingOutputStream extends ServletOutputStream {
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                CompressingResponse.this.write(bytes, offset, length);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                CompressingResponse.this.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                finish();
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+                throw new UnsupportedOperationException("Non-blocking writes are not supported with zstd compression");
+            }
+        }
+    }
+}
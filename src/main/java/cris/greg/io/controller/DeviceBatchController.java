@@ -0,0 +1,100 @@
+package cris.greg.io.controller;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import cris.greg.io.exception.DeviceValidationException;
+import cris.greg.io.model.Device;
+import cris.greg.io.model.DeviceBatchResult;
+import cris.greg.io.service.DeviceBatchService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Bulk variants of the device endpoints. Requests take a JSON array or newline-delimited JSON,
+ * and the response holds one result per item, in request order.
+ */
+@RestController
+@RequestMapping("/api/devices/batch")
+@Profile("!reactive")
+@RequiredArgsConstructor
+public class DeviceBatchController {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeviceBatchController.class);
+    private final DeviceBatchService deviceBatchService;
+    private final ObjectMapper objectMapper;
+
+    @Operation(summary = "Create devices in bulk")
+    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "One result per device",
+                    content = @Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = DeviceBatchResult.class)))),
+            @ApiResponse(responseCode = "400", description = "Empty, oversized or malformed batch", content = @Content)})
+    @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<ResponseEntity<List<DeviceBatchResult>>> createDevices(@RequestBody List<Device> devices) {
+        logger.debug("Received request to create {} devices", devices.size());
+        return deviceBatchService.createDevices(devices).thenApply(ResponseEntity::ok);
+    }
+
+    @Operation(summary = "Create devices in bulk from newline-delimited JSON")
+    @PostMapping(consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public CompletableFuture<ResponseEntity<List<DeviceBatchResult>>> createDevicesNdjson(InputStream body) {
+        return createDevices(readNdjson(body, Device.class));
+    }
+
+    @Operation(summary = "Update devices in bulk", description = "Applies the non-null fields of each device, identified by its id.")
+    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "One result per device",
+                    content = @Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = DeviceBatchResult.class)))),
+            @ApiResponse(responseCode = "400", description = "Empty, oversized or malformed batch", content = @Content)})
+    @PatchMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<ResponseEntity<List<DeviceBatchResult>>> updateDevices(@RequestBody List<Device> devices) {
+        logger.debug("Received request to update {} devices", devices.size());
+        return deviceBatchService.updateDevices(devices).thenApply(ResponseEntity::ok);
+    }
+
+    @Operation(summary = "Update devices in bulk from newline-delimited JSON")
+    @PatchMapping(consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public CompletableFuture<ResponseEntity<List<DeviceBatchResult>>> updateDevicesNdjson(InputStream body) {
+        return updateDevices(readNdjson(body, Device.class));
+    }
+
+    @Operation(summary = "Delete devices in bulk")
+    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "One result per id",
+                    content = @Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = DeviceBatchResult.class)))),
+            @ApiResponse(responseCode = "400", description = "Empty, oversized or malformed batch", content = @Content)})
+    @DeleteMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<ResponseEntity<List<DeviceBatchResult>>> deleteDevices(@RequestBody List<UUID> ids) {
+        logger.debug("Received request to delete {} devices", ids.size());
+        return deviceBatchService.deleteDevices(ids).thenApply(ResponseEntity::ok);
+    }
+
+    @Operation(summary = "Delete devices in bulk from newline-delimited JSON ids")
+    @DeleteMapping(consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public CompletableFuture<ResponseEntity<List<DeviceBatchResult>>> deleteDevicesNdjson(InputStream body) {
+        return deleteDevices(readNdjson(body, UUID.class));
+    }
+
+    private <T> List<T> readNdjson(InputStream body, Class<T> type) {
+        try (MappingIterator<T> items = objectMapper.readerFor(type).readValues(body)) {
+            return items.readAll();
+        } catch (IOException e) {
+            throw new DeviceValidationException("Malformed NDJSON request. Check the request body and try again.",
+                    HttpStatus.BAD_REQUEST);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package cris.greg.io.controller;
+
+import cris.greg.io.config.DeviceProperties;
+import cris.greg.io.model.DeviceChange;
+import cris.greg.io.model.DeviceState;
+import cris.greg.io.service.DeviceChangeFeed;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static cris.greg.io.controller.DeviceRequests.LAST_EVENT_ID;
+import static cris.greg.io.controller.DeviceRequests.lastEventIdOf;
+
+/**
+ * Server-Sent Events feed of device changes, so dashboards are pushed updates instead of polling the listings.
+ */
+@RestController
+@RequestMapping("/api/devices/changes")
+@Profile("!reactive")
+@RequiredArgsConstructor
+public class DeviceChangeController {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeviceChangeController.class);
+    private static final AtomicInteger senderCount = new AtomicInteger();
+
+    private final DeviceChangeFeed changeFeed;
+    private final DeviceProperties properties;
+    // Sends block on slow sockets, so they run on their own threads rather than on the database executor
+    private final ExecutorService sender = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "device-changes-" + senderCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ScheduledExecutorService heartbeats = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "device-changes-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Set<DeviceChangeEmitter> emitters = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    public void startHeartbeats() {
+        long interval = properties.getChanges().getHeartbeat().toMillis();
+        heartbeats.scheduleAtFixedRate(() -> emitters.forEach(DeviceChangeEmitter::heartbeat),
+                interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Operation(summary = "Stream device changes", description = "Pushes created, updated, deleted and flushed events " +
+            "as they are committed, optionally filtered by brand and state. Reconnect with the Last-Event-ID header " +
+            "(or lastEventId parameter) to receive the changes missed meanwhile; a reset event means they are no " +
+            "longer buffered and the devices should be reloaded.")
+    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Change stream",
+            content = @Content(mediaType = MediaType.TEXT_EVENT_STREAM_VALUE, schema = @Schema(implementation = DeviceChange.class))),
+            @ApiResponse(responseCode = "400", description = "Invalid Last-Event-ID", content = @Content)})
+    @GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamChanges(
+            @Parameter(description = "Only changes of devices of this brand") @RequestParam(value = "brand", required = false) String brand,
+            @Parameter(description = "Only changes of devices in this state") @RequestParam(value = "state", required = false) DeviceState state,
+            @RequestHeader(value = LAST_EVENT_ID, required = false) String lastEventIdHeader,
+            @Parameter(description = "Alternative to the Last-Event-ID header") @RequestParam(value = "lastEventId", required = false) String lastEventIdParam) {
+        Long lastEventId = lastEventIdOf(lastEventIdHeader, lastEventIdParam);
+        logger.debug("Streaming changes for brand {} and state {} after {}", brand, state, lastEventId);
+        DeviceProperties.Changes settings = properties.getChanges();
+        SseEmitter emitter = new SseEmitter(settings.getTimeout().toMillis());
+        DeviceChangeEmitter listener = new DeviceChangeEmitter(emitter, sender, settings.getSubscriberQueue());
+        DeviceChangeFeed.Subscription subscription = changeFeed.subscribe(brand, state, lastEventId, listener);
+        Runnable unsubscribe = () -> {
+            listener.close();
+            emitters.remove(listener);
+            changeFeed.unsubscribe(subscription);
+        };
+        emitter.onCompletion(unsubscribe);
+        emitter.onTimeout(unsubscribe);
+        emitter.onError(error -> unsubscribe.run());
+        emitters.add(listener);
+        listener.start(subscription, unsubscribe);
+        return emitter;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        heartbeats.shutdownNow();
+        sender.shutdownNow();
+    }
+}
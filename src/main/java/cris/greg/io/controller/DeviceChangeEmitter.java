@@ -0,0 +1,134 @@
+package cris.greg.io.controller;
+
+import cris.greg.io.model.DeviceChange;
+import cris.greg.io.service.DeviceChangeFeed;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Delivers one client's device changes over SSE. The feed queues changes on the writer's thread and a single
+ * drain task at a time sends them on the sender executor, so a slow connection only ever holds its own task.
+ * After an overflow the queued changes are still sent, then the stream completes and the client reconnects
+ * with its Last-Event-ID.
+ */
+final class DeviceChangeEmitter implements DeviceChangeFeed.Listener {
+
+    private final SseEmitter emitter;
+    private final Executor sender;
+    private final BlockingQueue<DeviceChange> queue;
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private volatile boolean started;
+    private volatile boolean overflowed;
+    private volatile boolean heartbeatDue;
+    private volatile boolean closed;
+    private List<DeviceChange> backlog = Collections.emptyList();
+    private Runnable onClose = () -> { };
+
+    DeviceChangeEmitter(SseEmitter emitter, Executor sender, int capacity) {
+        this.emitter = emitter;
+        this.sender = sender;
+        this.queue = new LinkedBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Starts sending, beginning with the subscription backlog. Live changes offered before this are held back.
+     *
+     * @param subscription the feed subscription of this emitter
+     * @param onClose called once the client is gone
+     */
+    void start(DeviceChangeFeed.Subscription subscription, Runnable onClose) {
+        this.backlog = subscription.getBacklog();
+        this.onClose = onClose;
+        started = true;
+        schedule();
+    }
+
+    void close() {
+        closed = true;
+        queue.clear();
+    }
+
+    /**
+     * Sends a keep-alive comment, unless the client is already busy receiving changes.
+     */
+    void heartbeat() {
+        heartbeatDue = true;
+        schedule();
+    }
+
+    @Override
+    public boolean offer(DeviceChange change) {
+        if (!queue.offer(change)) {
+            return false;
+        }
+        schedule();
+        return true;
+    }
+
+    @Override
+    public void overflowed() {
+        overflowed = true;
+        schedule();
+    }
+
+    private void schedule() {
+        if (started && !closed && draining.compareAndSet(false, true)) {
+            try {
+                sender.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                draining.set(false);
+            }
+        }
+    }
+
+    private void drain() {
+        do {
+            try {
+                List<DeviceChange> pending = backlog;
+                backlog = Collections.emptyList();
+                for (DeviceChange change : pending) {
+                    send(change);
+                }
+                boolean sent = !pending.isEmpty();
+                DeviceChange change;
+                while (!closed && (change = queue.poll()) != null) {
+                    send(change);
+                    sent = true;
+                }
+                if (heartbeatDue && !closed) {
+                    heartbeatDue = false;
+                    if (!sent) {
+                        emitter.send(SseEmitter.event().comment(""));
+                    }
+                }
+                if (overflowed && !closed) {
+                    close();
+                    emitter.complete();
+                }
+            } catch (IOException | IllegalStateException e) {
+                // The client went away or the emitter already completed
+                close();
+                onClose.run();
+            } finally {
+                draining.set(false);
+            }
+        } while (!closed && (overflowed || heartbeatDue || !queue.isEmpty()) && draining.compareAndSet(false, true));
+    }
+
+    private void send(DeviceChange change) throws IOException {
+        emitter.send(SseEmitter.event()
+                .id(String.valueOf(change.getId()))
+                .name(change.getType().name().toLowerCase(Locale.ROOT))
+                .data(change, MediaType.APPLICATION_JSON));
+    }
+}
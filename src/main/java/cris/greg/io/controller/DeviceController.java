@@ -1,33 +1,55 @@
 package cris.greg.io.controller;
 
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import cris.greg.io.model.Device;
+import cris.greg.io.model.DeviceChange;
+import cris.greg.io.model.DeviceField;
 import cris.greg.io.model.DeviceState;
+import cris.greg.io.model.DeviceStats;
 import cris.greg.io.service.DeviceService;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import static cris.greg.io.controller.DeviceRequests.*;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 @RestController
 @RequestMapping("/api/devices")
+@Profile("!reactive")
 @RequiredArgsConstructor
 public class DeviceController {
 
     private static final Logger logger = LoggerFactory.getLogger(DeviceController.class);
+
     private final DeviceService deviceService;
+    private final ObjectMapper objectMapper;
 
     @Operation(summary = "Create a new device")
     @ApiResponses(value = {@ApiResponse(responseCode = "201", description = "Device created",
@@ -37,86 +59,265 @@ public class DeviceController {
                     content = @Content)})
     @PostMapping
     public CompletableFuture<ResponseEntity<Device>> createDevice(@RequestBody Device device) {
-        logger.info("Recieved request to create device: {}", device);
+        logger.debug("Received request to create device");
         return deviceService.saveDevice(device)
                 .thenApply(savedDevice -> {
-                    logger.info("Device created: {}", savedDevice);
-                    return ResponseEntity.status(HttpStatus.CREATED).body(savedDevice);
+                    logger.debug("Device created: {}", savedDevice.getId());
+                    return ResponseEntity.status(HttpStatus.CREATED).eTag(eTagOf(savedDevice)).body(savedDevice);
                 });
     }
 
-    @Operation(summary = "Retrieve all devices", description = "Fetches a list of all devices available in the system.")
+    @Operation(summary = "Retrieve all devices", description = "Fetches one page of devices ordered by creation time. " +
+            "When more devices exist, the " + NEXT_CURSOR_HEADER + " response header holds the cursor for the next page.")
     @ApiResponses(value = {
-        @ApiResponse(responseCode = "200", description = "Successfully retrieved all devices",
+        @ApiResponse(responseCode = "200", description = "Successfully retrieved a page of devices",
                     content = @Content(mediaType = "application/json", schema = @Schema(implementation = Device.class))),
+        @ApiResponse(responseCode = "400", description = "Invalid cursor or limit", content = @Content),
         @ApiResponse(responseCode = "404", description = "No devices found", content = @Content)
     })
     @GetMapping
-    public CompletableFuture<ResponseEntity<List<Device>>> getAllDevices() {
-        logger.info("Retrieving all devices");
-        return deviceService.getAllDevices()
-                .thenApply(ResponseEntity::ok);
+    public CompletableFuture<ResponseEntity<List<Device>>> getAllDevices(
+            @Parameter(description = "Cursor returned by the previous page") @RequestParam(value = "cursor", required = false) String cursor,
+            @Parameter(description = "Page size, capped by the server") @RequestParam(value = "limit", required = false) Integer limit,
+            @Parameter(description = "Comma-separated fields to return, such as id,state; all when omitted") @RequestParam(value = "fields", required = false) String fields) {
+        logger.debug("Retrieving all devices");
+        return deviceService.getAllDevices(fieldsOf(fields), cursor, limit)
+                .thenApply(DeviceRequests::toPageResponse);
+    }
+
+    @Operation(summary = "Stream all devices", description = "Streams every device as newline-delimited JSON, ordered by creation time.")
+    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Devices streamed",
+            content = @Content(mediaType = MediaType.APPLICATION_NDJSON_VALUE, schema = @Schema(implementation = Device.class)))})
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAllDevices(
+            @Parameter(description = "Comma-separated fields to return, such as id,state; all when omitted") @RequestParam(value = "fields", required = false) String fields) {
+        logger.debug("Streaming all devices");
+        Set<DeviceField> selected = fieldsOf(fields);
+        return toNdjsonResponse(consumer -> deviceService.streamAllDevices(selected, consumer));
     }
 
-    @Operation(summary = "Get a device by ID")
+    @Operation(summary = "Read device events", description = "Returns the relayed outbox events after the given " +
+            "seq, oldest first, each carrying the device after the change. Pass the id of the last event applied as " +
+            "after to sync incrementally; an empty list means the consumer is up to date.")
+    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Events after the given seq",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = DeviceChange.class))),
+            @ApiResponse(responseCode = "400", description = "Invalid after or limit", content = @Content),
+            @ApiResponse(responseCode = "410", description = "Events after the given seq were pruned; resync from the listings",
+                    content = @Content)})
+    @GetMapping("/events")
+    public CompletableFuture<List<DeviceChange>> getEvents(
+            @Parameter(description = "Seq of the last event applied") @RequestParam(value = "after", defaultValue = "0") long after,
+            @Parameter(description = "Maximum number of events, capped by the server") @RequestParam(value = "limit", required = false) Integer limit) {
+        logger.debug("Retrieving device events after {}", after);
+        return deviceService.getEvents(after, limit);
+    }
+
+    @Operation(summary = "Search devices", description = "Fetches one page of the devices matching every given " +
+            "criterion, in the requested order. When more devices match, the " + NEXT_CURSOR_HEADER + " response " +
+            "header holds the cursor for the next page; it is only valid with the same criteria and sort.")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Successfully retrieved a page of matching devices, possibly empty",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = Device.class))),
+        @ApiResponse(responseCode = "400", description = "Invalid criteria, sort, cursor or limit", content = @Content)
+    })
+    @GetMapping("/search")
+    public CompletableFuture<ResponseEntity<List<Device>>> searchDevices(
+            @Parameter(description = "Exact brand") @RequestParam(value = "brand", required = false) String brand,
+            @Parameter(description = "Comma-separated states, any of which matches") @RequestParam(value = "state", required = false) List<DeviceState> states,
+            @Parameter(description = "Case-insensitive name prefix") @RequestParam(value = "name", required = false) String name,
+            @Parameter(description = "Text the name is similar to, tolerating typos") @RequestParam(value = "q", required = false) String q,
+            @Parameter(description = "Created at or after, such as 2025-01-01T00:00:00") @RequestParam(value = "createdFrom", required = false)
+                    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime createdFrom,
+            @Parameter(description = "Created before") @RequestParam(value = "createdTo", required = false)
+                    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime createdTo,
+            @Parameter(description = "creationTime, name, or either with a leading - for descending order") @RequestParam(value = "sort", defaultValue = "creationTime") String sort,
+            @Parameter(description = "Cursor returned by the previous page") @RequestParam(value = "cursor", required = false) String cursor,
+            @Parameter(description = "Page size, capped by the server") @RequestParam(value = "limit", required = false) Integer limit,
+            @Parameter(description = "Comma-separated fields to return, such as id,state; all when omitted") @RequestParam(value = "fields", required = false) String fields) {
+        logger.debug("Searching devices");
+        return deviceService.searchDevices(searchOf(brand, states, name, q, createdFrom, createdTo, sort), fieldsOf(fields), cursor, limit)
+                .thenApply(DeviceRequests::toPageResponse);
+    }
+
+    @Operation(summary = "Count devices", description = "Returns the number of devices in total, by brand, by state " +
+            "and by brand and state. With device.stats.in-memory the counts come from memory and trail writes by " +
+            "about a second.")
+    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Device counts",
+            content = @Content(mediaType = "application/json", schema = @Schema(implementation = DeviceStats.class)))})
+    @GetMapping("/stats")
+    public CompletableFuture<DeviceStats> getStats() {
+        logger.debug("Counting devices");
+        return deviceService.getStats();
+    }
+
+    @Operation(summary = "Get a device by ID", description = "Returns the device with its version as ETag. " +
+            "Send the ETag back in If-None-Match to get 304 without a body while the device is unchanged.")
     @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Found the device",
                     content = {@Content(mediaType = "application/json",  schema = @Schema(implementation = Device.class))}),
+            @ApiResponse(responseCode = "304", description = "Device unchanged since the given ETag", content = @Content),
             @ApiResponse(responseCode = "404", description = "Device not found", content = @Content)})
     @GetMapping("/{id}")
-    public CompletableFuture<ResponseEntity<Device>> getDeviceById(@PathVariable("id") UUID id) {
-        logger.info("Retrieving device with id: {}", id);
+    public CompletableFuture<ResponseEntity<Device>> getDeviceById(@PathVariable("id") UUID id,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @Parameter(description = "Comma-separated fields to return, such as id,state; all when omitted") @RequestParam(value = "fields", required = false) String fields) {
+        logger.debug("Retrieving device with id: {}", id);
+        Set<DeviceField> selected = fieldsOf(fields);
         return deviceService.getDeviceById(id)
-                .thenApply(ResponseEntity::ok);
+                .thenApply(device -> {
+                    String eTag = eTagOf(device);
+                    if (matchesAny(ifNoneMatch, eTag)) {
+                        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+                    }
+                    return ResponseEntity.ok().eTag(eTag).body(DeviceField.select(device, selected));
+                });
     }
 
-    @Operation(summary = "Update a device")
+    @Operation(summary = "Update a device", description = "Send the device ETag in If-Match to reject the update " +
+            "with 412 when the device was changed since it was read.")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Device updated", content = {@Content(mediaType = "application/json",
                     schema = @Schema(implementation = Device.class))}),
             @ApiResponse(responseCode = "404", description = "Device not found", content = @Content),
-            @ApiResponse(responseCode = "406", description = "Invalid update", content = @Content)})
+            @ApiResponse(responseCode = "406", description = "Invalid update", content = @Content),
+            @ApiResponse(responseCode = "412", description = "Device changed since the If-Match ETag", content = @Content)})
     @PutMapping("/{id}")
-    public CompletableFuture<ResponseEntity<Device>> updateDevice(@PathVariable("id") UUID id, @RequestBody Device updatedDevice) {
-        logger.info("Trying to update device with id: {}", id);
-        return deviceService.updateDevice(id, updatedDevice)
-                .thenApply(ResponseEntity::ok);
+    public CompletableFuture<ResponseEntity<Device>> updateDevice(@PathVariable("id") UUID id, @RequestBody Device updatedDevice,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        logger.debug("Trying to update device with id: {}", id);
+        return deviceService.updateDevice(id, updatedDevice, versionOf(ifMatch))
+                .thenApply(savedDevice -> ResponseEntity.ok().eTag(eTagOf(savedDevice)).body(savedDevice));
     }
 
+    @Operation(summary = "Partially update a device", description = "Applies a JSON Merge Patch (RFC 7396): only the " +
+            "name, brand and state present in the body change. Name and brand cannot be removed, and cannot change " +
+            "while the device is IN_USE.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Device updated", content = {@Content(mediaType = "application/json",
+                    schema = @Schema(implementation = Device.class))}),
+            @ApiResponse(responseCode = "400", description = "Malformed or empty patch", content = @Content),
+            @ApiResponse(responseCode = "404", description = "Device not found", content = @Content),
+            @ApiResponse(responseCode = "406", description = "Invalid update", content = @Content),
+            @ApiResponse(responseCode = "412", description = "Device changed since the If-Match ETag", content = @Content)})
+    @PatchMapping(value = "/{id}", consumes = {MERGE_PATCH_JSON, MediaType.APPLICATION_JSON_VALUE})
+    public CompletableFuture<ResponseEntity<Device>> patchDevice(@PathVariable("id") UUID id, @RequestBody JsonNode patch,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        logger.debug("Trying to patch device with id: {}", id);
+        return deviceService.patchDevice(id, toChanges(patch), versionOf(ifMatch))
+                .thenApply(savedDevice -> ResponseEntity.ok().eTag(eTagOf(savedDevice)).body(savedDevice));
+    }
 
-    @Operation(summary = "Get devices by brand")
+    @Operation(summary = "Change the state of a device", description = "Takes a body like {\"state\": \"IN_USE\"}. " +
+            "State changes are always allowed and cost a single UPDATE.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Device updated", content = {@Content(mediaType = "application/json",
+                    schema = @Schema(implementation = Device.class))}),
+            @ApiResponse(responseCode = "400", description = "Invalid state", content = @Content),
+            @ApiResponse(responseCode = "404", description = "Device not found", content = @Content),
+            @ApiResponse(responseCode = "412", description = "Device changed since the If-Match ETag", content = @Content)})
+    @PatchMapping("/{id}/state")
+    public CompletableFuture<ResponseEntity<Device>> updateDeviceState(@PathVariable("id") UUID id, @RequestBody Device change,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        logger.debug("Changing state of device with id: {} to {}", id, change.getState());
+        return deviceService.updateDeviceState(id, change.getState(), versionOf(ifMatch))
+                .thenApply(savedDevice -> ResponseEntity.ok().eTag(eTagOf(savedDevice)).body(savedDevice));
+    }
+
+
+    @Operation(summary = "Get devices by brand", description = "Fetches one page of devices of a brand, paginated like the device list.")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Found devices by brand",
                     content = {@Content(mediaType = "application/json", schema = @Schema(implementation = Device.class))}),
+            @ApiResponse(responseCode = "400", description = "Invalid cursor or limit", content = @Content),
             @ApiResponse(responseCode = "404", description = "No devices found for the specified brand", content = @Content)
     })
     @GetMapping("/brand/{brand}")
-    public CompletableFuture<ResponseEntity<List<Device>>> getDevicesByBrand(@PathVariable("brand") String brand) {
-        logger.info("Retrieving  all devices with brand: {}", brand);
-        return deviceService.getDevicesByBrand(brand)
-                .thenApply(ResponseEntity::ok);
+    public CompletableFuture<ResponseEntity<List<Device>>> getDevicesByBrand(@PathVariable("brand") String brand,
+            @Parameter(description = "Cursor returned by the previous page") @RequestParam(value = "cursor", required = false) String cursor,
+            @Parameter(description = "Page size, capped by the server") @RequestParam(value = "limit", required = false) Integer limit,
+            @Parameter(description = "Comma-separated fields to return, such as id,state; all when omitted") @RequestParam(value = "fields", required = false) String fields) {
+        logger.debug("Retrieving  all devices with brand: {}", brand);
+        return deviceService.getDevicesByBrand(brand, fieldsOf(fields), cursor, limit)
+                .thenApply(DeviceRequests::toPageResponse);
+    }
+
+    @Operation(summary = "Stream devices by brand", description = "Streams the devices of a brand as newline-delimited JSON.")
+    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Devices streamed",
+            content = @Content(mediaType = MediaType.APPLICATION_NDJSON_VALUE, schema = @Schema(implementation = Device.class)))})
+    @GetMapping(value = "/brand/{brand}/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamDevicesByBrand(@PathVariable("brand") String brand,
+            @Parameter(description = "Comma-separated fields to return, such as id,state; all when omitted") @RequestParam(value = "fields", required = false) String fields) {
+        logger.debug("Streaming all devices with brand: {}", brand);
+        Set<DeviceField> selected = fieldsOf(fields);
+        return toNdjsonResponse(consumer -> deviceService.streamDevicesByBrand(brand, selected, consumer));
     }
 
-    @Operation(summary = "Get devices by state")
+    @Operation(summary = "Get devices by state", description = "Fetches one page of devices in a state, paginated like the device list.")
     @ApiResponses(value = { @ApiResponse(responseCode = "200", description = "Found devices by state",
             content = {@Content(mediaType = "application/json", schema = @Schema(implementation = Device.class))}),
+            @ApiResponse(responseCode = "400", description = "Invalid cursor or limit", content = @Content),
             @ApiResponse(responseCode = "404", description = "No devices found for the specified state", content = @Content)
     })
     @GetMapping("/state/{state}")
-    public CompletableFuture<ResponseEntity<List<Device>>> getDevicesByState(@PathVariable("state") DeviceState state) {
-        logger.info("Retrieving  all devices with state: {}", state);
-        return deviceService.getDevicesByState(state)
-                .thenApply(ResponseEntity::ok);
+    public CompletableFuture<ResponseEntity<List<Device>>> getDevicesByState(@PathVariable("state") DeviceState state,
+            @Parameter(description = "Cursor returned by the previous page") @RequestParam(value = "cursor", required = false) String cursor,
+            @Parameter(description = "Page size, capped by the server") @RequestParam(value = "limit", required = false) Integer limit,
+            @Parameter(description = "Comma-separated fields to return, such as id,state; all when omitted") @RequestParam(value = "fields", required = false) String fields) {
+        logger.debug("Retrieving  all devices with state: {}", state);
+        return deviceService.getDevicesByState(state, fieldsOf(fields), cursor, limit)
+                .thenApply(DeviceRequests::toPageResponse);
+    }
+
+    @Operation(summary = "Stream devices by state", description = "Streams the devices in a state as newline-delimited JSON.")
+    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Devices streamed",
+            content = @Content(mediaType = MediaType.APPLICATION_NDJSON_VALUE, schema = @Schema(implementation = Device.class)))})
+    @GetMapping(value = "/state/{state}/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamDevicesByState(@PathVariable("state") DeviceState state,
+            @Parameter(description = "Comma-separated fields to return, such as id,state; all when omitted") @RequestParam(value = "fields", required = false) String fields) {
+        logger.debug("Streaming all devices with state: {}", state);
+        Set<DeviceField> selected = fieldsOf(fields);
+        return toNdjsonResponse(consumer -> deviceService.streamDevicesByState(state, selected, consumer));
+    }
+
+    @Operation(summary = "Get devices by brand and state", description = "Fetches one page of devices matching both filters, paginated like the device list.")
+    @ApiResponses(value = { @ApiResponse(responseCode = "200", description = "Found devices by brand and state",
+            content = {@Content(mediaType = "application/json", schema = @Schema(implementation = Device.class))}),
+            @ApiResponse(responseCode = "400", description = "Invalid cursor or limit", content = @Content),
+            @ApiResponse(responseCode = "404", description = "No devices found for the specified brand and state", content = @Content)
+    })
+    @GetMapping("/brand/{brand}/state/{state}")
+    public CompletableFuture<ResponseEntity<List<Device>>> getDevicesByBrandAndState(@PathVariable("brand") String brand,
+            @PathVariable("state") DeviceState state,
+            @Parameter(description = "Cursor returned by the previous page") @RequestParam(value = "cursor", required = false) String cursor,
+            @Parameter(description = "Page size, capped by the server") @RequestParam(value = "limit", required = false) Integer limit,
+            @Parameter(description = "Comma-separated fields to return, such as id,state; all when omitted") @RequestParam(value = "fields", required = false) String fields) {
+        logger.debug("Retrieving  all devices with brand: {} and state: {}", brand, state);
+        return deviceService.getDevicesByBrandAndState(brand, state, fieldsOf(fields), cursor, limit)
+                .thenApply(DeviceRequests::toPageResponse);
+    }
+
+    @Operation(summary = "Stream devices by brand and state", description = "Streams the devices matching both filters as newline-delimited JSON.")
+    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Devices streamed",
+            content = @Content(mediaType = MediaType.APPLICATION_NDJSON_VALUE, schema = @Schema(implementation = Device.class)))})
+    @GetMapping(value = "/brand/{brand}/state/{state}/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamDevicesByBrandAndState(@PathVariable("brand") String brand,
+                                                                              @PathVariable("state") DeviceState state,
+            @Parameter(description = "Comma-separated fields to return, such as id,state; all when omitted") @RequestParam(value = "fields", required = false) String fields) {
+        logger.debug("Streaming all devices with brand: {} and state: {}", brand, state);
+        Set<DeviceField> selected = fieldsOf(fields);
+        return toNdjsonResponse(consumer -> deviceService.streamDevicesByBrandAndState(brand, state, selected, consumer));
     }
 
     @Operation(summary = "Delete a device by ID")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "204", description = "Device deleted", content = @Content),
             @ApiResponse(responseCode = "404", description = "Device not found", content = @Content),
-            @ApiResponse(responseCode = "406", description = "Invalid delete", content = @Content)})
+            @ApiResponse(responseCode = "406", description = "Invalid delete", content = @Content),
+            @ApiResponse(responseCode = "412", description = "Device changed since the If-Match ETag", content = @Content)})
     @DeleteMapping("/{id}")
-    public CompletableFuture<ResponseEntity<Void>> deleteDevice(@PathVariable("id") UUID id) {
-        logger.info("Trying to deleted device with id: {}", id);
-        return deviceService.deleteDevice(id)
+    public CompletableFuture<ResponseEntity<Void>> deleteDevice(@PathVariable("id") UUID id,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        logger.debug("Trying to deleted device with id: {}", id);
+        return deviceService.deleteDevice(id, versionOf(ifMatch))
                 .thenApply(v -> ResponseEntity.noContent().build());
     }
 
@@ -128,4 +329,21 @@ public class DeviceController {
         logger.info("Flushing all devices");
         return deviceService.flush().thenApply(clean -> ResponseEntity.noContent().build());
     }
-}
\ No newline at end of file
+
+    /**
+     * Wraps a streaming service call so each device is written as one JSON line as soon as it is read.
+     */
+    private ResponseEntity<StreamingResponseBody> toNdjsonResponse(Consumer<Consumer<Device>> source) {
+        StreamingResponseBody body = out -> source.accept(device -> writeLine(out, device));
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    private void writeLine(OutputStream out, Device device) {
+        try {
+            out.write(objectMapper.writeValueAsBytes(device));
+            out.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
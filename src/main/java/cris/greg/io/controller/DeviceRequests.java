@@ -0,0 +1,199 @@
+package cris.greg.io.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import cris.greg.io.exception.DeviceValidationException;
+import cris.greg.io.model.Device;
+import cris.greg.io.model.DeviceField;
+import cris.greg.io.model.DevicePage;
+import cris.greg.io.model.DeviceSearch;
+import cris.greg.io.model.DeviceSort;
+import cris.greg.io.model.DeviceState;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.time.LocalDateTime;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Request parsing and entity tags shared by the servlet and reactive device controllers, so both stacks
+ * expose the same contract.
+ */
+final class DeviceRequests {
+
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    static final String MERGE_PATCH_JSON = "application/merge-patch+json";
+    static final String LAST_EVENT_ID = "Last-Event-ID";
+
+    private DeviceRequests() {
+    }
+
+    /**
+     * Parses a comma-separated fields parameter such as "id,state".
+     *
+     * @return the fields, or null for whole devices when the parameter is absent or names every field
+     * @throws DeviceValidationException if a field is unknown or none is given
+     */
+    static Set<DeviceField> fieldsOf(String fields) {
+        if (fields == null) {
+            return null;
+        }
+        Set<DeviceField> selected = EnumSet.noneOf(DeviceField.class);
+        for (String name : fields.split(",")) {
+            String property = name.trim();
+            if (property.isEmpty()) {
+                continue;
+            }
+            DeviceField field = DeviceField.of(property);
+            if (field == null) {
+                throw new DeviceValidationException("Unknown field: " + property, HttpStatus.BAD_REQUEST);
+            }
+            selected.add(field);
+        }
+        if (selected.isEmpty()) {
+            throw new DeviceValidationException("Fields must not be empty", HttpStatus.BAD_REQUEST);
+        }
+        return selected.size() == DeviceField.values().length ? null : selected;
+    }
+
+    /**
+     * Builds the criteria of a search request. Blank text parameters and an empty state list are ignored.
+     *
+     * @throws DeviceValidationException if the sort is unknown
+     */
+    static DeviceSearch searchOf(String brand, List<DeviceState> states, String name, String q,
+                                 LocalDateTime createdFrom, LocalDateTime createdTo, String sort) {
+        DeviceSort order = DeviceSort.of(sort);
+        if (order == null) {
+            throw new DeviceValidationException("Unknown sort: " + sort, HttpStatus.BAD_REQUEST);
+        }
+        return DeviceSearch.builder()
+                .brand(blankToNull(brand))
+                .states(states == null || states.isEmpty() ? null : EnumSet.copyOf(states))
+                .namePrefix(blankToNull(name))
+                .nameMatch(blankToNull(q))
+                .createdFrom(createdFrom)
+                .createdTo(createdTo)
+                .sort(order)
+                .build();
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.trim().isEmpty() ? null : value.trim();
+    }
+
+    /**
+     * Reads the name, brand and state members of a merge patch; other members are read-only and ignored.
+     *
+     * @throws DeviceValidationException if the patch is not an object or removes or mistypes a member
+     */
+    static Device toChanges(JsonNode patch) {
+        if (patch == null || !patch.isObject()) {
+            throw new DeviceValidationException("Merge patch must be a JSON object", HttpStatus.BAD_REQUEST);
+        }
+        Device changes = new Device();
+        changes.setName(patchText(patch, "name"));
+        changes.setBrand(patchText(patch, "brand"));
+        String state = patchText(patch, "state");
+        if (state != null) {
+            try {
+                changes.setState(DeviceState.valueOf(state));
+            } catch (IllegalArgumentException e) {
+                throw new DeviceValidationException("Invalid state", HttpStatus.BAD_REQUEST);
+            }
+        }
+        return changes;
+    }
+
+    private static String patchText(JsonNode patch, String field) {
+        JsonNode value = patch.get(field);
+        if (value == null) {
+            return null;
+        }
+        if (!value.isTextual()) {
+            throw new DeviceValidationException(field + " must be a string and cannot be removed", HttpStatus.BAD_REQUEST);
+        }
+        return value.asText();
+    }
+
+    /**
+     * The device version is its entity tag, so a conditional request never has to hash the body.
+     */
+    static String eTagOf(Device device) {
+        return "\"" + device.getVersion() + "\"";
+    }
+
+    /**
+     * Checks an If-None-Match header against the current entity tag, using weak comparison.
+     */
+    static boolean matchesAny(String header, String eTag) {
+        if (header == null) {
+            return false;
+        }
+        for (String candidate : header.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*") || stripWeakPrefix(tag).equals(eTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Extracts the expected version from an If-Match header. If-Match uses strong comparison (RFC 9110, 13.1.1),
+     * so a weak entity tag never matches.
+     *
+     * @return the version, or null when the header is absent or "*"
+     * @throws DeviceValidationException with 412 if the tag is weak, or 400 if the header is not a single
+     *                                   device entity tag
+     */
+    static Long versionOf(String ifMatch) {
+        if (ifMatch == null || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String tag = ifMatch.trim();
+        if (tag.startsWith("W/")) {
+            throw new DeviceValidationException("A weak entity tag never matches If-Match", HttpStatus.PRECONDITION_FAILED);
+        }
+        try {
+            if (tag.length() < 2 || !tag.startsWith("\"") || !tag.endsWith("\"")) {
+                throw new NumberFormatException(tag);
+            }
+            return Long.valueOf(tag.substring(1, tag.length() - 1));
+        } catch (NumberFormatException e) {
+            throw new DeviceValidationException("Invalid If-Match header", HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * Reads the id of the last change a client received, from the header its EventSource sends on reconnect or
+     * from the query parameter used for the first connection.
+     *
+     * @return the id, or null to start from the next change
+     * @throws DeviceValidationException if the value is not a number
+     */
+    static Long lastEventIdOf(String header, String parameter) {
+        String value = header != null ? header : parameter;
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return Long.valueOf(value.trim());
+        } catch (NumberFormatException e) {
+            throw new DeviceValidationException("Invalid Last-Event-ID", HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    private static String stripWeakPrefix(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+
+    static ResponseEntity<List<Device>> toPageResponse(DevicePage page) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        return response.body(page.getDevices());
+    }
+}
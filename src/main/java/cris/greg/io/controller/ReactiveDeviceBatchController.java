@@ -0,0 +1,56 @@
+package cris.greg.io.controller;
+
+import cris.greg.io.model.Device;
+import cris.greg.io.model.DeviceBatchResult;
+import cris.greg.io.service.DeviceBatchService;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * WebFlux variant of {@link DeviceBatchController} for the reactive profile. The body is decoded without
+ * blocking, from a JSON array or newline-delimited JSON alike; the batch itself still runs on
+ * {@link DeviceBatchService}, whose chunked JDBC writes have no R2DBC equivalent.
+ */
+@RestController
+@RequestMapping("/api/devices/batch")
+@Profile("reactive")
+@RequiredArgsConstructor
+public class ReactiveDeviceBatchController {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveDeviceBatchController.class);
+    private final DeviceBatchService deviceBatchService;
+
+    @PostMapping(consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Mono<ResponseEntity<List<DeviceBatchResult>>> createDevices(@RequestBody Flux<Device> devices) {
+        return devices.collectList().flatMap(items -> {
+            logger.debug("Received request to create {} devices", items.size());
+            return Mono.fromFuture(deviceBatchService.createDevices(items));
+        }).map(ResponseEntity::ok);
+    }
+
+    @PatchMapping(consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Mono<ResponseEntity<List<DeviceBatchResult>>> updateDevices(@RequestBody Flux<Device> devices) {
+        return devices.collectList().flatMap(items -> {
+            logger.debug("Received request to update {} devices", items.size());
+            return Mono.fromFuture(deviceBatchService.updateDevices(items));
+        }).map(ResponseEntity::ok);
+    }
+
+    @DeleteMapping(consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Mono<ResponseEntity<List<DeviceBatchResult>>> deleteDevices(@RequestBody Flux<UUID> ids) {
+        return ids.collectList().flatMap(items -> {
+            logger.debug("Received request to delete {} devices", items.size());
+            return Mono.fromFuture(deviceBatchService.deleteDevices(items));
+        }).map(ResponseEntity::ok);
+    }
+}
@@ -0,0 +1,221 @@
+package cris.greg.io.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import cris.greg.io.config.DeviceProperties;
+import cris.greg.io.model.Device;
+import cris.greg.io.model.DeviceChange;
+import cris.greg.io.model.DeviceField;
+import cris.greg.io.model.DeviceState;
+import cris.greg.io.model.DeviceStats;
+import cris.greg.io.service.ReactiveDeviceService;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Profile;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+
+import static cris.greg.io.controller.DeviceRequests.*;
+
+/**
+ * WebFlux variant of {@link DeviceController} for the reactive profile, with the same paths, headers, status
+ * codes and error bodies. Pages are at most device.pagination.max-size devices and are collected before the
+ * X-Next-Cursor header is written; the /stream endpoints emit devices as the database returns them and only
+ * as fast as the client reads.
+ */
+@RestController
+@RequestMapping("/api/devices")
+@Profile("reactive")
+@RequiredArgsConstructor
+public class ReactiveDeviceController {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveDeviceController.class);
+
+    private final ReactiveDeviceService deviceService;
+    private final DeviceProperties properties;
+
+    @PostMapping
+    public Mono<ResponseEntity<Device>> createDevice(@RequestBody Device device) {
+        logger.debug("Received request to create device");
+        return deviceService.saveDevice(device)
+                .map(savedDevice -> ResponseEntity.status(HttpStatus.CREATED).eTag(eTagOf(savedDevice)).body(savedDevice));
+    }
+
+    @GetMapping
+    public Mono<ResponseEntity<List<Device>>> getAllDevices(@RequestParam(value = "cursor", required = false) String cursor,
+                                                            @RequestParam(value = "limit", required = false) Integer limit,
+                                                            @RequestParam(value = "fields", required = false) String fields) {
+        logger.debug("Retrieving all devices");
+        return deviceService.getDevices(null, null, fieldsOf(fields), cursor, limit).map(DeviceRequests::toPageResponse);
+    }
+
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<Device> streamAllDevices(@RequestParam(value = "fields", required = false) String fields) {
+        logger.debug("Streaming all devices");
+        return deviceService.streamDevices(null, null, fieldsOf(fields));
+    }
+
+    @GetMapping("/events")
+    public Mono<List<DeviceChange>> getEvents(@RequestParam(value = "after", defaultValue = "0") long after,
+                                              @RequestParam(value = "limit", required = false) Integer limit) {
+        logger.debug("Retrieving device events after {}", after);
+        return deviceService.getEvents(after, limit);
+    }
+
+    @GetMapping("/search")
+    public Mono<ResponseEntity<List<Device>>> searchDevices(@RequestParam(value = "brand", required = false) String brand,
+            @RequestParam(value = "state", required = false) List<DeviceState> states,
+            @RequestParam(value = "name", required = false) String name,
+            @RequestParam(value = "q", required = false) String q,
+            @RequestParam(value = "createdFrom", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime createdFrom,
+            @RequestParam(value = "createdTo", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime createdTo,
+            @RequestParam(value = "sort", defaultValue = "creationTime") String sort,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @RequestParam(value = "fields", required = false) String fields) {
+        logger.debug("Searching devices");
+        return deviceService.searchDevices(searchOf(brand, states, name, q, createdFrom, createdTo, sort), fieldsOf(fields), cursor, limit)
+                .map(DeviceRequests::toPageResponse);
+    }
+
+    @GetMapping("/stats")
+    public Mono<DeviceStats> getStats() {
+        logger.debug("Counting devices");
+        return deviceService.getStats();
+    }
+
+    @GetMapping(value = "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<DeviceChange>> streamChanges(@RequestParam(value = "brand", required = false) String brand,
+            @RequestParam(value = "state", required = false) DeviceState state,
+            @RequestHeader(value = LAST_EVENT_ID, required = false) String lastEventIdHeader,
+            @RequestParam(value = "lastEventId", required = false) String lastEventIdParam) {
+        Long lastEventId = lastEventIdOf(lastEventIdHeader, lastEventIdParam);
+        logger.debug("Streaming changes for brand {} and state {} after {}", brand, state, lastEventId);
+        Flux<ServerSentEvent<DeviceChange>> changes = deviceService.streamChanges(brand, state, lastEventId)
+                .map(change -> ServerSentEvent.builder(change)
+                        .id(String.valueOf(change.getId()))
+                        .event(change.getType().name().toLowerCase(Locale.ROOT))
+                        .build());
+        Flux<ServerSentEvent<DeviceChange>> heartbeats = Flux.interval(properties.getChanges().getHeartbeat())
+                .map(tick -> ServerSentEvent.<DeviceChange>builder().comment("").build());
+        // The heartbeats never complete, so they stop when the changes do
+        return changes.publish(shared -> Flux.merge(shared, heartbeats.takeUntilOther(shared.then())));
+    }
+
+    @GetMapping("/{id}")
+    public Mono<ResponseEntity<Device>> getDeviceById(@PathVariable("id") UUID id,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestParam(value = "fields", required = false) String fields) {
+        logger.debug("Retrieving device with id: {}", id);
+        Set<DeviceField> selected = fieldsOf(fields);
+        return deviceService.getDeviceById(id)
+                .map(device -> {
+                    String eTag = eTagOf(device);
+                    if (matchesAny(ifNoneMatch, eTag)) {
+                        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).<Device>build();
+                    }
+                    return ResponseEntity.ok().eTag(eTag).body(DeviceField.select(device, selected));
+                });
+    }
+
+    @PutMapping("/{id}")
+    public Mono<ResponseEntity<Device>> updateDevice(@PathVariable("id") UUID id, @RequestBody Device updatedDevice,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        logger.debug("Trying to update device with id: {}", id);
+        return deviceService.updateDevice(id, updatedDevice, versionOf(ifMatch))
+                .map(savedDevice -> ResponseEntity.ok().eTag(eTagOf(savedDevice)).body(savedDevice));
+    }
+
+    @PatchMapping(value = "/{id}", consumes = {MERGE_PATCH_JSON, MediaType.APPLICATION_JSON_VALUE})
+    public Mono<ResponseEntity<Device>> patchDevice(@PathVariable("id") UUID id, @RequestBody JsonNode patch,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        logger.debug("Trying to patch device with id: {}", id);
+        return deviceService.patchDevice(id, toChanges(patch), versionOf(ifMatch))
+                .map(savedDevice -> ResponseEntity.ok().eTag(eTagOf(savedDevice)).body(savedDevice));
+    }
+
+    @PatchMapping("/{id}/state")
+    public Mono<ResponseEntity<Device>> updateDeviceState(@PathVariable("id") UUID id, @RequestBody Device change,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        logger.debug("Changing state of device with id: {} to {}", id, change.getState());
+        return deviceService.updateDeviceState(id, change.getState(), versionOf(ifMatch))
+                .map(savedDevice -> ResponseEntity.ok().eTag(eTagOf(savedDevice)).body(savedDevice));
+    }
+
+    @GetMapping("/brand/{brand}")
+    public Mono<ResponseEntity<List<Device>>> getDevicesByBrand(@PathVariable("brand") String brand,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @RequestParam(value = "fields", required = false) String fields) {
+        logger.debug("Retrieving all devices with brand: {}", brand);
+        return deviceService.getDevices(brand, null, fieldsOf(fields), cursor, limit).map(DeviceRequests::toPageResponse);
+    }
+
+    @GetMapping(value = "/brand/{brand}/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<Device> streamDevicesByBrand(@PathVariable("brand") String brand,
+                                             @RequestParam(value = "fields", required = false) String fields) {
+        logger.debug("Streaming all devices with brand: {}", brand);
+        return deviceService.streamDevices(brand, null, fieldsOf(fields));
+    }
+
+    @GetMapping("/state/{state}")
+    public Mono<ResponseEntity<List<Device>>> getDevicesByState(@PathVariable("state") DeviceState state,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @RequestParam(value = "fields", required = false) String fields) {
+        logger.debug("Retrieving all devices with state: {}", state);
+        return deviceService.getDevices(null, state, fieldsOf(fields), cursor, limit).map(DeviceRequests::toPageResponse);
+    }
+
+    @GetMapping(value = "/state/{state}/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<Device> streamDevicesByState(@PathVariable("state") DeviceState state,
+                                             @RequestParam(value = "fields", required = false) String fields) {
+        logger.debug("Streaming all devices with state: {}", state);
+        return deviceService.streamDevices(null, state, fieldsOf(fields));
+    }
+
+    @GetMapping("/brand/{brand}/state/{state}")
+    public Mono<ResponseEntity<List<Device>>> getDevicesByBrandAndState(@PathVariable("brand") String brand,
+            @PathVariable("state") DeviceState state,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @RequestParam(value = "fields", required = false) String fields) {
+        logger.debug("Retrieving all devices with brand: {} and state: {}", brand, state);
+        return deviceService.getDevices(brand, state, fieldsOf(fields), cursor, limit).map(DeviceRequests::toPageResponse);
+    }
+
+    @GetMapping(value = "/brand/{brand}/state/{state}/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<Device> streamDevicesByBrandAndState(@PathVariable("brand") String brand,
+                                                     @PathVariable("state") DeviceState state,
+                                                     @RequestParam(value = "fields", required = false) String fields) {
+        logger.debug("Streaming all devices with brand: {} and state: {}", brand, state);
+        return deviceService.streamDevices(brand, state, fieldsOf(fields));
+    }
+
+    @DeleteMapping("/{id}")
+    public Mono<ResponseEntity<Void>> deleteDevice(@PathVariable("id") UUID id,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        logger.debug("Trying to delete device with id: {}", id);
+        return deviceService.deleteDevice(id, versionOf(ifMatch))
+                .then(Mono.fromSupplier(() -> ResponseEntity.noContent().<Void>build()));
+    }
+
+    @DeleteMapping("/flush")
+    public Mono<ResponseEntity<Void>> flush() {
+        logger.info("Flushing all devices");
+        return deviceService.flush().then(Mono.fromSupplier(() -> ResponseEntity.noContent().<Void>build()));
+    }
+}
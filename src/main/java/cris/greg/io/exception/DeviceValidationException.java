@@ -2,15 +2,19 @@ package cris.greg.io.exception;
 
 import org.springframework.http.HttpStatus;
 
+/**
+ * An expected outcome answered with an error status, such as an unknown device or an invalid parameter. It is
+ * normal traffic rather than a fault, so no stack trace is captured: the message and status say it all.
+ */
 public class DeviceValidationException extends RuntimeException {
     private final HttpStatus status;
 
     public DeviceValidationException(String message, HttpStatus status) {
-        super(message);
+        super(message, null, false, false);
         this.status = status;
     }
 
     public HttpStatus getStatus() {
         return status;
     }
-}
\ No newline at end of file
+}
@@ -1,38 +1,75 @@
 package cris.greg.io.exception;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import cris.greg.io.config.DeviceProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
-import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ServerWebInputException;
 
-import java.time.LocalDateTime;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
 
+/**
+ * Error bodies for both the servlet and the reactive controllers, which is why the handlers take no
+ * stack-specific request argument. Bodies are RFC 7807 problem details, served pre-serialized from
+ * {@link ProblemBodies}, and the error counters are looked up once per status.
+ */
 @ControllerAdvice
 public class GlobalExceptionHandler {
 
+    private static final String MALFORMED_JSON = "Malformed JSON request. Check the request body and try again.";
+    private static final String BUSY = "Server is busy. Retry the request later.";
+
+    private final DeviceProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final ProblemBodies problemBodies;
+    private final Map<HttpStatus, Counter> errorCounters = new ConcurrentHashMap<>();
+
+    public GlobalExceptionHandler(DeviceProperties properties, MeterRegistry meterRegistry, ObjectMapper objectMapper) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.problemBodies = new ProblemBodies(objectMapper);
+    }
+
     @ExceptionHandler(DeviceValidationException.class)
-    public ResponseEntity<Object> handleDeviceValidationException(DeviceValidationException ex, WebRequest request) {
-        Map<String, Object> body = new HashMap<>();
-        body.put("status", ex.getStatus().value());
-        body.put("error", ex.getStatus().getReasonPhrase());
-        body.put("message", ex.getMessage());
-        body.put("timestamp", LocalDateTime.now().toString());
-
-        return new ResponseEntity<>(body, ex.getStatus());
+    public ResponseEntity<Object> handleDeviceValidationException(DeviceValidationException ex) {
+        errorCounters.computeIfAbsent(ex.getStatus(), status -> meterRegistry.counter("device.validation.errors",
+                "status", String.valueOf(status.value()))).increment();
+        return problem(ex.getStatus(), ex.getMessage());
     }
 
     @ExceptionHandler(HttpMessageNotReadableException.class)
-    public ResponseEntity<Object> handleHttpMessageNotReadableException(HttpMessageNotReadableException ex, WebRequest request) {
-        Map<String, Object> body = new HashMap<>();
-        body.put("status", HttpStatus.BAD_REQUEST.value());
-        body.put("error", HttpStatus.BAD_REQUEST.getReasonPhrase());
-        body.put("message", "Malformed JSON request. Check the request body and try again.");
-        body.put("timestamp", LocalDateTime.now().toString());
-
-        return new ResponseEntity<>(body, HttpStatus.BAD_REQUEST);
+    public ResponseEntity<Object> handleHttpMessageNotReadableException(HttpMessageNotReadableException ex) {
+        return problem(HttpStatus.BAD_REQUEST, MALFORMED_JSON);
+    }
+
+    /**
+     * The reactive stack's counterpart of HttpMessageNotReadableException, also raised for missing or
+     * mistyped parameters, which keep their own reason.
+     */
+    @ExceptionHandler(ServerWebInputException.class)
+    public ResponseEntity<Object> handleServerWebInputException(ServerWebInputException ex) {
+        String message = ex.getCause() instanceof DecodingException ? MALFORMED_JSON : ex.getReason();
+        return problem(HttpStatus.BAD_REQUEST, message);
+    }
+
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<Object> handleRejectedExecutionException(RejectedExecutionException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(properties.getExecutor().getRetryAfter().getSeconds()))
+                .contentType(ProblemBodies.PROBLEM_JSON)
+                .body(problemBodies.get(HttpStatus.SERVICE_UNAVAILABLE, BUSY));
+    }
+
+    private ResponseEntity<Object> problem(HttpStatus status, String detail) {
+        return ResponseEntity.status(status).contentType(ProblemBodies.PROBLEM_JSON).body(problemBodies.get(status, detail));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,50 @@
+package cris.greg.io.exception;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ProblemDetail;
+
+/**
+ * Serialized RFC 7807 problem details by status and detail. Errors repeat a small set of messages, so after
+ * the first occurrence a body is a cache hit instead of a new object and a Jackson write. Details that embed
+ * client input, such as an unknown field, are kept in check by the size bound.
+ */
+final class ProblemBodies {
+
+    static final MediaType PROBLEM_JSON = MediaType.APPLICATION_PROBLEM_JSON;
+
+    private static final int MAXIMUM_SIZE = 1000;
+
+    private final ObjectMapper objectMapper;
+    private final Cache<Key, byte[]> bodies = Caffeine.newBuilder().maximumSize(MAXIMUM_SIZE).build();
+
+    ProblemBodies(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * @return the application/problem+json body; the array is shared and must not be modified
+     */
+    byte[] get(HttpStatus status, String detail) {
+        return bodies.get(new Key(status, detail), this::write);
+    }
+
+    private byte[] write(Key key) {
+        try {
+            return objectMapper.writeValueAsBytes(ProblemDetail.forStatusAndDetail(key.getStatus(), key.getDetail()));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot write problem detail", e);
+        }
+    }
+
+    @Value
+    private static class Key {
+        HttpStatus status;
+        String detail;
+    }
+}
@@ -1,5 +1,7 @@
 package cris.greg.io.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.persistence.*;
 import lombok.*;
 import java.time.LocalDateTime;
@@ -13,10 +15,17 @@ import java.util.UUID;
 @AllArgsConstructor
 @Builder
 @Table(name = "devices")
+@SqlResultSetMapping(name = Device.UPDATE_MAPPING, entities = @EntityResult(entityClass = Device.class),
+        columns = {@ColumnResult(name = "previous_brand"), @ColumnResult(name = "previous_state")})
+// Every column is NOT NULL, so only devices trimmed to the requested fields have null properties
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class Device {
 
+    // Rows of the single-device updates: the device, then its brand and state before the update
+    public static final String UPDATE_MAPPING = "DeviceUpdate";
+
+    // Assigned from DeviceIdGenerator by the services, so both stacks make ids the same way
     @Id
-    @GeneratedValue(strategy = GenerationType.UUID)
     private UUID id;
 
     @Column(nullable = false)
@@ -32,6 +41,11 @@ public class Device {
     @Column(nullable = false, updatable = false)
     private LocalDateTime creationTime;
 
+    @Version
+    @Column(nullable = false)
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private Long version;
+
     @PrePersist
     protected void onCreate() {
         this.creationTime = LocalDateTime.now();
@@ -0,0 +1,32 @@
+package cris.greg.io.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+
+import java.util.UUID;
+
+/**
+ * Outcome of one item of a bulk request. {@code index} is the item's position in the request and
+ * {@code status} the HTTP status the equivalent single-device call would have returned.
+ */
+@Getter
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class DeviceBatchResult {
+    private final int index;
+    private final UUID id;
+    private final int status;
+    private final String message;
+    private final Device device;
+
+    public static DeviceBatchResult success(int index, UUID id, HttpStatus status, Device device) {
+        return new DeviceBatchResult(index, id, status.value(), null, device);
+    }
+
+    public static DeviceBatchResult failure(int index, UUID id, HttpStatus status, String message) {
+        return new DeviceBatchResult(index, id, status.value(), message, null);
+    }
+}
@@ -0,0 +1,27 @@
+package cris.greg.io.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * One entry of the device change feed. {@code id} increases by one per change within a server run and is
+ * sent as the SSE event id. Outbox events use the same shape, with the durable event seq as {@code id}.
+ * {@code device} is the device after the change, or the deleted device, and is absent for FLUSHED and RESET.
+ * UPDATED changes also carry the brand and state the device had before, so a device leaving a filter is seen.
+ */
+@Getter
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class DeviceChange {
+    private final long id;
+    private final DeviceChangeType type;
+    private final UUID deviceId;
+    private final Device device;
+    private final String previousBrand;
+    private final DeviceState previousState;
+    private final LocalDateTime timestamp;
+}
@@ -0,0 +1,11 @@
+package cris.greg.io.model;
+
+public enum DeviceChangeType {
+    CREATED,
+    UPDATED,
+    DELETED,
+    /** Every device was deleted. */
+    FLUSHED,
+    /** The changes after the client's Last-Event-ID are no longer buffered; reload the devices before continuing. */
+    RESET
+}
@@ -0,0 +1,91 @@
+package cris.greg.io.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Row of the device_events outbox: the change and a snapshot of the device after it, or of the deleted device.
+ * UPDATED events also keep the brand and state before the change. {@code seq} is null until the relay publishes
+ * the event.
+ */
+@Entity
+@Getter
+@Setter
+@ToString
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Table(name = "device_events")
+public class DeviceEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "device_events_id_seq")
+    @SequenceGenerator(name = "device_events_id_seq", sequenceName = "device_events_id_seq", allocationSize = 50)
+    private Long id;
+
+    private Long seq;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private DeviceChangeType type;
+
+    private UUID deviceId;
+
+    private String name;
+
+    private String brand;
+
+    @Enumerated(EnumType.STRING)
+    private DeviceState state;
+
+    private LocalDateTime creationTime;
+
+    private Long version;
+
+    private String previousBrand;
+
+    @Enumerated(EnumType.STRING)
+    private DeviceState previousState;
+
+    // Set by the database when the row is inserted, see V5__add_device_event_previous_values.sql
+    @Column(nullable = false, insertable = false, updatable = false)
+    private LocalDateTime occurredAt;
+
+    private LocalDateTime publishedAt;
+
+    public static DeviceEvent of(DeviceChangeType type, Device device) {
+        DeviceEvent event = new DeviceEvent();
+        event.type = type;
+        if (device != null) {
+            event.deviceId = device.getId();
+            event.name = device.getName();
+            event.brand = device.getBrand();
+            event.state = device.getState();
+            event.creationTime = device.getCreationTime();
+            event.version = device.getVersion();
+        }
+        return event;
+    }
+
+    public static DeviceEvent updated(Device device, String previousBrand, DeviceState previousState) {
+        DeviceEvent event = of(DeviceChangeType.UPDATED, device);
+        event.previousBrand = previousBrand;
+        event.previousState = previousState;
+        return event;
+    }
+
+    public DeviceChange toChange() {
+        Device device = deviceId == null ? null : Device.builder()
+                .id(deviceId)
+                .name(name)
+                .brand(brand)
+                .state(state)
+                .creationTime(creationTime)
+                .version(version)
+                .build();
+        return new DeviceChange(seq, type, deviceId, device, previousBrand, previousState, occurredAt);
+    }
+}
@@ -0,0 +1,69 @@
+package cris.greg.io.model;
+
+import java.util.Set;
+
+/**
+ * Device properties a client can pick with the {@code fields} parameter, by their JSON name.
+ */
+public enum DeviceField {
+    ID("id", "id"),
+    NAME("name", "name"),
+    BRAND("brand", "brand"),
+    STATE("state", "state"),
+    CREATION_TIME("creationTime", "creation_time"),
+    VERSION("version", "version");
+
+    private final String property;
+    private final String column;
+
+    DeviceField(String property, String column) {
+        this.property = property;
+        this.column = column;
+    }
+
+    /**
+     * @return the JSON and JPA property name
+     */
+    public String getProperty() {
+        return property;
+    }
+
+    public String getColumn() {
+        return column;
+    }
+
+    /**
+     * @param property a JSON property name
+     * @return the field, or null if there is none by that name
+     */
+    public static DeviceField of(String property) {
+        for (DeviceField field : values()) {
+            if (field.property.equals(property)) {
+                return field;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Copies the given fields of a device. Device is serialized without null properties, so the copy is written
+     * with only those fields.
+     *
+     * @param device the device
+     * @param fields the fields to keep, or null for all
+     * @return the copy, or the device itself when fields is null
+     */
+    public static Device select(Device device, Set<DeviceField> fields) {
+        if (fields == null) {
+            return device;
+        }
+        return Device.builder()
+                .id(fields.contains(ID) ? device.getId() : null)
+                .name(fields.contains(NAME) ? device.getName() : null)
+                .brand(fields.contains(BRAND) ? device.getBrand() : null)
+                .state(fields.contains(STATE) ? device.getState() : null)
+                .creationTime(fields.contains(CREATION_TIME) ? device.getCreationTime() : null)
+                .version(fields.contains(VERSION) ? device.getVersion() : null)
+                .build();
+    }
+}
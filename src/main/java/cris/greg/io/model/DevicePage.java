@@ -0,0 +1,17 @@
+package cris.greg.io.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * One keyset page of devices together with the token to fetch the next one.
+ * {@code nextCursor} is null when there are no more devices.
+ */
+@Getter
+@AllArgsConstructor
+public class DevicePage {
+    private final List<Device> devices;
+    private final String nextCursor;
+}
@@ -0,0 +1,30 @@
+package cris.greg.io.model;
+
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+import java.util.Set;
+
+/**
+ * Criteria of a device search. Every criterion is optional and they all have to match.
+ */
+@Getter
+@Builder
+@EqualsAndHashCode
+public class DeviceSearch {
+    private final String brand;
+    /** Devices in any of these states. */
+    private final Set<DeviceState> states;
+    /** Case-insensitive prefix of the name. */
+    private final String namePrefix;
+    /** Text the name is similar to, by pg_trgm trigram similarity. */
+    private final String nameMatch;
+    /** Created at or after this time. */
+    private final LocalDateTime createdFrom;
+    /** Created before this time. */
+    private final LocalDateTime createdTo;
+    @Builder.Default
+    private final DeviceSort sort = DeviceSort.CREATION_TIME;
+}
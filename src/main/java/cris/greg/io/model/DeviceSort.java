@@ -0,0 +1,50 @@
+package cris.greg.io.model;
+
+/**
+ * Orders accepted by the search endpoint. Ties are broken by id in the same direction, so every order is total
+ * and can be keyset-paginated.
+ */
+public enum DeviceSort {
+    CREATION_TIME("creationTime", DeviceField.CREATION_TIME, false),
+    CREATION_TIME_DESC("-creationTime", DeviceField.CREATION_TIME, true),
+    NAME("name", DeviceField.NAME, false),
+    NAME_DESC("-name", DeviceField.NAME, true);
+
+    private final String parameter;
+    private final DeviceField field;
+    private final boolean descending;
+
+    DeviceSort(String parameter, DeviceField field, boolean descending) {
+        this.parameter = parameter;
+        this.field = field;
+        this.descending = descending;
+    }
+
+    /**
+     * @return the value of the sort parameter, a field name with a leading "-" for descending order
+     */
+    public String getParameter() {
+        return parameter;
+    }
+
+    public DeviceField getField() {
+        return field;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    /**
+     * @param parameter the value of the sort parameter
+     * @return the sort, or null if there is none by that name
+     */
+    public static DeviceSort of(String parameter) {
+        for (DeviceSort sort : values()) {
+            if (sort.parameter.equals(parameter)) {
+                return sort;
+            }
+        }
+        return null;
+    }
+}
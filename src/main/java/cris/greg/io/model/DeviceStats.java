@@ -0,0 +1,58 @@
+package cris.greg.io.model;
+
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Device counts by brand, by state and by both. Brands are sorted by name and only brands and states with
+ * at least one device are listed.
+ */
+@Getter
+public class DeviceStats {
+    private final long total;
+    private final Map<String, Long> byBrand;
+    private final Map<DeviceState, Long> byState;
+    private final Map<String, Map<DeviceState, Long>> byBrandAndState;
+
+    private DeviceStats(long total, Map<String, Long> byBrand, Map<DeviceState, Long> byState,
+                        Map<String, Map<DeviceState, Long>> byBrandAndState) {
+        this.total = total;
+        this.byBrand = byBrand;
+        this.byState = byState;
+        this.byBrandAndState = byBrandAndState;
+    }
+
+    /**
+     * Rolls the counts per brand and state up into the totals. The result does not share any map with the argument.
+     *
+     * @param counts the number of devices per brand and state
+     * @return the stats
+     */
+    public static DeviceStats of(Map<String, ? extends Map<DeviceState, Long>> counts) {
+        long total = 0;
+        Map<String, Long> byBrand = new TreeMap<>();
+        Map<DeviceState, Long> byState = new EnumMap<>(DeviceState.class);
+        Map<String, Map<DeviceState, Long>> byBrandAndState = new TreeMap<>();
+        for (Map.Entry<String, ? extends Map<DeviceState, Long>> brand : counts.entrySet()) {
+            Map<DeviceState, Long> states = new EnumMap<>(DeviceState.class);
+            for (Map.Entry<DeviceState, Long> state : brand.getValue().entrySet()) {
+                long count = state.getValue();
+                if (count > 0) {
+                    states.put(state.getKey(), count);
+                    byState.merge(state.getKey(), count, Long::sum);
+                    byBrand.merge(brand.getKey(), count, Long::sum);
+                    total += count;
+                }
+            }
+            if (!states.isEmpty()) {
+                byBrandAndState.put(brand.getKey(), Collections.unmodifiableMap(states));
+            }
+        }
+        return new DeviceStats(total, Collections.unmodifiableMap(byBrand), Collections.unmodifiableMap(byState),
+                Collections.unmodifiableMap(byBrandAndState));
+    }
+}
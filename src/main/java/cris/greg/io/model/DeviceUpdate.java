@@ -0,0 +1,16 @@
+package cris.greg.io.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * A device as a single-device update left it, with the brand and state it had before, which change feed
+ * subscribers filtering on the old values need to see the device leave.
+ */
+@Getter
+@AllArgsConstructor
+public class DeviceUpdate {
+    private final Device device;
+    private final String previousBrand;
+    private final DeviceState previousState;
+}
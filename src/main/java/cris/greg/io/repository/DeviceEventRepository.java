@@ -0,0 +1,65 @@
+package cris.greg.io.repository;
+
+import cris.greg.io.model.DeviceEvent;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * The device_events outbox from V4__create_device_events_table.sql. Single-device mutations and flushes append
+ * their event in the same statement through the SQL fragments below; JPA saves and batches save a {@link DeviceEvent}
+ * in their transaction. The relay then numbers unrelayed events with {@link #relay}, in occurred_at order, under an
+ * advisory lock, so seq grows by one per event and a reader never sees seq N + 1 before N. occurred_at is taken
+ * after the device row is locked, so the events of one device are numbered in the order their changes committed,
+ * and a flush locks the table, so every event before it is numbered before it and every event after it, after it.
+ */
+public interface DeviceEventRepository extends JpaRepository<DeviceEvent, Long> {
+
+    // Appended to a mutation wrapped in "WITH d AS (...)": one event per row it returned, then the rows themselves.
+    // UPDATED expects the previous_brand and previous_state columns of DeviceRepository.RETURNING_WITH_PREVIOUS_VALUES
+    String APPEND_CREATED = ", e AS (INSERT INTO device_events (type, device_id, name, brand, state, creation_time, version) " +
+            "SELECT 'CREATED', id, name, brand, state, creation_time, version FROM d) SELECT * FROM d";
+
+    String APPEND_UPDATED = ", e AS (INSERT INTO device_events (type, device_id, name, brand, state, creation_time, version, " +
+            "previous_brand, previous_state) SELECT 'UPDATED', id, name, brand, state, creation_time, version, previous_brand, " +
+            "previous_state FROM d) SELECT * FROM d";
+
+    String APPEND_DELETED = ", e AS (INSERT INTO device_events (type, device_id, name, brand, state, creation_time, version) " +
+            "SELECT 'DELETED', id, name, brand, state, creation_time, version FROM d) SELECT * FROM d";
+
+    String INSERT_FLUSHED = "INSERT INTO device_events (type) VALUES ('FLUSHED')";
+
+    // "devices" in ASCII; every instance's relay takes the same key, so only one numbers events at a time
+    long RELAY_LOCK = 0x64657669636573L;
+
+    @Query(value = "SELECT pg_try_advisory_xact_lock(" + RELAY_LOCK + ")", nativeQuery = true)
+    boolean tryRelayLock();
+
+    @Query(value = "UPDATE device_events e SET seq = p.seq, published_at = CURRENT_TIMESTAMP FROM (" +
+            "SELECT id, (SELECT COALESCE(MAX(seq), 0) FROM device_events) + ROW_NUMBER() OVER (ORDER BY occurred_at, id) AS seq " +
+            "FROM (SELECT id, occurred_at FROM device_events WHERE seq IS NULL ORDER BY occurred_at, id LIMIT :limit) u) p " +
+            "WHERE e.id = p.id RETURNING e.*", nativeQuery = true)
+    List<DeviceEvent> relay(@Param("limit") int limit);
+
+    List<DeviceEvent> findBySeqGreaterThanOrderBySeqAsc(long seq, Limit limit);
+
+    @Query("SELECT COALESCE(MAX(e.seq), 0) FROM DeviceEvent e")
+    long findLastSeq();
+
+    @Query("SELECT e.id FROM DeviceEvent e WHERE e.seq IS NULL")
+    List<Long> findUnrelayedIds();
+
+    /**
+     * Deletes relayed events published before the cutoff, keeping the latest one so readers behind it still
+     * detect the gap.
+     */
+    @Modifying
+    @Query(value = "DELETE FROM device_events WHERE id IN (SELECT id FROM device_events WHERE published_at < :cutoff " +
+            "AND seq < (SELECT MAX(seq) FROM device_events) LIMIT :limit)", nativeQuery = true)
+    int deletePublishedBefore(@Param("cutoff") LocalDateTime cutoff, @Param("limit") int limit);
+}
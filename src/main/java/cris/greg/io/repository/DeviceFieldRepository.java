@@ -0,0 +1,52 @@
+package cris.greg.io.repository;
+
+import cris.greg.io.model.Device;
+import cris.greg.io.model.DeviceField;
+import cris.greg.io.model.DeviceState;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Device listings that read only the requested columns, for the {@code fields} parameter. Rows come back as
+ * unmanaged {@link Device} instances with the other properties null, so Hibernate never hydrates or tracks an
+ * entity for them. Ordering, filters and keyset pagination are those of the {@link DeviceRepository} listings.
+ */
+public interface DeviceFieldRepository {
+
+    /**
+     * Reads one page of devices ordered by (creation_time, id). The devices also carry their creation time and
+     * id, which the next cursor needs.
+     *
+     * @param fields the fields to read
+     * @param brand the brand to filter on, or null
+     * @param state the state to filter on, or null
+     * @param creationTime the creation time of the last device of the previous page, or null for the first page
+     * @param id the id of the last device of the previous page, or null for the first page
+     * @param limit the maximum number of devices
+     */
+    List<Device> findPage(Set<DeviceField> fields, String brand, DeviceState state, LocalDateTime creationTime,
+                          UUID id, int limit);
+
+    /**
+     * Reads the first devices matching a specification in the given order. The devices also carry their id and
+     * the properties of the order, which the next cursor needs.
+     *
+     * @param fields the fields to read
+     * @param spec the devices to read
+     * @param sort the order
+     * @param limit the maximum number of devices
+     */
+    List<Device> findPage(Set<DeviceField> fields, Specification<Device> spec, Sort sort, int limit);
+
+    /**
+     * Streams the requested fields of every matching device from a server-side cursor, ordered by
+     * (creation_time, id). Must run inside a transaction.
+     */
+    Stream<Device> stream(Set<DeviceField> fields, String brand, DeviceState state);
+}
@@ -0,0 +1,153 @@
+package cris.greg.io.repository;
+
+import cris.greg.io.model.Device;
+import cris.greg.io.model.DeviceField;
+import cris.greg.io.model.DeviceState;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+class DeviceFieldRepositoryImpl implements DeviceFieldRepository {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<Device> findPage(Set<DeviceField> fields, String brand, DeviceState state, LocalDateTime creationTime,
+                                 UUID id, int limit) {
+        Set<DeviceField> selected = EnumSet.of(DeviceField.ID, DeviceField.CREATION_TIME);
+        selected.addAll(fields);
+        List<String> conditions = filters(brand, state);
+        if (creationTime != null) {
+            conditions.add("(d.creationTime > :creationTime OR (d.creationTime = :creationTime AND d.id > :afterId))");
+        }
+        TypedQuery<Tuple> query = query(selected, conditions, brand, state).setMaxResults(limit);
+        if (creationTime != null) {
+            query.setParameter("creationTime", creationTime).setParameter("afterId", id);
+        }
+        List<Device> devices = new ArrayList<>();
+        for (Tuple row : query.getResultList()) {
+            devices.add(toDevice(row, selected));
+        }
+        return devices;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<Device> findPage(Set<DeviceField> fields, Specification<Device> spec, Sort sort, int limit) {
+        Set<DeviceField> selected = EnumSet.of(DeviceField.ID);
+        selected.addAll(fields);
+        for (Sort.Order order : sort) {
+            selected.add(DeviceField.of(order.getProperty()));
+        }
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<Device> root = query.from(Device.class);
+        List<Selection<?>> selections = new ArrayList<>();
+        for (DeviceField field : selected) {
+            selections.add(root.get(field.getProperty()).alias(alias(field)));
+        }
+        query.multiselect(selections);
+        Predicate predicate = spec.toPredicate(root, query, cb);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        query.orderBy(QueryUtils.toOrders(sort, root, cb));
+        List<Device> devices = new ArrayList<>();
+        for (Tuple row : entityManager.createQuery(query).setMaxResults(limit).getResultList()) {
+            devices.add(toDevice(row, selected));
+        }
+        return devices;
+    }
+
+    @Override
+    public Stream<Device> stream(Set<DeviceField> fields, String brand, DeviceState state) {
+        return query(fields, filters(brand, state), brand, state)
+                .setHint(HibernateHints.HINT_FETCH_SIZE, Integer.parseInt(DeviceRepository.STREAM_FETCH_SIZE))
+                .getResultStream()
+                .map(row -> toDevice(row, fields));
+    }
+
+    private TypedQuery<Tuple> query(Set<DeviceField> fields, List<String> conditions, String brand, DeviceState state) {
+        String select = fields.stream()
+                .map(field -> "d." + field.getProperty() + " AS " + alias(field))
+                .collect(Collectors.joining(", "));
+        String where = conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions);
+        TypedQuery<Tuple> query = entityManager.createQuery("SELECT " + select + " FROM Device d" + where +
+                " ORDER BY d.creationTime, d.id", Tuple.class);
+        if (brand != null) {
+            query.setParameter("brand", brand);
+        }
+        if (state != null) {
+            query.setParameter("state", state);
+        }
+        return query;
+    }
+
+    // Some property names, such as version, are HQL keywords
+    private static String alias(DeviceField field) {
+        return "f" + field.ordinal();
+    }
+
+    private static List<String> filters(String brand, DeviceState state) {
+        List<String> conditions = new ArrayList<>();
+        if (brand != null) {
+            conditions.add("d.brand = :brand");
+        }
+        if (state != null) {
+            conditions.add("d.state = :state");
+        }
+        return conditions;
+    }
+
+    private static Device toDevice(Tuple row, Set<DeviceField> fields) {
+        Device.DeviceBuilder device = Device.builder();
+        for (DeviceField field : fields) {
+            Object value = row.get(alias(field));
+            switch (field) {
+                case ID:
+                    device.id((UUID) value);
+                    break;
+                case NAME:
+                    device.name((String) value);
+                    break;
+                case BRAND:
+                    device.brand((String) value);
+                    break;
+                case STATE:
+                    device.state((DeviceState) value);
+                    break;
+                case CREATION_TIME:
+                    device.creationTime((LocalDateTime) value);
+                    break;
+                case VERSION:
+                    device.version((Long) value);
+                    break;
+                default:
+                    break;
+            }
+        }
+        return device.build();
+    }
+}
@@ -0,0 +1,19 @@
+package cris.greg.io.repository;
+
+import org.hibernate.boot.model.FunctionContributions;
+import org.hibernate.boot.model.FunctionContributor;
+import org.hibernate.type.StandardBasicTypes;
+
+/**
+ * Adds the SQL functions the device queries use to Hibernate's function registry. Registered through
+ * META-INF/services, as Hibernate loads contributors with the ServiceLoader.
+ */
+public class DeviceFunctionContributor implements FunctionContributor {
+
+    @Override
+    public void contributeFunctions(FunctionContributions functionContributions) {
+        // The operator rather than similarity(), so PostgreSQL can answer it from a gin_trgm_ops index
+        functionContributions.getFunctionRegistry().registerPattern(DeviceSpecifications.TRIGRAM_MATCH, "(?1 % ?2)",
+                functionContributions.getTypeConfiguration().getBasicTypeRegistry().resolve(StandardBasicTypes.BOOLEAN));
+    }
+}
@@ -2,12 +2,155 @@ package cris.greg.io.repository;
 
 import cris.greg.io.model.DeviceState;
 import cris.greg.io.model.Device;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Stream;
 
-public interface DeviceRepository extends JpaRepository<Device, UUID> {
-    List<Device> findByBrand(String brand);
-    List<Device> findByState(DeviceState state);
-}
\ No newline at end of file
+/**
+ * Listings are keyset-paginated on (creation_time, id): the first page uses the derived
+ * "OrderBy" methods, the following ones the "After" queries with the last row of the previous page.
+ * The listings run in read-only transactions, so Hibernate keeps no snapshot of the loaded devices; the
+ * {@link DeviceFieldRepository} variants read only the requested columns. Searches combine
+ * {@link DeviceSpecifications} and run through {@link #findBy}. The stream* methods keep a server-side
+ * cursor open and must run inside a transaction.
+ * Each filter combination is backed by a (filter..., creation_time, id) index from V2__add_device_indexes.sql.
+ * Single-device mutations carry the IN_USE rules and the optional expected version in their WHERE clause so
+ * the check and the write are one statement (patchIfAllowed keeps the current value of every null argument); an empty result means the device is missing, the rule rejected
+ * the change or the version did not match. The *_WITH_EVENT variants also append the device_events outbox row in the
+ * same statement, so the change and its event commit together. Their SQL is shared with {@link ReactiveDeviceRepository}.
+ * The updates run through {@link DeviceUpdateRepository}, which also returns the brand and state before the change.
+ */
+public interface DeviceRepository extends JpaRepository<Device, UUID>, JpaSpecificationExecutor<Device>,
+        DeviceFieldRepository, DeviceUpdateRepository {
+
+    String STREAM_FETCH_SIZE = "500";
+
+    // Locks the row before the update and keeps its brand and state, which the UPDATED outbox event records
+    String PREVIOUS_VALUES = "FROM (SELECT brand AS previous_brand, state AS previous_state FROM devices " +
+            "WHERE id = :id FOR UPDATE) p ";
+
+    String RETURNING_WITH_PREVIOUS_VALUES = " RETURNING devices.*, p.previous_brand, p.previous_state";
+
+    String UPDATE_IF_ALLOWED = "UPDATE devices SET name = :name, brand = :brand, state = :state, version = version + 1 " +
+            PREVIOUS_VALUES + "WHERE id = :id AND (state <> 'IN_USE' OR (name = :name AND brand = :brand)) " +
+            "AND (CAST(:version AS BIGINT) IS NULL OR version = :version)" + RETURNING_WITH_PREVIOUS_VALUES;
+
+    String PATCH_IF_ALLOWED = "UPDATE devices SET name = COALESCE(:name, name), brand = COALESCE(:brand, brand), " +
+            "state = COALESCE(:state, state), version = version + 1 " + PREVIOUS_VALUES +
+            "WHERE id = :id AND (state <> 'IN_USE' OR (COALESCE(:name, name) = name AND COALESCE(:brand, brand) = brand)) " +
+            "AND (CAST(:version AS BIGINT) IS NULL OR version = :version)" + RETURNING_WITH_PREVIOUS_VALUES;
+
+    String UPDATE_STATE = "UPDATE devices SET state = :state, version = version + 1 " + PREVIOUS_VALUES +
+            "WHERE id = :id AND (CAST(:version AS BIGINT) IS NULL OR version = :version)" + RETURNING_WITH_PREVIOUS_VALUES;
+
+    String DELETE_IF_NOT_IN_USE = "DELETE FROM devices WHERE id = :id AND state <> 'IN_USE' " +
+            "AND (CAST(:version AS BIGINT) IS NULL OR version = :version) RETURNING *";
+
+    String UPDATE_IF_ALLOWED_WITH_EVENT = "WITH d AS (" + UPDATE_IF_ALLOWED + ")" + DeviceEventRepository.APPEND_UPDATED;
+
+    String PATCH_IF_ALLOWED_WITH_EVENT = "WITH d AS (" + PATCH_IF_ALLOWED + ")" + DeviceEventRepository.APPEND_UPDATED;
+
+    String UPDATE_STATE_WITH_EVENT = "WITH d AS (" + UPDATE_STATE + ")" + DeviceEventRepository.APPEND_UPDATED;
+
+    String DELETE_IF_NOT_IN_USE_WITH_EVENT = "WITH d AS (" + DELETE_IF_NOT_IN_USE + ")" + DeviceEventRepository.APPEND_DELETED;
+
+    // One statement, so it also runs atomically on R2DBC; the lock waits for in-flight writes and holds off new ones
+    String DELETE_ALL_WITH_EVENT = "DO $$ BEGIN LOCK TABLE devices IN SHARE ROW EXCLUSIVE MODE; DELETE FROM devices; " +
+            DeviceEventRepository.INSERT_FLUSHED + "; END $$";
+
+    @Transactional
+    @Query(value = DELETE_IF_NOT_IN_USE_WITH_EVENT, nativeQuery = true)
+    Optional<Device> deleteIfNotInUse(@Param("id") UUID id, @Param("version") Long version);
+
+    @Transactional
+    @Modifying
+    @Query(value = DELETE_ALL_WITH_EVENT, nativeQuery = true)
+    int deleteAllWithEvent();
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT d FROM Device d WHERE d.id IN :ids ORDER BY d.id")
+    List<Device> findAllForUpdate(@Param("ids") Collection<UUID> ids);
+
+    @Transactional(readOnly = true)
+    List<Device> findAllByOrderByCreationTimeAscIdAsc(Limit limit);
+
+    @Transactional(readOnly = true)
+    @Query("SELECT d FROM Device d WHERE d.creationTime > :creationTime " +
+            "OR (d.creationTime = :creationTime AND d.id > :id) ORDER BY d.creationTime, d.id")
+    List<Device> findAllAfter(@Param("creationTime") LocalDateTime creationTime, @Param("id") UUID id, Limit limit);
+
+    @Transactional(readOnly = true)
+    List<Device> findByBrandOrderByCreationTimeAscIdAsc(String brand, Limit limit);
+
+    @Transactional(readOnly = true)
+    @Query("SELECT d FROM Device d WHERE d.brand = :brand AND (d.creationTime > :creationTime " +
+            "OR (d.creationTime = :creationTime AND d.id > :id)) ORDER BY d.creationTime, d.id")
+    List<Device> findByBrandAfter(@Param("brand") String brand, @Param("creationTime") LocalDateTime creationTime,
+                                  @Param("id") UUID id, Limit limit);
+
+    @Transactional(readOnly = true)
+    List<Device> findByStateOrderByCreationTimeAscIdAsc(DeviceState state, Limit limit);
+
+    @Transactional(readOnly = true)
+    @Query("SELECT d FROM Device d WHERE d.state = :state AND (d.creationTime > :creationTime " +
+            "OR (d.creationTime = :creationTime AND d.id > :id)) ORDER BY d.creationTime, d.id")
+    List<Device> findByStateAfter(@Param("state") DeviceState state, @Param("creationTime") LocalDateTime creationTime,
+                                  @Param("id") UUID id, Limit limit);
+
+    @Transactional(readOnly = true)
+    List<Device> findByBrandAndStateOrderByCreationTimeAscIdAsc(String brand, DeviceState state, Limit limit);
+
+    @Transactional(readOnly = true)
+    @Query("SELECT d FROM Device d WHERE d.brand = :brand AND d.state = :state AND (d.creationTime > :creationTime " +
+            "OR (d.creationTime = :creationTime AND d.id > :id)) ORDER BY d.creationTime, d.id")
+    List<Device> findByBrandAndStateAfter(@Param("brand") String brand, @Param("state") DeviceState state,
+                                          @Param("creationTime") LocalDateTime creationTime, @Param("id") UUID id, Limit limit);
+
+    @Transactional(readOnly = true)
+    @Query("SELECT d.brand AS brand, d.state AS state, COUNT(d) AS count FROM Device d GROUP BY d.brand, d.state")
+    List<BrandStateCount> countByBrandAndState();
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE))
+    @Query("SELECT d FROM Device d ORDER BY d.creationTime, d.id")
+    Stream<Device> streamAll();
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE))
+    @Query("SELECT d FROM Device d WHERE d.brand = :brand ORDER BY d.creationTime, d.id")
+    Stream<Device> streamByBrand(@Param("brand") String brand);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE))
+    @Query("SELECT d FROM Device d WHERE d.state = :state ORDER BY d.creationTime, d.id")
+    Stream<Device> streamByState(@Param("state") DeviceState state);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE))
+    @Query("SELECT d FROM Device d WHERE d.brand = :brand AND d.state = :state ORDER BY d.creationTime, d.id")
+    Stream<Device> streamByBrandAndState(@Param("brand") String brand, @Param("state") DeviceState state);
+
+    /**
+     * Number of devices of one brand in one state.
+     */
+    interface BrandStateCount {
+
+        String getBrand();
+
+        DeviceState getState();
+
+        long getCount();
+    }
+}
@@ -0,0 +1,119 @@
+package cris.greg.io.repository;
+
+import cris.greg.io.model.Device;
+import cris.greg.io.model.DeviceSearch;
+import cris.greg.io.model.DeviceSort;
+import cris.greg.io.model.DeviceState;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDateTime;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Specifications for {@link DeviceRepository#findBy} and {@link DeviceFieldRepository#findPage(java.util.Set,
+ * Specification, Sort, int)}. Name criteria compare lower(name), which idx_devices_name_trgm from
+ * V6__add_device_search_indexes.sql covers for both prefixes and trigram matches.
+ */
+public final class DeviceSpecifications {
+
+    /** Registered by {@link DeviceFunctionContributor}; renders as the pg_trgm similarity operator {@code %}. */
+    static final String TRIGRAM_MATCH = "trgm_match";
+
+    private DeviceSpecifications() {
+    }
+
+    /**
+     * Combines the criteria of a search; criteria that are not set match every device.
+     */
+    public static Specification<Device> matching(DeviceSearch search) {
+        Specification<Device> spec = Specification.where(null);
+        if (search.getBrand() != null) {
+            spec = spec.and(brandIs(search.getBrand()));
+        }
+        if (search.getStates() != null && !search.getStates().isEmpty()) {
+            spec = spec.and(stateIn(search.getStates()));
+        }
+        if (search.getNamePrefix() != null) {
+            spec = spec.and(nameStartsWith(search.getNamePrefix()));
+        }
+        if (search.getNameMatch() != null) {
+            spec = spec.and(nameMatches(search.getNameMatch()));
+        }
+        if (search.getCreatedFrom() != null) {
+            spec = spec.and(createdFrom(search.getCreatedFrom()));
+        }
+        if (search.getCreatedTo() != null) {
+            spec = spec.and(createdBefore(search.getCreatedTo()));
+        }
+        return spec;
+    }
+
+    public static Specification<Device> brandIs(String brand) {
+        return (root, query, cb) -> cb.equal(root.get("brand"), brand);
+    }
+
+    public static Specification<Device> stateIn(Set<DeviceState> states) {
+        return (root, query, cb) -> root.get("state").in(states);
+    }
+
+    public static Specification<Device> nameStartsWith(String prefix) {
+        return (root, query, cb) -> cb.like(cb.lower(root.get("name")), likePrefix(prefix), '\\');
+    }
+
+    public static Specification<Device> nameMatches(String text) {
+        return (root, query, cb) -> cb.isTrue(cb.function(TRIGRAM_MATCH, Boolean.class, cb.lower(root.get("name")),
+                cb.literal(text.toLowerCase(Locale.ROOT))));
+    }
+
+    public static Specification<Device> createdFrom(LocalDateTime from) {
+        return (root, query, cb) -> cb.greaterThanOrEqualTo(root.get("creationTime"), from);
+    }
+
+    public static Specification<Device> createdBefore(LocalDateTime to) {
+        return (root, query, cb) -> cb.lessThan(root.get("creationTime"), to);
+    }
+
+    /**
+     * Keyset condition: the devices after (key, id) in the given order.
+     *
+     * @param key the creation time or name of the last device of the previous page, matching the sort
+     */
+    public static Specification<Device> after(DeviceSort sort, Comparable<?> key, UUID id) {
+        return (root, query, cb) -> {
+            String property = sort.getField().getProperty();
+            if (key instanceof LocalDateTime) {
+                return after(cb, root.<LocalDateTime>get(property), (LocalDateTime) key, root.get("id"), id, sort.isDescending());
+            }
+            return after(cb, root.<String>get(property), (String) key, root.get("id"), id, sort.isDescending());
+        };
+    }
+
+    /**
+     * The order of a search, with id as the tie-breaker.
+     */
+    public static Sort sortOf(DeviceSort sort) {
+        Sort.Direction direction = sort.isDescending() ? Sort.Direction.DESC : Sort.Direction.ASC;
+        return Sort.by(direction, sort.getField().getProperty(), "id");
+    }
+
+    /**
+     * Lower-cases the prefix and escapes the LIKE wildcards in it.
+     */
+    public static String likePrefix(String prefix) {
+        return prefix.toLowerCase(Locale.ROOT).replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+    }
+
+    private static <Y extends Comparable<? super Y>> Predicate after(CriteriaBuilder cb, Expression<Y> key, Y value,
+                                                                     Expression<UUID> id, UUID afterId, boolean descending) {
+        if (descending) {
+            return cb.or(cb.lessThan(key, value), cb.and(cb.equal(key, value), cb.lessThan(id, afterId)));
+        }
+        return cb.or(cb.greaterThan(key, value), cb.and(cb.equal(key, value), cb.greaterThan(id, afterId)));
+    }
+}
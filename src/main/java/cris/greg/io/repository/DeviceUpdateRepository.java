@@ -0,0 +1,24 @@
+package cris.greg.io.repository;
+
+import cris.greg.io.model.DeviceUpdate;
+
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * The conditional single-device updates of {@link DeviceRepository}, each one statement that also appends the
+ * UPDATED outbox event. Besides the updated device they return the brand and state it had before, which the
+ * statement reads anyway for the event. An empty result means the device is missing, the IN_USE rule rejected the
+ * change or the version did not match.
+ */
+public interface DeviceUpdateRepository {
+
+    Optional<DeviceUpdate> updateIfAllowed(UUID id, String name, String brand, String state, Long version);
+
+    /**
+     * Like {@link #updateIfAllowed}, keeping the current value of every null argument.
+     */
+    Optional<DeviceUpdate> patchIfAllowed(UUID id, String name, String brand, String state, Long version);
+
+    Optional<DeviceUpdate> updateState(UUID id, String state, Long version);
+}
@@ -0,0 +1,56 @@
+package cris.greg.io.repository;
+
+import cris.greg.io.model.Device;
+import cris.greg.io.model.DeviceState;
+import cris.greg.io.model.DeviceUpdate;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+class DeviceUpdateRepositoryImpl implements DeviceUpdateRepository {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @Transactional
+    public Optional<DeviceUpdate> updateIfAllowed(UUID id, String name, String brand, String state, Long version) {
+        return update(entityManager.createNativeQuery(DeviceRepository.UPDATE_IF_ALLOWED_WITH_EVENT, Device.UPDATE_MAPPING)
+                .setParameter("name", name)
+                .setParameter("brand", brand), id, state, version);
+    }
+
+    @Override
+    @Transactional
+    public Optional<DeviceUpdate> patchIfAllowed(UUID id, String name, String brand, String state, Long version) {
+        return update(entityManager.createNativeQuery(DeviceRepository.PATCH_IF_ALLOWED_WITH_EVENT, Device.UPDATE_MAPPING)
+                .setParameter("name", name)
+                .setParameter("brand", brand), id, state, version);
+    }
+
+    @Override
+    @Transactional
+    public Optional<DeviceUpdate> updateState(UUID id, String state, Long version) {
+        return update(entityManager.createNativeQuery(DeviceRepository.UPDATE_STATE_WITH_EVENT, Device.UPDATE_MAPPING),
+                id, state, version);
+    }
+
+    private static Optional<DeviceUpdate> update(Query query, UUID id, String state, Long version) {
+        List<?> rows = query.setParameter("id", id)
+                .setParameter("state", state)
+                .setParameter("version", version)
+                .getResultList();
+        if (rows.isEmpty()) {
+            return Optional.empty();
+        }
+        Object[] row = (Object[]) rows.get(0);
+        String previousState = (String) row[2];
+        return Optional.of(new DeviceUpdate((Device) row[0], (String) row[1],
+                previousState == null ? null : DeviceState.valueOf(previousState)));
+    }
+}
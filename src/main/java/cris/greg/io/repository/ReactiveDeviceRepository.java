@@ -0,0 +1,312 @@
+package cris.greg.io.repository;
+
+import cris.greg.io.model.Device;
+import cris.greg.io.model.DeviceChange;
+import cris.greg.io.model.DeviceChangeType;
+import cris.greg.io.model.DeviceEvent;
+import cris.greg.io.model.DeviceField;
+import cris.greg.io.model.DeviceSearch;
+import cris.greg.io.model.DeviceSort;
+import cris.greg.io.model.DeviceState;
+import cris.greg.io.model.DeviceStats;
+import cris.greg.io.model.DeviceUpdate;
+import io.r2dbc.spi.Row;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * R2DBC counterpart of {@link DeviceRepository} for the reactive profile, on the same table, indexes and
+ * single-statement mutations. Listings are keyset-paginated on (creation_time, id) with an optional brand
+ * and state filter; the stream queries fetch {@link DeviceRepository#STREAM_FETCH_SIZE} rows per round trip
+ * and only as fast as the subscriber requests them.
+ */
+@Repository
+@Profile("reactive")
+@RequiredArgsConstructor
+public class ReactiveDeviceRepository {
+
+    private static final int STREAM_FETCH_SIZE = Integer.parseInt(DeviceRepository.STREAM_FETCH_SIZE);
+
+    private final DatabaseClient databaseClient;
+
+    public Mono<Device> insert(Device device) {
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql("WITH d AS (INSERT INTO devices (id, name, brand, state, creation_time) " +
+                        "VALUES (:id, :name, :brand, :state, :creationTime) RETURNING *)" + DeviceEventRepository.APPEND_CREATED)
+                .bind("id", device.getId())
+                .bind("state", device.getState().name())
+                .bind("creationTime", LocalDateTime.now());
+        spec = bindNullable(spec, "name", device.getName(), String.class);
+        spec = bindNullable(spec, "brand", device.getBrand(), String.class);
+        return spec.map((row, metadata) -> toDevice(row)).one();
+    }
+
+    public Mono<Device> findById(UUID id) {
+        return databaseClient.sql("SELECT * FROM devices WHERE id = :id")
+                .bind("id", id)
+                .map((row, metadata) -> toDevice(row))
+                .one();
+    }
+
+    /**
+     * Reads one page of devices ordered by (creation_time, id).
+     *
+     * @param fields the fields to read, or null for all; creation_time and id are always read for the cursor
+     * @param brand the brand to filter on, or null
+     * @param state the state to filter on, or null
+     * @param creationTime the creation time of the last device of the previous page, or null for the first page
+     * @param id the id of the last device of the previous page, or null for the first page
+     * @param limit the maximum number of devices
+     */
+    public Flux<Device> findPage(Set<DeviceField> fields, String brand, DeviceState state, LocalDateTime creationTime,
+                                 UUID id, int limit) {
+        Set<DeviceField> selected = null;
+        if (fields != null) {
+            selected = EnumSet.of(DeviceField.ID, DeviceField.CREATION_TIME);
+            selected.addAll(fields);
+        }
+        List<String> conditions = filters(brand, state);
+        if (creationTime != null) {
+            conditions.add("(creation_time, id) > (:creationTime, :afterId)");
+        }
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(select(selected, conditions) + " LIMIT :limit")
+                .bind("limit", limit);
+        if (creationTime != null) {
+            spec = spec.bind("creationTime", creationTime).bind("afterId", id);
+        }
+        Set<DeviceField> read = selected;
+        return bindFilters(spec, brand, state).map((row, metadata) -> toDevice(row, read)).all();
+    }
+
+    /**
+     * Streams the given fields, or all when null, of every device matching the optional brand and state
+     * filters, ordered by (creation_time, id).
+     */
+    public Flux<Device> stream(Set<DeviceField> fields, String brand, DeviceState state) {
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(select(fields, filters(brand, state)))
+                .filter(statement -> statement.fetchSize(STREAM_FETCH_SIZE));
+        return bindFilters(spec, brand, state).map((row, metadata) -> toDevice(row, fields)).all();
+    }
+
+    /**
+     * Reads one page of a search, with the same conditions and order as {@link DeviceSpecifications}.
+     *
+     * @param search the criteria and order
+     * @param fields the fields to read, or null for all; id and the sort field are always read for the cursor
+     * @param afterKey the sort key of the last device of the previous page, or null for the first page
+     * @param afterId the id of the last device of the previous page, or null for the first page
+     * @param limit the maximum number of devices
+     */
+    public Flux<Device> search(DeviceSearch search, Set<DeviceField> fields, Comparable<?> afterKey, UUID afterId, int limit) {
+        DeviceSort sort = search.getSort();
+        Set<DeviceField> selected = null;
+        if (fields != null) {
+            selected = EnumSet.of(DeviceField.ID, sort.getField());
+            selected.addAll(fields);
+        }
+        List<String> conditions = filters(search.getBrand(), null);
+        if (search.getStates() != null) {
+            conditions.add("state IN (:states)");
+        }
+        if (search.getNamePrefix() != null) {
+            conditions.add("lower(name) LIKE :namePrefix ESCAPE '\\'");
+        }
+        if (search.getNameMatch() != null) {
+            conditions.add("lower(name) % :nameMatch");
+        }
+        if (search.getCreatedFrom() != null) {
+            conditions.add("creation_time >= :createdFrom");
+        }
+        if (search.getCreatedTo() != null) {
+            conditions.add("creation_time < :createdTo");
+        }
+        String column = sort.getField().getColumn();
+        String direction = sort.isDescending() ? " DESC" : "";
+        if (afterKey != null) {
+            conditions.add("(" + column + ", id) " + (sort.isDescending() ? "<" : ">") + " (:afterKey, :afterId)");
+        }
+        String orderBy = column + direction + ", id" + direction;
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(select(selected, conditions, orderBy) + " LIMIT :limit")
+                .bind("limit", limit);
+        spec = bindFilters(spec, search.getBrand(), null);
+        if (search.getStates() != null) {
+            spec = spec.bind("states", search.getStates().stream().map(DeviceState::name).collect(Collectors.toList()));
+        }
+        if (search.getNamePrefix() != null) {
+            spec = spec.bind("namePrefix", DeviceSpecifications.likePrefix(search.getNamePrefix()));
+        }
+        if (search.getNameMatch() != null) {
+            spec = spec.bind("nameMatch", search.getNameMatch().toLowerCase(Locale.ROOT));
+        }
+        if (search.getCreatedFrom() != null) {
+            spec = spec.bind("createdFrom", search.getCreatedFrom());
+        }
+        if (search.getCreatedTo() != null) {
+            spec = spec.bind("createdTo", search.getCreatedTo());
+        }
+        if (afterKey != null) {
+            spec = spec.bind("afterKey", afterKey).bind("afterId", afterId);
+        }
+        Set<DeviceField> read = selected;
+        return spec.map((row, metadata) -> toDevice(row, read)).all();
+    }
+
+    public Mono<DeviceUpdate> updateIfAllowed(UUID id, String name, String brand, String state, Long version) {
+        return mutate(DeviceRepository.UPDATE_IF_ALLOWED_WITH_EVENT, id, name, brand, state, version);
+    }
+
+    public Mono<DeviceUpdate> patchIfAllowed(UUID id, String name, String brand, String state, Long version) {
+        return mutate(DeviceRepository.PATCH_IF_ALLOWED_WITH_EVENT, id, name, brand, state, version);
+    }
+
+    public Mono<DeviceUpdate> updateState(UUID id, String state, Long version) {
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(DeviceRepository.UPDATE_STATE_WITH_EVENT)
+                .bind("id", id)
+                .bind("state", state);
+        return bindNullable(spec, "version", version, Long.class).map((row, metadata) -> toUpdate(row)).one();
+    }
+
+    public Mono<Device> deleteIfNotInUse(UUID id, Long version) {
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(DeviceRepository.DELETE_IF_NOT_IN_USE_WITH_EVENT).bind("id", id);
+        return bindNullable(spec, "version", version, Long.class).map((row, metadata) -> toDevice(row)).one();
+    }
+
+    public Mono<Long> deleteAll() {
+        return databaseClient.sql(DeviceRepository.DELETE_ALL_WITH_EVENT).fetch().rowsUpdated();
+    }
+
+    /**
+     * Counts the devices per brand and state with one GROUP BY, like {@link DeviceRepository#countByBrandAndState()}.
+     */
+    public Mono<DeviceStats> countByBrandAndState() {
+        return databaseClient.sql("SELECT brand, state, COUNT(*) AS count FROM devices GROUP BY brand, state")
+                .fetch()
+                .all()
+                .collect(HashMap<String, Map<DeviceState, Long>>::new, (counts, row) -> counts
+                        .computeIfAbsent((String) row.get("brand"), brand -> new EnumMap<>(DeviceState.class))
+                        .put(DeviceState.valueOf((String) row.get("state")), ((Number) row.get("count")).longValue()))
+                .map(DeviceStats::of);
+    }
+
+    /**
+     * Reads relayed outbox events after the given seq, in seq order.
+     */
+    public Flux<DeviceChange> findEventsAfter(long after, int limit) {
+        return databaseClient.sql("SELECT * FROM device_events WHERE seq > :after ORDER BY seq LIMIT :limit")
+                .bind("after", after)
+                .bind("limit", limit)
+                .map((row, metadata) -> toEvent(row).toChange())
+                .all();
+    }
+
+    private Mono<DeviceUpdate> mutate(String sql, UUID id, String name, String brand, String state, Long version) {
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(sql).bind("id", id);
+        spec = bindNullable(spec, "name", name, String.class);
+        spec = bindNullable(spec, "brand", brand, String.class);
+        spec = bindNullable(spec, "state", state, String.class);
+        return bindNullable(spec, "version", version, Long.class).map((row, metadata) -> toUpdate(row)).one();
+    }
+
+    private static List<String> filters(String brand, DeviceState state) {
+        List<String> conditions = new ArrayList<>();
+        if (brand != null) {
+            conditions.add("brand = :brand");
+        }
+        if (state != null) {
+            conditions.add("state = :state");
+        }
+        return conditions;
+    }
+
+    private static String select(Set<DeviceField> fields, List<String> conditions) {
+        return select(fields, conditions, "creation_time, id");
+    }
+
+    private static String select(Set<DeviceField> fields, List<String> conditions, String orderBy) {
+        String columns = fields == null ? "*" : fields.stream().map(DeviceField::getColumn).collect(Collectors.joining(", "));
+        String where = conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions);
+        return "SELECT " + columns + " FROM devices" + where + " ORDER BY " + orderBy;
+    }
+
+    private static DatabaseClient.GenericExecuteSpec bindFilters(DatabaseClient.GenericExecuteSpec spec, String brand, DeviceState state) {
+        if (brand != null) {
+            spec = spec.bind("brand", brand);
+        }
+        if (state != null) {
+            spec = spec.bind("state", state.name());
+        }
+        return spec;
+    }
+
+    private static <T> DatabaseClient.GenericExecuteSpec bindNullable(DatabaseClient.GenericExecuteSpec spec, String name,
+                                                                      T value, Class<T> type) {
+        return value == null ? spec.bindNull(name, type) : spec.bind(name, value);
+    }
+
+    private static Device toDevice(Row row) {
+        return Device.builder()
+                .id(row.get("id", UUID.class))
+                .name(row.get("name", String.class))
+                .brand(row.get("brand", String.class))
+                .state(DeviceState.valueOf(row.get("state", String.class)))
+                .creationTime(row.get("creation_time", LocalDateTime.class))
+                .version(row.get("version", Long.class))
+                .build();
+    }
+
+    private static DeviceUpdate toUpdate(Row row) {
+        String previousState = row.get("previous_state", String.class);
+        return new DeviceUpdate(toDevice(row), row.get("previous_brand", String.class),
+                previousState == null ? null : DeviceState.valueOf(previousState));
+    }
+
+    private static Device toDevice(Row row, Set<DeviceField> fields) {
+        if (fields == null) {
+            return toDevice(row);
+        }
+        String state = fields.contains(DeviceField.STATE) ? row.get("state", String.class) : null;
+        return Device.builder()
+                .id(fields.contains(DeviceField.ID) ? row.get("id", UUID.class) : null)
+                .name(fields.contains(DeviceField.NAME) ? row.get("name", String.class) : null)
+                .brand(fields.contains(DeviceField.BRAND) ? row.get("brand", String.class) : null)
+                .state(state == null ? null : DeviceState.valueOf(state))
+                .creationTime(fields.contains(DeviceField.CREATION_TIME) ? row.get("creation_time", LocalDateTime.class) : null)
+                .version(fields.contains(DeviceField.VERSION) ? row.get("version", Long.class) : null)
+                .build();
+    }
+
+    private static DeviceEvent toEvent(Row row) {
+        String state = row.get("state", String.class);
+        String previousState = row.get("previous_state", String.class);
+        return DeviceEvent.builder()
+                .id(row.get("id", Long.class))
+                .seq(row.get("seq", Long.class))
+                .type(DeviceChangeType.valueOf(row.get("type", String.class)))
+                .deviceId(row.get("device_id", UUID.class))
+                .name(row.get("name", String.class))
+                .brand(row.get("brand", String.class))
+                .state(state == null ? null : DeviceState.valueOf(state))
+                .creationTime(row.get("creation_time", LocalDateTime.class))
+                .version(row.get("version", Long.class))
+                .previousBrand(row.get("previous_brand", String.class))
+                .previousState(previousState == null ? null : DeviceState.valueOf(previousState))
+                .occurredAt(row.get("occurred_at", LocalDateTime.class))
+                .publishedAt(row.get("published_at", LocalDateTime.class))
+                .build();
+    }
+}
@@ -0,0 +1,328 @@
+package cris.greg.io.service;
+
+import cris.greg.io.config.DeviceProperties;
+import cris.greg.io.exception.DeviceValidationException;
+import cris.greg.io.model.Device;
+import cris.greg.io.model.DeviceBatchResult;
+import cris.greg.io.model.DeviceChangeType;
+import cris.greg.io.model.DeviceEvent;
+import cris.greg.io.model.DeviceState;
+import cris.greg.io.repository.DeviceEventRepository;
+import cris.greg.io.repository.DeviceRepository;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+/**
+ * Bulk create, update and delete. Items are validated one by one and each gets its own result;
+ * valid items are written in chunks of {@code device.batch.chunk-size}, one transaction per chunk,
+ * so Hibernate can send them as JDBC batches. Each chunk saves its outbox events in the same transaction.
+ */
+@Service
+@RequiredArgsConstructor
+public class DeviceBatchService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeviceBatchService.class);
+    private final DeviceRepository deviceRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final DeviceProperties properties;
+    private final DeviceCache deviceCache;
+    private final DeviceTaskExecutor executor;
+    private final DeviceChangeFeed changeFeed;
+    private final DeviceEventRepository eventRepository;
+    private final DeviceIdGenerator idGenerator;
+    private final DeviceReadCoalescer coalescer;
+
+    /**
+     * Creates devices asynchronously.
+     *
+     * @param devices the devices to create; ids sent by the client are ignored
+     * @return a CompletableFuture containing one result per device, in request order
+     * @throws DeviceValidationException if the batch is empty or larger than the configured maximum
+     */
+    public CompletableFuture<List<DeviceBatchResult>> createDevices(List<Device> devices) {
+        checkBatchSize(devices.size());
+        return executor.supply(() -> {
+            DeviceBatchResult[] results = new DeviceBatchResult[devices.size()];
+            forEachChunk(devices.size(), (from, to) -> createChunk(devices, from, to, results));
+            logger.debug("Batch create of {} devices finished", devices.size());
+            return Arrays.asList(results);
+        });
+    }
+
+    /**
+     * Partially updates devices asynchronously. Only the non-null fields of each item are applied,
+     * and the name and brand of a device {@link DeviceState#IN_USE} cannot change.
+     *
+     * @param devices the changes, each identified by its id
+     * @return a CompletableFuture containing one result per device, in request order
+     * @throws DeviceValidationException if the batch is empty or larger than the configured maximum
+     */
+    public CompletableFuture<List<DeviceBatchResult>> updateDevices(List<Device> devices) {
+        checkBatchSize(devices.size());
+        return executor.supply(() -> {
+            DeviceBatchResult[] results = new DeviceBatchResult[devices.size()];
+            forEachChunk(devices.size(), (from, to) -> updateChunk(devices, from, to, results));
+            logger.debug("Batch update of {} devices finished", devices.size());
+            return Arrays.asList(results);
+        });
+    }
+
+    /**
+     * Deletes devices asynchronously. Devices {@link DeviceState#IN_USE} are not deleted.
+     *
+     * @param ids the UUIDs of the devices to delete
+     * @return a CompletableFuture containing one result per id, in request order
+     * @throws DeviceValidationException if the batch is empty or larger than the configured maximum
+     */
+    public CompletableFuture<List<DeviceBatchResult>> deleteDevices(List<UUID> ids) {
+        checkBatchSize(ids.size());
+        return executor.supply(() -> {
+            DeviceBatchResult[] results = new DeviceBatchResult[ids.size()];
+            forEachChunk(ids.size(), (from, to) -> deleteChunk(ids, from, to, results));
+            logger.debug("Batch delete of {} devices finished", ids.size());
+            return Arrays.asList(results);
+        });
+    }
+
+    private void createChunk(List<Device> devices, int from, int to, DeviceBatchResult[] results) {
+        List<Device> valid = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            Device device = devices.get(i);
+            String error = validateNewDevice(device);
+            if (error != null) {
+                results[i] = DeviceBatchResult.failure(i, null, HttpStatus.BAD_REQUEST, error);
+                continue;
+            }
+            device.setId(idGenerator.next());
+            valid.add(device);
+            positions.add(i);
+        }
+        if (valid.isEmpty()) {
+            return;
+        }
+        if (!runChunk(() -> {
+            deviceRepository.saveAll(valid);
+            eventRepository.saveAll(events(DeviceChangeType.CREATED, valid));
+        }, positions, results)) {
+            return;
+        }
+        for (int i = 0; i < valid.size(); i++) {
+            Device saved = valid.get(i);
+            results[positions.get(i)] = DeviceBatchResult.success(positions.get(i), saved.getId(), HttpStatus.CREATED, saved);
+            changeFeed.created(saved);
+        }
+        coalescer.invalidate();
+    }
+
+    private void updateChunk(List<Device> devices, int from, int to, DeviceBatchResult[] results) {
+        Map<Integer, DeviceBatchResult> chunkResults = new HashMap<>();
+        List<Device> updated = new ArrayList<>();
+        List<String> previousBrands = new ArrayList<>();
+        List<DeviceState> previousStates = new ArrayList<>();
+        boolean committed = runChunk(() -> {
+            Map<UUID, Device> existing = findExisting(devices.subList(from, to).stream()
+                    .filter(Objects::nonNull)
+                    .map(Device::getId)
+                    .collect(Collectors.toList()));
+            for (int i = from; i < to; i++) {
+                Device changes = devices.get(i);
+                Device current = changes == null || changes.getId() == null ? null : existing.get(changes.getId());
+                DeviceBatchResult failure = validateUpdate(i, changes, current);
+                if (failure != null) {
+                    chunkResults.put(i, failure);
+                    continue;
+                }
+                previousBrands.add(current.getBrand());
+                previousStates.add(current.getState());
+                applyChanges(current, changes);
+                updated.add(current);
+                chunkResults.put(i, DeviceBatchResult.success(i, current.getId(), HttpStatus.OK, current));
+            }
+            if (!updated.isEmpty()) {
+                // Flush first so the events carry the new values and incremented versions
+                deviceRepository.flush();
+                List<DeviceEvent> events = new ArrayList<>(updated.size());
+                for (int i = 0; i < updated.size(); i++) {
+                    events.add(DeviceEvent.updated(updated.get(i), previousBrands.get(i), previousStates.get(i)));
+                }
+                eventRepository.saveAll(events);
+            }
+        }, rangeOf(from, to), results);
+        if (committed) {
+            updated.forEach(deviceCache::put);
+            for (int i = 0; i < updated.size(); i++) {
+                changeFeed.updated(updated.get(i), previousBrands.get(i), previousStates.get(i));
+            }
+            coalescer.invalidate();
+            chunkResults.forEach((i, result) -> results[i] = result);
+        }
+    }
+
+    private void deleteChunk(List<UUID> ids, int from, int to, DeviceBatchResult[] results) {
+        Map<Integer, DeviceBatchResult> chunkResults = new HashMap<>();
+        List<Device> deleted = new ArrayList<>();
+        boolean committed = runChunk(() -> {
+            Map<UUID, Device> existing = findExisting(ids.subList(from, to));
+            List<Device> deletable = new ArrayList<>();
+            for (int i = from; i < to; i++) {
+                UUID id = ids.get(i);
+                Device current = id == null ? null : existing.get(id);
+                if (id == null) {
+                    chunkResults.put(i, DeviceBatchResult.failure(i, null, HttpStatus.BAD_REQUEST, "Device id is required"));
+                } else if (current == null) {
+                    chunkResults.put(i, DeviceBatchResult.failure(i, id, HttpStatus.NOT_FOUND, "Device not found"));
+                } else if (current.getState() == DeviceState.IN_USE) {
+                    chunkResults.put(i, DeviceBatchResult.failure(i, id, HttpStatus.NOT_ACCEPTABLE, "In-use devices cannot be deleted"));
+                } else {
+                    deletable.add(current);
+                    chunkResults.put(i, DeviceBatchResult.success(i, id, HttpStatus.NO_CONTENT, null));
+                }
+            }
+            if (!deletable.isEmpty()) {
+                deviceRepository.deleteAllInBatch(deletable);
+                eventRepository.saveAll(events(DeviceChangeType.DELETED, deletable));
+                deleted.addAll(deletable);
+            }
+        }, rangeOf(from, to), results);
+        if (committed) {
+            for (Device device : deleted) {
+                deviceCache.evict(device.getId());
+                changeFeed.deleted(device);
+            }
+            coalescer.invalidate();
+            chunkResults.forEach((i, result) -> results[i] = result);
+        }
+    }
+
+    /**
+     * Runs one chunk in its own transaction. If the transaction fails, every item of the chunk
+     * is reported as a server error and the other chunks are unaffected.
+     *
+     * @return true if the chunk was committed
+     */
+    private boolean runChunk(Runnable work, List<Integer> positions, DeviceBatchResult[] results) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> work.run());
+            return true;
+        } catch (DataAccessException | TransactionException e) {
+            logger.error("Batch chunk of {} items failed", positions.size(), e);
+            for (int i : positions) {
+                results[i] = DeviceBatchResult.failure(i, null, HttpStatus.INTERNAL_SERVER_ERROR, "Batch chunk failed");
+            }
+            return false;
+        }
+    }
+
+    private static List<DeviceEvent> events(DeviceChangeType type, List<Device> devices) {
+        List<DeviceEvent> events = new ArrayList<>(devices.size());
+        for (Device device : devices) {
+            events.add(DeviceEvent.of(type, device));
+        }
+        return events;
+    }
+
+    /**
+     * Loads and row-locks the chunk's devices, so the IN_USE checks still hold when the chunk is written.
+     * Rows are locked in id order, so concurrent batches over overlapping devices cannot deadlock.
+     */
+    private Map<UUID, Device> findExisting(List<UUID> ids) {
+        Map<UUID, Device> existing = new HashMap<>();
+        List<UUID> distinctIds = ids.stream().filter(Objects::nonNull).distinct().collect(Collectors.toList());
+        for (Device device : deviceRepository.findAllForUpdate(distinctIds)) {
+            existing.put(device.getId(), device);
+        }
+        return existing;
+    }
+
+    private String validateNewDevice(Device device) {
+        if (device == null) {
+            return "Device is required";
+        }
+        if (device.getState() == null) {
+            return "Invalid state";
+        }
+        if (device.getName() == null || device.getBrand() == null) {
+            return "Name and brand are required";
+        }
+        return null;
+    }
+
+    /**
+     * Applies the single-device update rules: the device must exist and, while it is
+     * {@link DeviceState#IN_USE}, its name and brand cannot change.
+     */
+    private DeviceBatchResult validateUpdate(int index, Device changes, Device current) {
+        if (changes == null || changes.getId() == null) {
+            return DeviceBatchResult.failure(index, null, HttpStatus.BAD_REQUEST, "Device id is required");
+        }
+        if (current == null) {
+            return DeviceBatchResult.failure(index, changes.getId(), HttpStatus.NOT_FOUND, "Device not found");
+        }
+        boolean nameChanged = changes.getName() != null && !changes.getName().equals(current.getName());
+        boolean brandChanged = changes.getBrand() != null && !changes.getBrand().equals(current.getBrand());
+        if (current.getState() == DeviceState.IN_USE && (nameChanged || brandChanged)) {
+            return DeviceBatchResult.failure(index, changes.getId(), HttpStatus.NOT_ACCEPTABLE,
+                    "Cannot update name or brand of a device " + DeviceState.IN_USE.name());
+        }
+        return null;
+    }
+
+    private void applyChanges(Device current, Device changes) {
+        if (changes.getName() != null) {
+            current.setName(changes.getName());
+        }
+        if (changes.getBrand() != null) {
+            current.setBrand(changes.getBrand());
+        }
+        if (changes.getState() != null) {
+            current.setState(changes.getState());
+        }
+    }
+
+    private void checkBatchSize(int size) {
+        if (size == 0) {
+            throw new DeviceValidationException("Batch is empty", HttpStatus.BAD_REQUEST);
+        }
+        if (size > properties.getBatch().getMaxItems()) {
+            throw new DeviceValidationException("Batch exceeds " + properties.getBatch().getMaxItems() + " items",
+                    HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    private void forEachChunk(int size, ChunkAction action) {
+        int chunkSize = properties.getBatch().getChunkSize();
+        for (int from = 0; from < size; from += chunkSize) {
+            action.run(from, Math.min(from + chunkSize, size));
+        }
+    }
+
+    private static List<Integer> rangeOf(int from, int to) {
+        List<Integer> range = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            range.add(i);
+        }
+        return range;
+    }
+
+    @FunctionalInterface
+    private interface ChunkAction {
+        void run(int from, int to);
+    }
+}
@@ -0,0 +1,169 @@
+package cris.greg.io.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import cris.greg.io.config.DeviceProperties;
+import cris.greg.io.model.Device;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Bounded read-through cache of devices by id. Misses are cached too, for a shorter time,
+ * so repeated lookups of unknown ids do not reach the database.
+ * Writers keep it consistent through {@link #put}, {@link #evict} and {@link #clear}. Lookups are always
+ * loaded from the primary: a lagging replica could bring back a device that was just deleted or changed,
+ * and the cache would serve it for the whole TTL. A load is cached from the moment it starts, so a write
+ * that lands while it runs replaces or drops it, and the load's late result is discarded.
+ */
+@Component
+@ManagedResource(objectName = "cris.greg.io:type=DeviceCache", description = "Device read-through cache")
+public class DeviceCache {
+
+    private final boolean enabled;
+    private final AsyncCache<UUID, Optional<Device>> cache;
+
+    public DeviceCache(DeviceProperties properties) {
+        DeviceProperties.Cache settings = properties.getCache();
+        this.enabled = settings.isEnabled();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(settings.getMaximumSize())
+                .expireAfter(new WriteExpiry(settings.getTtl(), settings.getNegativeTtl()))
+                .recordStats()
+                .buildAsync();
+    }
+
+    /**
+     * Returns the cached lookup for the id, loading it on a miss.
+     * Concurrent misses on the same id share a single load, which runs on the primary.
+     * With the cache disabled nothing is kept, so the lookup may go to a replica.
+     *
+     * @param id the UUID of the device
+     * @param loader the database lookup used on a miss
+     * @return the device, or empty if it does not exist
+     */
+    public Optional<Device> get(UUID id, Function<UUID, Optional<Device>> loader) {
+        if (!enabled) {
+            return loader.apply(id);
+        }
+        // Loaded on the calling thread while the entry is locked, so a concurrent write waits for the load
+        return cache.get(id, (key, executor) ->
+                CompletableFuture.completedFuture(ReplicaReads.onPrimary(() -> loader.apply(key)))).join();
+    }
+
+    /**
+     * Like {@link #get}, for callers that load without blocking. The loader only starts the lookup; the entry
+     * holds it until it completes, and concurrent misses on the same id share it.
+     *
+     * @param id the UUID of the device
+     * @param loader starts the database lookup used on a miss
+     * @return a future of the device, or of empty if it does not exist
+     */
+    public CompletableFuture<Optional<Device>> getAsync(UUID id,
+                                                        Function<UUID, CompletableFuture<Optional<Device>>> loader) {
+        if (!enabled) {
+            return loader.apply(id);
+        }
+        return cache.get(id, (key, executor) -> loader.apply(key));
+    }
+
+    /**
+     * Returns the cached lookup for the id without loading it.
+     *
+     * @param id the UUID of the device
+     * @return the cached lookup, or null on a miss, while it is still loading or when the cache is disabled
+     */
+    public Optional<Device> getIfPresent(UUID id) {
+        CompletableFuture<Optional<Device>> lookup = enabled ? cache.getIfPresent(id) : null;
+        return lookup != null && lookup.isDone() && !lookup.isCompletedExceptionally() ? lookup.join() : null;
+    }
+
+    /**
+     * Writes a freshly persisted device through to the cache.
+     *
+     * @param device the saved device
+     */
+    public void put(Device device) {
+        if (enabled) {
+            cache.put(device.getId(), CompletableFuture.completedFuture(Optional.of(device)));
+        }
+    }
+
+    /**
+     * Drops the entry for a device that was removed or changed outside the cache's view.
+     *
+     * @param id the UUID of the device
+     */
+    public void evict(UUID id) {
+        cache.synchronous().invalidate(id);
+    }
+
+    /**
+     * Drops every entry.
+     */
+    @ManagedOperation(description = "Drops every cached device")
+    public void clear() {
+        cache.synchronous().invalidateAll();
+    }
+
+    @ManagedAttribute(description = "Whether the cache is enabled")
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @ManagedAttribute(description = "Lookups answered from the cache")
+    public long getHitCount() {
+        return cache.synchronous().stats().hitCount();
+    }
+
+    @ManagedAttribute(description = "Lookups that went to the database")
+    public long getMissCount() {
+        return cache.synchronous().stats().missCount();
+    }
+
+    @ManagedAttribute(description = "Entries removed by the size or TTL bounds")
+    public long getEvictionCount() {
+        return cache.synchronous().stats().evictionCount();
+    }
+
+    @ManagedAttribute(description = "Approximate number of cached entries")
+    public long getSize() {
+        return cache.synchronous().estimatedSize();
+    }
+
+    /**
+     * Expires an entry a fixed time after it was last written, using the shorter TTL for misses.
+     */
+    private static final class WriteExpiry implements Expiry<UUID, Optional<Device>> {
+        private final long ttlNanos;
+        private final long negativeTtlNanos;
+
+        private WriteExpiry(Duration ttl, Duration negativeTtl) {
+            this.ttlNanos = ttl.toNanos();
+            this.negativeTtlNanos = negativeTtl.toNanos();
+        }
+
+        @Override
+        public long expireAfterCreate(UUID id, Optional<Device> device, long currentTime) {
+            return device.isPresent() ? ttlNanos : negativeTtlNanos;
+        }
+
+        @Override
+        public long expireAfterUpdate(UUID id, Optional<Device> device, long currentTime, long currentDuration) {
+            return expireAfterCreate(id, device, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(UUID id, Optional<Device> device, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
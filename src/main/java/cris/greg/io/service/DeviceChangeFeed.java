@@ -0,0 +1,180 @@
+package cris.greg.io.service;
+
+import cris.greg.io.config.DeviceProperties;
+import cris.greg.io.model.Device;
+import cris.greg.io.model.DeviceChange;
+import cris.greg.io.model.DeviceChangeType;
+import cris.greg.io.model.DeviceState;
+import lombok.Getter;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * In-memory feed of committed device changes. The last {@code device.changes.buffer-size} changes are kept
+ * in a ring buffer so a reconnecting client can resume after its Last-Event-ID. Writers hand each change to
+ * the matching subscribers without ever waiting on them: a subscriber whose queue is full is dropped and
+ * resumes from the buffer when it reconnects.
+ */
+@Component
+@ManagedResource(objectName = "cris.greg.io:type=DeviceChangeFeed", description = "Device change feed")
+public class DeviceChangeFeed {
+
+    private final DeviceChange[] buffer;
+    private final List<Subscription> subscriptions = new ArrayList<>();
+    private long lastId;
+    private long overflowCount;
+
+    public DeviceChangeFeed(DeviceProperties properties) {
+        this.buffer = new DeviceChange[properties.getChanges().getBufferSize()];
+    }
+
+    public void created(Device device) {
+        publish(DeviceChangeType.CREATED, device.getId(), device, null, null);
+    }
+
+    public void updated(Device device, String previousBrand, DeviceState previousState) {
+        publish(DeviceChangeType.UPDATED, device.getId(), device, previousBrand, previousState);
+    }
+
+    public void deleted(Device device) {
+        publish(DeviceChangeType.DELETED, device.getId(), device, null, null);
+    }
+
+    public void flushed() {
+        publish(DeviceChangeType.FLUSHED, null, null, null, null);
+    }
+
+    /**
+     * Registers a listener for the changes matching the filters. An update matches when the device matches
+     * before or after it, so subscribers also see a device leave their filter. The buffered changes after lastEventId are
+     * returned in {@link Subscription#getBacklog()} and must be delivered before the live ones; when some of
+     * them are no longer buffered, the backlog is a single RESET change instead.
+     *
+     * @param brand only changes of devices of this brand, or null for any
+     * @param state only changes of devices in this state, or null for any
+     * @param lastEventId the id of the last change the client received, or null to start from now
+     * @param listener receives the live changes
+     * @return the subscription, to be passed to {@link #unsubscribe} when the client goes away
+     */
+    public synchronized Subscription subscribe(String brand, DeviceState state, Long lastEventId, Listener listener) {
+        List<DeviceChange> backlog = Collections.emptyList();
+        if (lastEventId != null && lastEventId != lastId) {
+            backlog = backlog(brand, state, lastEventId);
+        }
+        Subscription subscription = new Subscription(brand, state, listener, backlog);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    public synchronized void unsubscribe(Subscription subscription) {
+        subscriptions.remove(subscription);
+    }
+
+    @ManagedAttribute(description = "Clients currently subscribed")
+    public synchronized int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    @ManagedAttribute(description = "Id of the latest change")
+    public synchronized long getLastId() {
+        return lastId;
+    }
+
+    @ManagedAttribute(description = "Clients dropped because they fell behind")
+    public synchronized long getOverflowCount() {
+        return overflowCount;
+    }
+
+    private synchronized void publish(DeviceChangeType type, UUID deviceId, Device device, String previousBrand,
+                                      DeviceState previousState) {
+        DeviceChange change = new DeviceChange(++lastId, type, deviceId, device, previousBrand, previousState,
+                LocalDateTime.now());
+        buffer[(int) (change.getId() % buffer.length)] = change;
+        Iterator<Subscription> iterator = subscriptions.iterator();
+        while (iterator.hasNext()) {
+            Subscription subscription = iterator.next();
+            if (subscription.matches(change) && !subscription.listener.offer(change)) {
+                iterator.remove();
+                overflowCount++;
+                subscription.listener.overflowed();
+            }
+        }
+    }
+
+    private List<DeviceChange> backlog(String brand, DeviceState state, long lastEventId) {
+        long oldest = Math.max(1, lastId - buffer.length + 1);
+        if (lastEventId < oldest - 1 || lastEventId > lastId) {
+            return Collections.singletonList(new DeviceChange(lastId, DeviceChangeType.RESET, null, null, null,
+                    null, LocalDateTime.now()));
+        }
+        List<DeviceChange> backlog = new ArrayList<>();
+        for (long id = lastEventId + 1; id <= lastId; id++) {
+            DeviceChange change = buffer[(int) (id % buffer.length)];
+            if (matches(change, brand, state)) {
+                backlog.add(change);
+            }
+        }
+        return backlog;
+    }
+
+    private static boolean matches(DeviceChange change, String brand, DeviceState state) {
+        Device device = change.getDevice();
+        if (device == null) {
+            return true;
+        }
+        if (matches(device.getBrand(), device.getState(), brand, state)) {
+            return true;
+        }
+        String previousBrand = change.getPreviousBrand() != null ? change.getPreviousBrand() : device.getBrand();
+        DeviceState previousState = change.getPreviousState() != null ? change.getPreviousState() : device.getState();
+        return matches(previousBrand, previousState, brand, state);
+    }
+
+    private static boolean matches(String deviceBrand, DeviceState deviceState, String brand, DeviceState state) {
+        return (brand == null || brand.equals(deviceBrand)) && (state == null || state == deviceState);
+    }
+
+    /**
+     * Receives live changes. Both methods are called on the writer's thread with the feed locked, so they
+     * must only hand the change over and return.
+     */
+    public interface Listener {
+
+        /**
+         * @return false if the listener cannot take the change, which drops it from the feed
+         */
+        boolean offer(DeviceChange change);
+
+        /**
+         * Called once after the listener was dropped for refusing a change.
+         */
+        void overflowed();
+    }
+
+    @Getter
+    public static final class Subscription {
+        private final String brand;
+        private final DeviceState state;
+        private final Listener listener;
+        private final List<DeviceChange> backlog;
+
+        private Subscription(String brand, DeviceState state, Listener listener, List<DeviceChange> backlog) {
+            this.brand = brand;
+            this.state = state;
+            this.listener = listener;
+            this.backlog = backlog;
+        }
+
+        private boolean matches(DeviceChange change) {
+            return DeviceChangeFeed.matches(change, brand, state);
+        }
+    }
+}
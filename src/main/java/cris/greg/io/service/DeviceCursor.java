@@ -0,0 +1,67 @@
+package cris.greg.io.service;
+
+import cris.greg.io.exception.DeviceValidationException;
+import cris.greg.io.model.Device;
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Opaque continuation token for keyset pagination on (creation_time, id).
+ * Clients only ever see the Base64 form and must hand it back unchanged.
+ */
+@Getter
+public final class DeviceCursor {
+
+    private static final String SEPARATOR = "|";
+
+    private final LocalDateTime creationTime;
+    private final UUID id;
+
+    private DeviceCursor(LocalDateTime creationTime, UUID id) {
+        this.creationTime = creationTime;
+        this.id = id;
+    }
+
+    /**
+     * Builds the cursor pointing just after the given device.
+     *
+     * @param device the last device of a page
+     * @return the cursor for the following page
+     */
+    public static DeviceCursor after(Device device) {
+        return new DeviceCursor(device.getCreationTime(), device.getId());
+    }
+
+    /**
+     * Encodes the cursor as a URL-safe token.
+     *
+     * @return the opaque token
+     */
+    public String encode() {
+        String raw = creationTime + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a token previously produced by {@link #encode()}.
+     *
+     * @param token the opaque token sent by the client
+     * @return the decoded cursor
+     * @throws DeviceValidationException if the token is malformed
+     */
+    public static DeviceCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(SEPARATOR);
+            return new DeviceCursor(LocalDateTime.parse(raw.substring(0, separator)),
+                    UUID.fromString(raw.substring(separator + 1)));
+        } catch (RuntimeException e) {
+            throw new DeviceValidationException("Invalid cursor", HttpStatus.BAD_REQUEST);
+        }
+    }
+}
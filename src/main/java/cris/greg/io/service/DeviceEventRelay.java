@@ -0,0 +1,158 @@
+package cris.greg.io.service;
+
+import cris.greg.io.config.DeviceProperties;
+import cris.greg.io.model.DeviceChange;
+import cris.greg.io.model.DeviceEvent;
+import cris.greg.io.repository.DeviceEventRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Moves device_events from the outbox to the {@link DeviceEventSink}. Each run numbers up to
+ * {@code device.outbox.batch-size} unrelayed events and publishes them in one transaction, and repeats while
+ * full batches come back; then it waits {@code poll-interval}. Once a minute it also deletes events relayed
+ * more than {@code retention} ago.
+ */
+@Component
+@ManagedResource(objectName = "cris.greg.io:type=DeviceEventRelay", description = "Device outbox relay")
+public class DeviceEventRelay {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeviceEventRelay.class);
+    private static final long PRUNE_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final DeviceEventRepository eventRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final DeviceEventSink sink;
+    private final DeviceProperties.Outbox settings;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "device-outbox-relay");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final LongAdder relayed = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final AtomicLong lastSeq = new AtomicLong();
+    private long lastPrune = System.nanoTime();
+
+    public DeviceEventRelay(DeviceEventRepository eventRepository, TransactionTemplate transactionTemplate,
+                            DeviceEventSink sink, DeviceProperties properties) {
+        this.eventRepository = eventRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.sink = sink;
+        this.settings = properties.getOutbox();
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!settings.isRelayEnabled()) {
+            logger.info("Device outbox relay is disabled");
+            return;
+        }
+        long interval = settings.getPollInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::run, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        scheduler.shutdown();
+        scheduler.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Relays every pending event, then prunes if due. Failures are retried on the next run.
+     */
+    void run() {
+        try {
+            int count;
+            do {
+                count = relayBatch();
+            } while (count == settings.getBatchSize() && !scheduler.isShutdown());
+            if (System.nanoTime() - lastPrune > PRUNE_INTERVAL_NANOS) {
+                lastPrune = System.nanoTime();
+                prune();
+            }
+        } catch (RuntimeException e) {
+            failures.increment();
+            logger.warn("Device outbox relay failed, retrying in {}", settings.getPollInterval(), e);
+        }
+    }
+
+    /**
+     * Numbers and publishes one batch. Another instance holding the relay lock makes this a no-op.
+     *
+     * @return the number of events relayed
+     */
+    public int relayBatch() {
+        Integer count = transactionTemplate.execute(status -> {
+            if (!eventRepository.tryRelayLock()) {
+                return 0;
+            }
+            List<DeviceEvent> events = new ArrayList<>(eventRepository.relay(settings.getBatchSize()));
+            if (events.isEmpty()) {
+                return 0;
+            }
+            events.sort(Comparator.comparing(DeviceEvent::getSeq));
+            List<DeviceChange> changes = new ArrayList<>(events.size());
+            for (DeviceEvent event : events) {
+                changes.add(event.toChange());
+            }
+            try {
+                sink.publish(changes);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            lastSeq.set(events.get(events.size() - 1).getSeq());
+            return events.size();
+        });
+        int relayedCount = count == null ? 0 : count;
+        relayed.add(relayedCount);
+        return relayedCount;
+    }
+
+    private void prune() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(settings.getRetention());
+        int deleted;
+        int total = 0;
+        do {
+            deleted = transactionTemplate.execute(status -> eventRepository.deletePublishedBefore(cutoff, settings.getBatchSize()));
+            total += deleted;
+        } while (deleted == settings.getBatchSize() && !scheduler.isShutdown());
+        if (total > 0) {
+            logger.info("Pruned {} device events relayed before {}", total, cutoff);
+        }
+    }
+
+    @ManagedAttribute(description = "Events relayed by this instance")
+    public long getRelayedCount() {
+        return relayed.sum();
+    }
+
+    @ManagedAttribute(description = "Relay runs that failed and were retried")
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    @ManagedAttribute(description = "Seq of the latest event relayed by this instance")
+    public long getLastSeq() {
+        return lastSeq.get();
+    }
+}
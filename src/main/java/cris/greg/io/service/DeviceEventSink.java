@@ -0,0 +1,20 @@
+package cris.greg.io.service;
+
+import cris.greg.io.model.DeviceChange;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Destination of the outbox events relayed by {@link DeviceEventRelay}, selected with {@code device.outbox.sink}.
+ * A batch is published inside the relay transaction: if it throws, the events stay unrelayed and are published
+ * again on the next run, so sinks see every event at least once and can drop repeats by id.
+ */
+public interface DeviceEventSink {
+
+    /**
+     * @param events relayed events in id order, each id one more than the previous
+     * @throws IOException if the batch could not be published
+     */
+    void publish(List<DeviceChange> events) throws IOException;
+}
@@ -0,0 +1,13 @@
+package cris.greg.io.service;
+
+import java.util.UUID;
+
+/**
+ * Source of the ids of new devices, selected with {@code device.ids.generator}. Both stacks take the id from
+ * here before the insert, so every implementation must return a value no other device has, in the standard
+ * UUID format that the id column and the path variables already use.
+ */
+public interface DeviceIdGenerator {
+
+    UUID next();
+}
@@ -0,0 +1,106 @@
+package cris.greg.io.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import cris.greg.io.config.DeviceProperties;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A token bucket per client, so one client calling in a loop cannot take the executor and the database from the
+ * others. Each bucket is a single time, the moment it would be full again, moved forward with one compare-and-set
+ * per request: no lock is taken, and clients never contend with each other. A bucket left alone for burst / rate
+ * seconds is full again, which is when the cache lets it go.
+ */
+@Component
+@ManagedResource(objectName = "cris.greg.io:type=DeviceRateLimiter", description = "Per-client rate limiting")
+public class DeviceRateLimiter {
+
+    private final boolean enabled;
+    private final long tokenNanos;
+    private final long burstNanos;
+    private final int expensiveCost;
+    private final Set<String> expensiveRequests;
+    private final Cache<String, AtomicLong> buckets;
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder limited = new LongAdder();
+
+    public DeviceRateLimiter(DeviceProperties properties) {
+        DeviceProperties.RateLimit settings = properties.getRateLimit();
+        this.enabled = settings.isEnabled();
+        this.tokenNanos = (long) (TimeUnit.SECONDS.toNanos(1) / settings.getRate());
+        this.burstNanos = tokenNanos * settings.getBurst();
+        this.expensiveCost = Math.min(settings.getExpensiveCost(), settings.getBurst());
+        this.expensiveRequests = new HashSet<>(settings.getExpensiveRequests());
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(settings.getMaxClients())
+                .expireAfterAccess(Duration.ofNanos(burstNanos))
+                .build();
+    }
+
+    /**
+     * @param method the HTTP method
+     * @param path the request path, without the query
+     * @return the tokens the request takes
+     */
+    public int costOf(String method, String path) {
+        return expensiveRequests.contains(path) || expensiveRequests.contains(method + " " + path) ? expensiveCost : 1;
+    }
+
+    /**
+     * Takes tokens from the client's bucket, or nothing if it does not hold enough.
+     *
+     * @param client the client, by API key or address
+     * @param tokens the cost of the request, from {@link #costOf}
+     * @return zero if the request may go ahead, otherwise the nanoseconds until the bucket holds enough tokens
+     */
+    public long acquire(String client, int tokens) {
+        if (!enabled) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        long cost = tokens * tokenNanos;
+        AtomicLong bucket = buckets.get(client, key -> new AtomicLong(now));
+        while (true) {
+            long fullAt = bucket.get();
+            long next = (fullAt - now > 0 ? fullAt : now) + cost;
+            long wait = next - now - burstNanos;
+            if (wait > 0) {
+                limited.increment();
+                return wait;
+            }
+            if (bucket.compareAndSet(fullAt, next)) {
+                allowed.increment();
+                return 0;
+            }
+        }
+    }
+
+    @ManagedAttribute(description = "Whether requests are rate limited")
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @ManagedAttribute(description = "Requests let through")
+    public long getAllowedCount() {
+        return allowed.sum();
+    }
+
+    @ManagedAttribute(description = "Requests answered with 429")
+    public long getLimitedCount() {
+        return limited.sum();
+    }
+
+    @ManagedAttribute(description = "Clients whose bucket is kept, approximately")
+    public long getClientCount() {
+        return buckets.estimatedSize();
+    }
+}
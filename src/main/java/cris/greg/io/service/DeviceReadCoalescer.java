@@ -0,0 +1,151 @@
+package cris.greg.io.service;
+
+import cris.greg.io.config.DeviceProperties;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight for device reads. Concurrent reads with the same key share one query: the first runs it and the
+ * others get its result without taking an executor slot. With {@code device.coalescing.window} above zero, reads
+ * arriving within that window after the query completed get its result too. Failures are shared with the reads
+ * that waited for them but never reused. Every write on this instance calls {@link #invalidate()}, so a read that
+ * starts after the write never gets a result that was read before it; reads asking to see their own writes are
+ * never coalesced.
+ */
+@Component
+@ManagedResource(objectName = "cris.greg.io:type=DeviceReadCoalescer", description = "Device read coalescing")
+public class DeviceReadCoalescer {
+
+    private final boolean enabled;
+    private final long windowNanos;
+    private final Executor expiry;
+    private final ConcurrentMap<List<Object>, Flight> flights = new ConcurrentHashMap<>();
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    public DeviceReadCoalescer(DeviceProperties properties) {
+        DeviceProperties.Coalescing settings = properties.getCoalescing();
+        this.enabled = settings.isEnabled();
+        this.windowNanos = settings.getWindow().toNanos();
+        this.expiry = CompletableFuture.delayedExecutor(windowNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param method the name of the read
+     * @param arguments its arguments; they are compared with equals
+     * @return the key of the read
+     */
+    public static List<Object> key(String method, Object... arguments) {
+        Object[] key = new Object[arguments.length + 1];
+        key[0] = method;
+        System.arraycopy(arguments, 0, key, 1, arguments.length);
+        return Arrays.asList(key);
+    }
+
+    /**
+     * Runs the read, or joins the one already running or just completed under the same key.
+     *
+     * @param key the key of the read, from {@link #key}
+     * @param read starts the query
+     * @return a future of the result, of its own for every caller
+     */
+    public <T> CompletableFuture<T> execute(List<Object> key, Supplier<CompletableFuture<T>> read) {
+        if (!enabled || ReplicaReads.isPrimaryRequired()) {
+            executed.increment();
+            return read.get();
+        }
+        long now = System.nanoTime();
+        Flight flight = flights.compute(key, (k, current) ->
+                current != null && current.isFresh(now, windowNanos) ? current : new Flight());
+        if (!flight.started.compareAndSet(false, true)) {
+            coalesced.increment();
+            return relay(flight.result);
+        }
+        executed.increment();
+        CompletableFuture<T> query;
+        try {
+            query = read.get();
+        } catch (RuntimeException e) {
+            flights.remove(key, flight);
+            flight.result.completeExceptionally(e);
+            throw e;
+        }
+        // handle, unlike whenComplete and copy, passes a failure on without wrapping it in a CompletionException
+        query.handle((value, error) -> {
+            if (error != null || windowNanos == 0) {
+                flights.remove(key, flight);
+            } else {
+                flight.completedAt = System.nanoTime();
+                expiry.execute(() -> flights.remove(key, flight));
+            }
+            if (error != null) {
+                flight.result.completeExceptionally(error);
+            } else {
+                flight.result.complete(value);
+            }
+            return null;
+        });
+        return relay(flight.result);
+    }
+
+    /**
+     * @return a future of the flight's result, of its own for the caller
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> CompletableFuture<T> relay(CompletableFuture<Object> result) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        result.handle((value, error) -> error != null ? future.completeExceptionally(error) : future.complete((T) value));
+        return future;
+    }
+
+    /**
+     * Stops handing out results read so far; reads from now on run a new query.
+     */
+    @ManagedOperation(description = "Makes the next reads query the database")
+    public void invalidate() {
+        if (!flights.isEmpty()) {
+            flights.clear();
+        }
+    }
+
+    @ManagedAttribute(description = "Reads that ran a query")
+    public long getExecutedCount() {
+        return executed.sum();
+    }
+
+    @ManagedAttribute(description = "Reads answered by a query already running or just completed")
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    @ManagedAttribute(description = "Coalesced reads per executed read")
+    public double getCoalescedRatio() {
+        long executedCount = executed.sum();
+        return executedCount == 0 ? 0 : (double) coalesced.sum() / executedCount;
+    }
+
+    private static final class Flight {
+
+        private final CompletableFuture<Object> result = new CompletableFuture<>();
+        private final AtomicBoolean started = new AtomicBoolean();
+        // Set before the result completes, so a completed result always has it
+        private volatile long completedAt;
+
+        private boolean isFresh(long now, long windowNanos) {
+            return !result.isDone() || !result.isCompletedExceptionally() && now - completedAt < windowNanos;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package cris.greg.io.service;
+
+import cris.greg.io.exception.DeviceValidationException;
+import cris.greg.io.model.Device;
+import cris.greg.io.model.DeviceField;
+import cris.greg.io.model.DeviceSort;
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Opaque continuation token of a search, for keyset pagination on (sort key, id). Like {@link DeviceCursor},
+ * but it also records the sort, so a token cannot be replayed against another order.
+ */
+@Getter
+public final class DeviceSearchCursor {
+
+    private static final String SEPARATOR = "|";
+
+    private final DeviceSort sort;
+    /** The creation time or name of the last device, depending on the sort. */
+    private final Comparable<?> key;
+    private final UUID id;
+
+    private DeviceSearchCursor(DeviceSort sort, Comparable<?> key, UUID id) {
+        this.sort = sort;
+        this.key = key;
+        this.id = id;
+    }
+
+    /**
+     * Builds the cursor pointing just after the given device in the given order.
+     *
+     * @param sort the order of the search
+     * @param device the last device of a page, with its id and sort key
+     * @return the cursor for the following page
+     */
+    public static DeviceSearchCursor after(DeviceSort sort, Device device) {
+        Comparable<?> key = sort.getField() == DeviceField.NAME ? device.getName() : device.getCreationTime();
+        return new DeviceSearchCursor(sort, key, device.getId());
+    }
+
+    /**
+     * Encodes the cursor as a URL-safe token.
+     *
+     * @return the opaque token
+     */
+    public String encode() {
+        String raw = sort.name() + SEPARATOR + key + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a token previously produced by {@link #encode()}. Names may contain the separator, so the sort
+     * is read up to the first one and the id after the last one.
+     *
+     * @param token the opaque token sent by the client
+     * @param sort the order of the search the token is used with
+     * @return the decoded cursor
+     * @throws DeviceValidationException if the token is malformed or was issued for another order
+     */
+    public static DeviceSearchCursor decode(String token, DeviceSort sort) {
+        DeviceSearchCursor cursor;
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int first = raw.indexOf(SEPARATOR);
+            int last = raw.lastIndexOf(SEPARATOR);
+            DeviceSort tokenSort = DeviceSort.valueOf(raw.substring(0, first));
+            String key = raw.substring(first + 1, last);
+            cursor = new DeviceSearchCursor(tokenSort,
+                    tokenSort.getField() == DeviceField.NAME ? key : LocalDateTime.parse(key),
+                    UUID.fromString(raw.substring(last + 1)));
+        } catch (RuntimeException e) {
+            throw new DeviceValidationException("Invalid cursor", HttpStatus.BAD_REQUEST);
+        }
+        if (cursor.sort != sort) {
+            throw new DeviceValidationException("Cursor was issued for sort " + cursor.sort.getParameter(), HttpStatus.BAD_REQUEST);
+        }
+        return cursor;
+    }
+}
@@ -1,179 +1,504 @@
 package cris.greg.io.service;
 
+import cris.greg.io.config.DeviceProperties;
 import cris.greg.io.exception.DeviceValidationException;
+import cris.greg.io.model.DeviceChange;
+import cris.greg.io.model.DeviceChangeType;
+import cris.greg.io.model.DeviceEvent;
+import cris.greg.io.model.DeviceField;
+import cris.greg.io.model.DevicePage;
+import cris.greg.io.model.DeviceSearch;
+import cris.greg.io.model.DeviceSort;
 import cris.greg.io.model.DeviceState;
+import cris.greg.io.model.DeviceStats;
+import cris.greg.io.model.DeviceUpdate;
 import cris.greg.io.model.Device;
+import cris.greg.io.repository.DeviceEventRepository;
 import cris.greg.io.repository.DeviceRepository;
+import cris.greg.io.repository.DeviceSpecifications;
+import jakarta.persistence.EntityManager;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static cris.greg.io.service.DeviceReadCoalescer.key;
 
 @Service
 @RequiredArgsConstructor
 public class DeviceService {
 
+    // Per-request paths log at DEBUG only; rejected requests are counted by the device.validation.errors meter
     private static final Logger logger = LoggerFactory.getLogger(DeviceService.class);
+    // Problem details shared with ReactiveDeviceService, so both stacks answer with the same bodies
+    static final String DEVICE_NOT_FOUND = "Device not found";
     private final DeviceRepository deviceRepository;
-
-    private final Executor executor = Executors.newFixedThreadPool(10);
+    private final EntityManager entityManager;
+    private final DeviceProperties properties;
+    private final DeviceCache deviceCache;
+    private final DeviceTaskExecutor executor;
+    private final DeviceChangeFeed changeFeed;
+    private final DeviceEventRepository eventRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final DeviceStatsCounter statsCounter;
+    private final DeviceIdGenerator idGenerator;
+    private final DeviceReadCoalescer coalescer;
 
     /**
-     * Saves a device asynchronously.
+     * Saves a device asynchronously, together with its CREATED outbox event.
      *
-     * @param device the device to be saved
+     * @param device the device to be saved; an id sent by the client is replaced
      * @return a CompletableFuture containing the saved device
      * @throws DeviceValidationException if the device state is not allowed
      */
     public CompletableFuture<Device> saveDevice(Device device) {
         if (!isStateAllowed(device.getState())) {
-            logger.error("Invalid state: {}", device.getState());
+            logger.debug("Invalid state: {}", device.getState());
             throw new DeviceValidationException("Invalid state", HttpStatus.BAD_REQUEST);
         }
-        return CompletableFuture.supplyAsync(() -> deviceRepository.save(device), executor);
+        device.setId(idGenerator.next());
+        return executor.supply(() -> {
+            Device savedDevice = transactionTemplate.execute(status -> {
+                Device saved = deviceRepository.save(device);
+                eventRepository.save(DeviceEvent.of(DeviceChangeType.CREATED, saved));
+                return saved;
+            });
+            deviceCache.put(savedDevice);
+            changeFeed.created(savedDevice);
+            coalescer.invalidate();
+            return savedDevice;
+        });
     }
 
     /**
-     * Retrieves all devices asynchronously.
+     * Retrieves one page of devices asynchronously, ordered by creation time.
      *
-     * @return a CompletableFuture containing a list of all devices
-     * @throws DeviceValidationException if no devices are found
+     * @param fields the fields to read, or null for all
+     * @param cursor the continuation token of the previous page, or null for the first page
+     * @param limit the requested page size, or null for the configured default
+     * @return a CompletableFuture containing the page and the token for the next one
+     * @throws DeviceValidationException if the cursor or limit is invalid, or no devices are found and
+     *         device.pagination.empty-not-found is set
      */
-    public CompletableFuture<List<Device>> getAllDevices() {
-        return CompletableFuture.supplyAsync(() -> {
-            List<Device> devices = deviceRepository.findAll();
-            if (devices.isEmpty()) {
-                logger.warn("No devices found");
-                throw new DeviceValidationException("No devices found", HttpStatus.NOT_FOUND);
+    public CompletableFuture<DevicePage> getAllDevices(Set<DeviceField> fields, String cursor, Integer limit) {
+        DeviceCursor after = decodeCursor(cursor);
+        int pageSize = resolvePageSize(limit, properties.getPagination());
+        return supplyRead(key("getAllDevices", fields, cursor, limit), () -> {
+            List<Device> devices = fields != null
+                    ? findPage(fields, null, null, after, pageSize + 1)
+                    : after == null
+                    ? deviceRepository.findAllByOrderByCreationTimeAscIdAsc(Limit.of(pageSize + 1))
+                    : deviceRepository.findAllAfter(after.getCreationTime(), after.getId(), Limit.of(pageSize + 1));
+            if (devices.isEmpty() && after == null && properties.getPagination().isEmptyNotFound()) {
+                logger.debug("No devices found");
+                throw new DeviceValidationException(notFoundMessage(null, null), HttpStatus.NOT_FOUND);
             }
-            return devices;
-        }, executor);
+            return toPage(devices, pageSize, fields);
+        });
     }
 
     /**
-     * Retrieves a device by its ID asynchronously.
+     * Streams every device to the consumer from a server-side cursor, ordered by creation time.
+     * Rows are detached once consumed so memory stays flat regardless of the table size.
+     *
+     * @param fields the fields to read, or null for all
+     * @param consumer receives each device in order
+     */
+    @Transactional(readOnly = true)
+    public void streamAllDevices(Set<DeviceField> fields, Consumer<Device> consumer) {
+        drainRead(() -> fields == null ? deviceRepository.streamAll() : deviceRepository.stream(fields, null, null), consumer);
+    }
+
+    /**
+     * Retrieves a device by its ID asynchronously, answering from the device cache when possible.
      *
      * @param id the UUID of the device
      * @return a CompletableFuture containing the device
      * @throws DeviceValidationException if the device is not found
      */
     public CompletableFuture<Device> getDeviceById(UUID id) {
-        return CompletableFuture.supplyAsync(() -> getExistingDevice(id), executor);
+        return supplyRead(key("getDeviceById", id), () -> deviceCache.get(id, deviceRepository::findById)
+                .orElseThrow(() -> {
+                    logger.debug("Device not found with id: {}", id);
+                    return new DeviceValidationException(DEVICE_NOT_FOUND, HttpStatus.NOT_FOUND);
+                }));
     }
 
     /**
-     * Updates a device asynchronously.
+     * Updates a device asynchronously with a single conditional UPDATE, so the IN_USE rule and the
+     * expected version are checked and applied atomically even under concurrent requests.
      *
      * @param id the UUID of the device to be updated
      * @param updatedDevice the updated device information
+     * @param expectedVersion the version the client last saw, or null to skip the check
+     * @return a CompletableFuture containing the updated device
+     * @throws DeviceValidationException if the state is invalid, or the device is not found, was changed
+     *                                   concurrently or cannot be updated
+     */
+    public CompletableFuture<Device> updateDevice(UUID id, Device updatedDevice, Long expectedVersion) {
+        if (!isStateAllowed(updatedDevice.getState())) {
+            logger.debug("Invalid state: {}", updatedDevice.getState());
+            throw new DeviceValidationException("Invalid state", HttpStatus.BAD_REQUEST);
+        }
+        return executor.supply(() -> {
+            DeviceUpdate update = deviceRepository.updateIfAllowed(id, updatedDevice.getName(), updatedDevice.getBrand(),
+                            updatedDevice.getState().name(), expectedVersion)
+                    .orElseThrow(() -> rejectedMutation(id, expectedVersion, "Device is in use and cannot be updated",
+                            "Cannot update name or brand of a device " + DeviceState.IN_USE.name()));
+            Device savedDevice = update.getDevice();
+            deviceCache.put(savedDevice);
+            changeFeed.updated(savedDevice, update.getPreviousBrand(), update.getPreviousState());
+            coalescer.invalidate();
+            return savedDevice;
+        });
+    }
+
+    /**
+     * Partially updates a device asynchronously. Only the non-null fields of the changes are applied, in a single
+     * conditional UPDATE that keeps the IN_USE rule and the expected version check.
+     *
+     * @param id the UUID of the device to be updated
+     * @param changes the fields to change; null fields keep their current value
+     * @param expectedVersion the version the client last saw, or null to skip the check
      * @return a CompletableFuture containing the updated device
-     * @throws DeviceValidationException if the device is not found or cannot be updated
+     * @throws DeviceValidationException if there is nothing to change, or the device is not found, was changed
+     *                                   concurrently or cannot be updated
      */
-    public CompletableFuture<Device> updateDevice(UUID id, Device updatedDevice) {
-        return CompletableFuture.supplyAsync(() -> {
-            Device existingDevice = getExistingDevice(id);
+    public CompletableFuture<Device> patchDevice(UUID id, Device changes, Long expectedVersion) {
+        if (changes.getName() == null && changes.getBrand() == null && changes.getState() == null) {
+            logger.debug("Empty patch for device {}", id);
+            throw new DeviceValidationException("Patch contains no changes", HttpStatus.BAD_REQUEST);
+        }
+        return executor.supply(() -> {
+            DeviceUpdate update = deviceRepository.patchIfAllowed(id, changes.getName(), changes.getBrand(),
+                            changes.getState() == null ? null : changes.getState().name(), expectedVersion)
+                    .orElseThrow(() -> rejectedMutation(id, expectedVersion, "Device is in use and cannot be updated",
+                            "Cannot update name or brand of a device " + DeviceState.IN_USE.name()));
+            Device savedDevice = update.getDevice();
+            deviceCache.put(savedDevice);
+            changeFeed.updated(savedDevice, update.getPreviousBrand(), update.getPreviousState());
+            coalescer.invalidate();
+            return savedDevice;
+        });
+    }
+
+    /**
+     * Changes the state of a device asynchronously with a single UPDATE. State changes are always allowed,
+     * so only a missing device or an expected version mismatch rejects it.
+     *
+     * @param id the UUID of the device
+     * @param state the new state
+     * @param expectedVersion the version the client last saw, or null to skip the check
+     * @return a CompletableFuture containing the updated device
+     * @throws DeviceValidationException if the state is invalid, or the device is not found or was changed concurrently
+     */
+    public CompletableFuture<Device> updateDeviceState(UUID id, DeviceState state, Long expectedVersion) {
+        if (!isStateAllowed(state)) {
+            logger.debug("Invalid state: {}", state);
+            throw new DeviceValidationException("Invalid state", HttpStatus.BAD_REQUEST);
+        }
+        return executor.supply(() -> {
+            DeviceUpdate update = deviceRepository.updateState(id, state.name(), expectedVersion)
+                    .orElseThrow(() -> rejectedMutation(id, expectedVersion, "Device state cannot be updated",
+                            "Device state cannot be updated"));
+            Device savedDevice = update.getDevice();
+            deviceCache.put(savedDevice);
+            changeFeed.updated(savedDevice, update.getPreviousBrand(), update.getPreviousState());
+            coalescer.invalidate();
+            return savedDevice;
+        });
+    }
+
+    /**
+     * Explains why a conditional mutation matched no row. Only runs on the failure path.
+     *
+     * @param id the UUID of the device
+     * @param expectedVersion the version the client expected, or null
+     * @param logMessage what to log when the IN_USE rule rejected the change
+     * @param inUseMessage the error message when the IN_USE rule rejected the change
+     * @return a 404 exception if the device does not exist, 412 if its version differs, 406 otherwise
+     */
+    private DeviceValidationException rejectedMutation(UUID id, Long expectedVersion, String logMessage, String inUseMessage) {
+        Device current = deviceRepository.findById(id).orElse(null);
+        if (current == null) {
+            logger.debug("Device not found with id: {}", id);
+            deviceCache.evict(id);
+            return new DeviceValidationException(DEVICE_NOT_FOUND, HttpStatus.NOT_FOUND);
+        }
+        if (expectedVersion != null && !expectedVersion.equals(current.getVersion())) {
+            logger.debug("Device {} is at version {}, client expected {}", id, current.getVersion(), expectedVersion);
+            deviceCache.put(current);
+            return new DeviceValidationException("Device was modified by another request", HttpStatus.PRECONDITION_FAILED);
+        }
+        logger.debug(logMessage);
+        return new DeviceValidationException(inUseMessage, HttpStatus.NOT_ACCEPTABLE);
+    }
 
-            if (existingDevice.getState() == DeviceState.IN_USE &&
-                    (!existingDevice.getName().equals(updatedDevice.getName()) ||
-                            !existingDevice.getBrand().equals(updatedDevice.getBrand()))) {
-                logger.error("Device is in use and cannot be updated");
-                throw new DeviceValidationException("Cannot update name or brand of a device " + DeviceState.IN_USE.name(), HttpStatus.NOT_ACCEPTABLE);
+    /**
+     * Retrieves one page of devices by their brand asynchronously.
+     *
+     * @param brand the brand of the devices
+     * @param fields the fields to read, or null for all
+     * @param cursor the continuation token of the previous page, or null for the first page
+     * @param limit the requested page size, or null for the configured default
+     * @return a CompletableFuture containing a page of devices with the specified brand
+     */
+    public CompletableFuture<DevicePage> getDevicesByBrand(String brand, Set<DeviceField> fields, String cursor, Integer limit) {
+        DeviceCursor after = decodeCursor(cursor);
+        int pageSize = resolvePageSize(limit, properties.getPagination());
+        return supplyRead(key("getDevicesByBrand", brand, fields, cursor, limit), () -> {
+            logger.debug("Getting devices by brand {}", brand);
+            List<Device> devices = fields != null
+                    ? findPage(fields, brand, null, after, pageSize + 1)
+                    : after == null
+                    ? deviceRepository.findByBrandOrderByCreationTimeAscIdAsc(brand, Limit.of(pageSize + 1))
+                    : deviceRepository.findByBrandAfter(brand, after.getCreationTime(), after.getId(), Limit.of(pageSize + 1));
+            if (devices.isEmpty() && after == null && properties.getPagination().isEmptyNotFound()) {
+                logger.debug("No devices found for brand {}", brand);
+                throw new DeviceValidationException(notFoundMessage(brand, null), HttpStatus.NOT_FOUND);
             }
+            return toPage(devices, pageSize, fields);
+        });
+    }
 
-            updatedDevice.setId(id);
-            updatedDevice.setCreationTime(existingDevice.getCreationTime());
+    /**
+     * Streams the devices of a brand to the consumer from a server-side cursor.
+     *
+     * @param brand the brand of the devices
+     * @param fields the fields to read, or null for all
+     * @param consumer receives each device in order
+     */
+    @Transactional(readOnly = true)
+    public void streamDevicesByBrand(String brand, Set<DeviceField> fields, Consumer<Device> consumer) {
+        drainRead(() -> fields == null ? deviceRepository.streamByBrand(brand) : deviceRepository.stream(fields, brand, null), consumer);
+    }
 
-            return deviceRepository.save(updatedDevice);
-        }, executor);
+    /**
+     * Retrieves one page of devices by their state asynchronously.
+     *
+     * @param state the state of the devices
+     * @param fields the fields to read, or null for all
+     * @param cursor the continuation token of the previous page, or null for the first page
+     * @param limit the requested page size, or null for the configured default
+     * @return a CompletableFuture containing a page of devices with the specified state
+     */
+    public CompletableFuture<DevicePage> getDevicesByState(DeviceState state, Set<DeviceField> fields, String cursor, Integer limit) {
+        DeviceCursor after = decodeCursor(cursor);
+        int pageSize = resolvePageSize(limit, properties.getPagination());
+        return supplyRead(key("getDevicesByState", state, fields, cursor, limit), () -> {
+            logger.debug("Getting devices by state {}", state);
+            List<Device> devices = fields != null
+                    ? findPage(fields, null, state, after, pageSize + 1)
+                    : after == null
+                    ? deviceRepository.findByStateOrderByCreationTimeAscIdAsc(state, Limit.of(pageSize + 1))
+                    : deviceRepository.findByStateAfter(state, after.getCreationTime(), after.getId(), Limit.of(pageSize + 1));
+            if (devices.isEmpty() && after == null && properties.getPagination().isEmptyNotFound()) {
+                logger.debug("No devices found for state {}", state);
+                throw new DeviceValidationException(notFoundMessage(null, state), HttpStatus.NOT_FOUND);
+            }
+            return toPage(devices, pageSize, fields);
+        });
     }
 
     /**
-     * Retrieves an existing device by its ID.
+     * Streams the devices in a state to the consumer from a server-side cursor.
      *
-     * @param id the UUID of the device
-     * @return the device with the specified ID
-     * @throws DeviceValidationException if the device is not found
+     * @param state the state of the devices
+     * @param fields the fields to read, or null for all
+     * @param consumer receives each device in order
      */
-    private Device getExistingDevice(UUID id) {
-        return deviceRepository.findById(id)
-                .orElseThrow(() -> {
-                    logger.error("Device not found with id: {}", id);
-                    return new DeviceValidationException("Device not found", HttpStatus.NOT_FOUND);
-                });
+    @Transactional(readOnly = true)
+    public void streamDevicesByState(DeviceState state, Set<DeviceField> fields, Consumer<Device> consumer) {
+        drainRead(() -> fields == null ? deviceRepository.streamByState(state) : deviceRepository.stream(fields, null, state), consumer);
     }
 
     /**
-     * Retrieves devices by their brand asynchronously.
+     * Retrieves one page of devices by both brand and state asynchronously.
      *
      * @param brand the brand of the devices
-     * @return a CompletableFuture containing a list of devices with the specified brand
-     */
-    public CompletableFuture<List<Device>> getDevicesByBrand(String brand) {
-        return CompletableFuture.supplyAsync(() -> {
-            logger.info("Getting devices by brand {}", brand);
-            List<Device> devices = deviceRepository.findByBrand(brand);
-            if (devices.isEmpty()) {
-                logger.warn("No devices found for brand {}", brand);
-                throw new DeviceValidationException("No devices found for branc " + brand , HttpStatus.NOT_FOUND);
+     * @param state the state of the devices
+     * @param fields the fields to read, or null for all
+     * @param cursor the continuation token of the previous page, or null for the first page
+     * @param limit the requested page size, or null for the configured default
+     * @return a CompletableFuture containing a page of devices with the specified brand and state
+     */
+    public CompletableFuture<DevicePage> getDevicesByBrandAndState(String brand, DeviceState state, Set<DeviceField> fields, String cursor, Integer limit) {
+        DeviceCursor after = decodeCursor(cursor);
+        int pageSize = resolvePageSize(limit, properties.getPagination());
+        return supplyRead(key("getDevicesByBrandAndState", brand, state, fields, cursor, limit), () -> {
+            logger.debug("Getting devices by brand {} and state {}", brand, state);
+            List<Device> devices = fields != null
+                    ? findPage(fields, brand, state, after, pageSize + 1)
+                    : after == null
+                    ? deviceRepository.findByBrandAndStateOrderByCreationTimeAscIdAsc(brand, state, Limit.of(pageSize + 1))
+                    : deviceRepository.findByBrandAndStateAfter(brand, state, after.getCreationTime(), after.getId(), Limit.of(pageSize + 1));
+            if (devices.isEmpty() && after == null && properties.getPagination().isEmptyNotFound()) {
+                logger.debug("No devices found for brand {} and state {}", brand, state);
+                throw new DeviceValidationException(notFoundMessage(brand, state), HttpStatus.NOT_FOUND);
             }
-            return devices;
-        }, executor);
+            return toPage(devices, pageSize, fields);
+        });
     }
 
     /**
-     * Retrieves devices by their state asynchronously.
+     * Streams the devices of a brand in a given state to the consumer from a server-side cursor.
      *
+     * @param brand the brand of the devices
      * @param state the state of the devices
-     * @return a CompletableFuture containing a list of devices with the specified state
-     */
-    public CompletableFuture<List<Device>> getDevicesByState(DeviceState state) {
-        return CompletableFuture.supplyAsync(() -> {
-            logger.info("Getting devices by state {}", state);
-            List<Device> devices = deviceRepository.findByState(state);
-            if (devices.isEmpty()) {
-                logger.warn("No devices found for state {}", state);
-                throw new DeviceValidationException("No devices found for state " + state , HttpStatus.NOT_FOUND);
+     * @param fields the fields to read, or null for all
+     * @param consumer receives each device in order
+     */
+    @Transactional(readOnly = true)
+    public void streamDevicesByBrandAndState(String brand, DeviceState state, Set<DeviceField> fields, Consumer<Device> consumer) {
+        drainRead(() -> fields == null ? deviceRepository.streamByBrandAndState(brand, state)
+                : deviceRepository.stream(fields, brand, state), consumer);
+    }
+
+    /**
+     * Searches devices asynchronously by any combination of brand, states, name and creation time, in the order
+     * of the search. Unlike the listings, a search without results returns an empty page.
+     *
+     * @param search the criteria and order
+     * @param fields the fields to read, or null for all
+     * @param cursor the continuation token of the previous page of the same search, or null for the first page
+     * @param limit the requested page size, or null for the configured default
+     * @return a CompletableFuture containing the page and the token for the next one
+     * @throws DeviceValidationException if the cursor, limit or creation time range is invalid
+     */
+    public CompletableFuture<DevicePage> searchDevices(DeviceSearch search, Set<DeviceField> fields, String cursor, Integer limit) {
+        checkSearch(search);
+        DeviceSearchCursor after = cursor == null ? null : DeviceSearchCursor.decode(cursor, search.getSort());
+        int pageSize = resolvePageSize(limit, properties.getPagination());
+        return supplyRead(key("searchDevices", search, fields, cursor, limit), () -> {
+            Specification<Device> spec = DeviceSpecifications.matching(search);
+            if (after != null) {
+                spec = spec.and(DeviceSpecifications.after(search.getSort(), after.getKey(), after.getId()));
             }
-            return devices;
-        }, executor);
+            Sort sort = DeviceSpecifications.sortOf(search.getSort());
+            List<Device> devices = fields == null
+                    ? deviceRepository.findBy(spec, query -> query.sortBy(sort).limit(pageSize + 1).all())
+                    : deviceRepository.findPage(fields, spec, sort, pageSize + 1);
+            return toSearchPage(devices, pageSize, search.getSort(), fields);
+        });
     }
 
     /**
-     * Deletes a device by its ID asynchronously.
+     * Deletes a device by its ID asynchronously with a single conditional DELETE.
      *
      * @param id the UUID of the device to be deleted
+     * @param expectedVersion the version the client last saw, or null to skip the check
      * @return a CompletableFuture representing the completion of the deletion
-     * @throws DeviceValidationException if the device is not found or cannot be deleted
-     */
-    public CompletableFuture<Void> deleteDevice(UUID id) {
-        return CompletableFuture.runAsync(() -> {
-            Device device = getExistingDevice(id);
-            if (device.getState() == DeviceState.IN_USE) {
-                logger.error("Device is in use and cannot be deleted");
-                throw new DeviceValidationException("In-use devices cannot be deleted", HttpStatus.NOT_ACCEPTABLE);
-            }
-            deviceRepository.delete(device);
-        }, executor);
+     * @throws DeviceValidationException if the device is not found, was changed concurrently or cannot be deleted
+     */
+    public CompletableFuture<Void> deleteDevice(UUID id, Long expectedVersion) {
+        return executor.supply(() -> {
+            Device deletedDevice = deviceRepository.deleteIfNotInUse(id, expectedVersion)
+                    .orElseThrow(() -> rejectedMutation(id, expectedVersion, "Device is in use and cannot be deleted",
+                            "In-use devices cannot be deleted"));
+            deviceCache.evict(id);
+            changeFeed.deleted(deletedDevice);
+            coalescer.invalidate();
+            return null;
+        });
     }
 
     /**
-     * Deletes all devices asynchronously.
+     * Deletes all devices asynchronously and records a single FLUSHED outbox event.
      *
      * @return a CompletableFuture representing the completion of the deletion
      */
     public CompletableFuture<Void> flush() {
-        return CompletableFuture.supplyAsync(() -> {
+        return executor.supply(() -> {
             logger.info("Flushing all devices");
-            deviceRepository.deleteAll();
+            deviceRepository.deleteAllWithEvent();
+            deviceCache.clear();
+            changeFeed.flushed();
+            coalescer.invalidate();
             return null;
-        }, executor);
+        });
+    }
+
+    /**
+     * Retrieves the relayed outbox events after a seq asynchronously, so consumers can sync incrementally.
+     *
+     * @param after the seq of the last event the consumer applied, 0 for the oldest retained event
+     * @param limit the requested number of events, or null for the configured default page size
+     * @return a CompletableFuture containing the events in seq order; empty when the consumer is up to date
+     * @throws DeviceValidationException if after or limit is invalid, or the events after it are no longer retained
+     */
+    public CompletableFuture<List<DeviceChange>> getEvents(long after, Integer limit) {
+        checkEventsAfter(after);
+        int pageSize = resolvePageSize(limit, properties.getPagination());
+        return executor.supply(() -> {
+            List<DeviceChange> events = new ArrayList<>();
+            for (DeviceEvent event : eventRepository.findBySeqGreaterThanOrderBySeqAsc(after, Limit.of(pageSize))) {
+                events.add(event.toChange());
+            }
+            return checkEventsRetained(after, events);
+        });
+    }
+
+    /**
+     * Counts the devices by brand and state asynchronously, from the in-memory counters once they are loaded.
+     *
+     * @return a CompletableFuture containing the counts
+     */
+    public CompletableFuture<DeviceStats> getStats() {
+        DeviceStats stats = statsCounter.getStats();
+        if (stats != null) {
+            return CompletableFuture.completedFuture(stats);
+        }
+        return executor.supply(() ->
+                DeviceStats.of(DeviceStatsCounter.countsOf(deviceRepository.countByBrandAndState())));
+    }
+
+    /**
+     * @return the detail of a 404 for a listing filtered by the brand and state, either of which may be null
+     */
+    static String notFoundMessage(String brand, DeviceState state) {
+        if (brand != null && state != null) {
+            return "No devices found for brand " + brand + " and state " + state;
+        }
+        if (brand != null) {
+            return "No devices found for brand " + brand;
+        }
+        return state != null ? "No devices found for state " + state : "No devices found";
+    }
+
+    static void checkEventsAfter(long after) {
+        if (after < 0) {
+            throw new DeviceValidationException("After must not be negative", HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * Seqs have no gaps, so a first event past after + 1 means the ones in between were pruned.
+     *
+     * @return the events
+     * @throws DeviceValidationException with 410 if events after the given seq were pruned
+     */
+    static List<DeviceChange> checkEventsRetained(long after, List<DeviceChange> events) {
+        if (after > 0 && !events.isEmpty() && events.get(0).getId() > after + 1) {
+            logger.debug("Events after {} were pruned, oldest retained is {}", after, events.get(0).getId());
+            throw new DeviceValidationException("Events after " + after + " are no longer retained", HttpStatus.GONE);
+        }
+        return events;
     }
 
     /**
@@ -188,4 +513,121 @@ public class DeviceService {
         }
         return false;
     }
-}
\ No newline at end of file
+
+    /**
+     * Resolves the page size requested by the client against the configured bounds.
+     *
+     * @param limit the requested page size, or null
+     * @param pagination the configured bounds
+     * @return the page size to use
+     * @throws DeviceValidationException if the limit is not positive
+     */
+    static int resolvePageSize(Integer limit, DeviceProperties.Pagination pagination) {
+        if (limit == null) {
+            return pagination.getDefaultSize();
+        }
+        if (limit < 1) {
+            throw new DeviceValidationException("Limit must be positive", HttpStatus.BAD_REQUEST);
+        }
+        return Math.min(limit, pagination.getMaxSize());
+    }
+
+    static DeviceCursor decodeCursor(String cursor) {
+        return cursor == null ? null : DeviceCursor.decode(cursor);
+    }
+
+    /**
+     * Trims the extra look-ahead row fetched by the page queries and derives the next cursor from it.
+     *
+     * @param devices up to pageSize + 1 devices
+     * @param pageSize the page size
+     * @return the page
+     */
+    static DevicePage toPage(List<Device> devices, int pageSize) {
+        if (devices.size() <= pageSize) {
+            return new DevicePage(devices, null);
+        }
+        List<Device> page = devices.subList(0, pageSize);
+        return new DevicePage(page, DeviceCursor.after(page.get(pageSize - 1)).encode());
+    }
+
+    /**
+     * Like {@link #toPage(List, int)}, then drops the creation time and id the cursor needed if they were not requested.
+     *
+     * @param fields the requested fields, or null for all
+     */
+    static DevicePage toPage(List<Device> devices, int pageSize, Set<DeviceField> fields) {
+        DevicePage page = toPage(devices, pageSize);
+        if (fields == null || fields.containsAll(EnumSet.of(DeviceField.ID, DeviceField.CREATION_TIME))) {
+            return page;
+        }
+        List<Device> selected = new ArrayList<>(page.getDevices().size());
+        for (Device device : page.getDevices()) {
+            selected.add(DeviceField.select(device, fields));
+        }
+        return new DevicePage(selected, page.getNextCursor());
+    }
+
+    static void checkSearch(DeviceSearch search) {
+        if (search.getCreatedFrom() != null && search.getCreatedTo() != null
+                && !search.getCreatedFrom().isBefore(search.getCreatedTo())) {
+            throw new DeviceValidationException("createdFrom must be before createdTo", HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * Like {@link #toPage(List, int, Set)} for a search: the next cursor follows the order of the search.
+     */
+    static DevicePage toSearchPage(List<Device> devices, int pageSize, DeviceSort sort, Set<DeviceField> fields) {
+        List<Device> page = devices;
+        String nextCursor = null;
+        if (devices.size() > pageSize) {
+            page = devices.subList(0, pageSize);
+            nextCursor = DeviceSearchCursor.after(sort, page.get(pageSize - 1)).encode();
+        }
+        if (fields == null || fields.containsAll(EnumSet.of(DeviceField.ID, sort.getField()))) {
+            return new DevicePage(page, nextCursor);
+        }
+        List<Device> selected = new ArrayList<>(page.size());
+        for (Device device : page) {
+            selected.add(DeviceField.select(device, fields));
+        }
+        return new DevicePage(selected, nextCursor);
+    }
+
+    private List<Device> findPage(Set<DeviceField> fields, String brand, DeviceState state, DeviceCursor after, int limit) {
+        return after == null
+                ? deviceRepository.findPage(fields, brand, state, null, null, limit)
+                : deviceRepository.findPage(fields, brand, state, after.getCreationTime(), after.getId(), limit);
+    }
+
+    /**
+     * Runs reads on the executor, on a replica unless the calling request asked to read its own writes, and
+     * shares them with identical reads running at the same time.
+     */
+    private <T> CompletableFuture<T> supplyRead(List<Object> key, Supplier<T> read) {
+        return coalescer.execute(key, () -> executor.supply(ReplicaReads.route(read)));
+    }
+
+    /**
+     * Like {@link #drain(Stream, Consumer)} for a stream opened on a replica, unless the request asked to read
+     * its own writes.
+     */
+    private void drainRead(Supplier<Stream<Device>> devices, Consumer<Device> consumer) {
+        ReplicaReads.route(() -> {
+            drain(devices.get(), consumer);
+            return null;
+        }).get();
+    }
+
+    private void drain(Stream<Device> devices, Consumer<Device> consumer) {
+        try (Stream<Device> rows = devices) {
+            rows.forEach(device -> {
+                consumer.accept(device);
+                if (entityManager.contains(device)) {
+                    entityManager.detach(device);
+                }
+            });
+        }
+    }
+}
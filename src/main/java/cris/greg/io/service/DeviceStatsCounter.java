@@ -0,0 +1,199 @@
+package cris.greg.io.service;
+
+import cris.greg.io.config.DeviceProperties;
+import cris.greg.io.model.DeviceEvent;
+import cris.greg.io.model.DeviceState;
+import cris.greg.io.model.DeviceStats;
+import cris.greg.io.repository.DeviceEventRepository;
+import cris.greg.io.repository.DeviceRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Limit;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory device counts by brand and state, enabled with {@code device.stats.in-memory}. The counts are loaded
+ * once with a GROUP BY and then kept up to date from the relayed outbox events, so they include the changes
+ * of every instance and lag them by about the relay and {@code device.stats.poll-interval} intervals. A gap in
+ * the seqs, left by pruning, reloads them.
+ */
+@Component
+@ManagedResource(objectName = "cris.greg.io:type=DeviceStatsCounter", description = "In-memory device counts")
+public class DeviceStatsCounter {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeviceStatsCounter.class);
+
+    private final DeviceRepository deviceRepository;
+    private final DeviceEventRepository eventRepository;
+    private final TransactionTemplate snapshotTemplate;
+    private final DeviceProperties.Stats settings;
+    private final int batchSize;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "device-stats");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Only touched on the scheduler thread
+    private final Map<String, Map<DeviceState, Long>> counts = new HashMap<>();
+    private final Set<Long> counted = new HashSet<>();
+    private final AtomicLong lastSeq = new AtomicLong();
+    private volatile boolean reloadRequested;
+    private volatile DeviceStats stats;
+
+    public DeviceStatsCounter(DeviceRepository deviceRepository, DeviceEventRepository eventRepository,
+                              PlatformTransactionManager transactionManager, DeviceProperties properties) {
+        this.deviceRepository = deviceRepository;
+        this.eventRepository = eventRepository;
+        this.snapshotTemplate = new TransactionTemplate(transactionManager);
+        this.snapshotTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.snapshotTemplate.setReadOnly(true);
+        this.settings = properties.getStats();
+        this.batchSize = properties.getOutbox().getBatchSize();
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!settings.isInMemory()) {
+            return;
+        }
+        scheduler.scheduleWithFixedDelay(this::refresh, 0, settings.getPollInterval().toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        scheduler.shutdown();
+        scheduler.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @return the latest counts, or null until they are first loaded or when in-memory counting is disabled
+     */
+    public DeviceStats getStats() {
+        return stats;
+    }
+
+    @ManagedAttribute(description = "Seq of the latest outbox event counted")
+    public long getLastSeq() {
+        return lastSeq.get();
+    }
+
+    @ManagedOperation(description = "Reloads the counts from the devices table")
+    public void reload() {
+        reloadRequested = true;
+    }
+
+    /**
+     * Loads the counts if needed, then applies the events relayed since. Runs on the scheduler thread; failures
+     * are retried on the next run.
+     */
+    public void refresh() {
+        try {
+            if (stats == null || reloadRequested) {
+                reloadRequested = false;
+                load();
+            }
+            apply();
+        } catch (RuntimeException e) {
+            logger.warn("Updating device stats failed, retrying in {}", settings.getPollInterval(), e);
+        }
+    }
+
+    /**
+     * Reads the counts, the last relayed seq and the events not relayed yet from the same snapshot. Those
+     * events are already in the counts, so they are skipped when they are relayed.
+     */
+    void load() {
+        snapshotTemplate.executeWithoutResult(status -> {
+            counts.clear();
+            counts.putAll(countsOf(deviceRepository.countByBrandAndState()));
+            lastSeq.set(eventRepository.findLastSeq());
+            counted.clear();
+            counted.addAll(eventRepository.findUnrelayedIds());
+        });
+        stats = DeviceStats.of(counts);
+        logger.info("Loaded device stats at seq {}: {} devices", lastSeq.get(), stats.getTotal());
+    }
+
+    /**
+     * Applies the relayed events after the last counted seq, in seq order.
+     */
+    void apply() {
+        List<DeviceEvent> events;
+        do {
+            events = eventRepository.findBySeqGreaterThanOrderBySeqAsc(lastSeq.get(), Limit.of(batchSize));
+            if (events.isEmpty()) {
+                return;
+            }
+            if (events.get(0).getSeq() != lastSeq.get() + 1) {
+                logger.info("Device events after seq {} were pruned, reloading device stats", lastSeq.get());
+                load();
+                return;
+            }
+            for (DeviceEvent event : events) {
+                if (!counted.remove(event.getId())) {
+                    count(event);
+                }
+            }
+            lastSeq.set(events.get(events.size() - 1).getSeq());
+            stats = DeviceStats.of(counts);
+        } while (events.size() == batchSize && !scheduler.isShutdown());
+    }
+
+    static Map<String, Map<DeviceState, Long>> countsOf(List<DeviceRepository.BrandStateCount> rows) {
+        Map<String, Map<DeviceState, Long>> counts = new HashMap<>();
+        for (DeviceRepository.BrandStateCount row : rows) {
+            counts.computeIfAbsent(row.getBrand(), brand -> new EnumMap<>(DeviceState.class)).put(row.getState(), row.getCount());
+        }
+        return counts;
+    }
+
+    private void count(DeviceEvent event) {
+        switch (event.getType()) {
+            case CREATED:
+                add(event.getBrand(), event.getState(), 1);
+                break;
+            case UPDATED:
+                add(event.getPreviousBrand(), event.getPreviousState(), -1);
+                add(event.getBrand(), event.getState(), 1);
+                break;
+            case DELETED:
+                add(event.getBrand(), event.getState(), -1);
+                break;
+            case FLUSHED:
+                counts.clear();
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void add(String brand, DeviceState state, long delta) {
+        Map<DeviceState, Long> states = counts.computeIfAbsent(brand, key -> new EnumMap<>(DeviceState.class));
+        if (states.merge(state, delta, Long::sum) == 0) {
+            states.remove(state);
+            if (states.isEmpty()) {
+                counts.remove(brand);
+            }
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package cris.greg.io.service;
+
+import cris.greg.io.config.DeviceProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Executor for the blocking repository calls of {@link DeviceService}.
+ * At most maxConcurrency tasks run at once (one semaphore permit each) and at most queueCapacity
+ * tasks may wait for a permit; anything beyond that is rejected immediately so callers get
+ * back-pressure instead of an unbounded queue.
+ */
+@ManagedResource(objectName = "cris.greg.io:type=DeviceTaskExecutor", description = "Device service executor")
+public class DeviceTaskExecutor implements Executor, DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeviceTaskExecutor.class);
+
+    private final ExecutorService delegate;
+    private final Semaphore permits;
+    private final int queueCapacity;
+    private final Duration shutdownTimeout;
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final LongAccumulator maxWaitNanos = new LongAccumulator(Math::max, 0);
+
+    DeviceTaskExecutor(ExecutorService delegate, int maxConcurrency, int queueCapacity, Duration shutdownTimeout) {
+        this.delegate = delegate;
+        this.permits = new Semaphore(maxConcurrency);
+        this.queueCapacity = queueCapacity;
+        this.shutdownTimeout = shutdownTimeout;
+    }
+
+    /**
+     * Creates the executor described by the {@code device.executor} settings.
+     * Virtual threads need Java 21 or later; on older runtimes a platform pool is used instead.
+     *
+     * @param settings the executor settings
+     * @return the executor
+     */
+    public static DeviceTaskExecutor create(DeviceProperties.Executor settings) {
+        DeviceProperties.ExecutorType type = settings.getType();
+        ExecutorService delegate = null;
+        if (type == DeviceProperties.ExecutorType.VIRTUAL) {
+            delegate = newVirtualThreadPerTaskExecutor();
+        }
+        if (delegate == null) {
+            type = DeviceProperties.ExecutorType.PLATFORM;
+            delegate = newPlatformPool(settings.getMaxConcurrency());
+        }
+        logger.info("Device executor: {} threads with max concurrency {} and queue capacity {}",
+                type, settings.getMaxConcurrency(), settings.getQueueCapacity());
+        return new DeviceTaskExecutor(delegate, settings.getMaxConcurrency(), settings.getQueueCapacity(),
+                settings.getShutdownTimeout());
+    }
+
+    /**
+     * Runs the task once a concurrency permit is free.
+     *
+     * @param task the task to run
+     * @throws RejectedExecutionException if queueCapacity tasks are already waiting, or the executor is shut down
+     */
+    @Override
+    public void execute(Runnable task) {
+        if (queued.incrementAndGet() > queueCapacity) {
+            queued.decrementAndGet();
+            rejected.increment();
+            throw new RejectedExecutionException("Device executor queue is full");
+        }
+        long submittedAt = System.nanoTime();
+        try {
+            delegate.execute(() -> run(task, submittedAt));
+        } catch (RejectedExecutionException e) {
+            queued.decrementAndGet();
+            rejected.increment();
+            throw e;
+        }
+    }
+
+    /**
+     * Runs the task like {@code CompletableFuture.supplyAsync(task, this)}, but fails the future with the exception
+     * the task threw. supplyAsync wraps it in a CompletionException, which fills in a stack trace of its own on
+     * every expected 404 or 406 even though DeviceValidationException skips it.
+     *
+     * @param task the task to run
+     * @return a future of the task's result
+     * @throws RejectedExecutionException if queueCapacity tasks are already waiting, or the executor is shut down
+     */
+    public <T> CompletableFuture<T> supply(Supplier<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        execute(() -> {
+            try {
+                future.complete(task.get());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    private void run(Runnable task, long submittedAt) {
+        permits.acquireUninterruptibly();
+        queued.decrementAndGet();
+        long waitNanos = System.nanoTime() - submittedAt;
+        totalWaitNanos.add(waitNanos);
+        maxWaitNanos.accumulate(waitNanos);
+        active.incrementAndGet();
+        try {
+            task.run();
+        } finally {
+            active.decrementAndGet();
+            completed.increment();
+            permits.release();
+        }
+    }
+
+    /**
+     * Stops accepting tasks and waits up to shutdownTimeout for the submitted ones to finish.
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        delegate.shutdown();
+        if (!delegate.awaitTermination(shutdownTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+            logger.warn("Device executor did not terminate within {}, interrupting remaining tasks", shutdownTimeout);
+            delegate.shutdownNow();
+        }
+    }
+
+    @ManagedAttribute(description = "Tasks waiting for a concurrency permit")
+    public int getQueueDepth() {
+        return queued.get();
+    }
+
+    @ManagedAttribute(description = "Tasks currently running")
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    @ManagedAttribute(description = "Tasks finished since startup")
+    public long getCompletedCount() {
+        return completed.sum();
+    }
+
+    @ManagedAttribute(description = "Tasks rejected because the queue was full")
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    @ManagedAttribute(description = "Average time a task waited before running, in milliseconds")
+    public double getAverageWaitMillis() {
+        long count = completed.sum();
+        return count == 0 ? 0 : totalWaitNanos.sum() / (count * 1_000_000.0);
+    }
+
+    @ManagedAttribute(description = "Longest time a task waited before running, in milliseconds")
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1_000_000.0;
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            logger.warn("Virtual threads are not available on Java {}, using a platform thread pool",
+                    System.getProperty("java.version"));
+            return null;
+        }
+    }
+
+    private static ExecutorService newPlatformPool(int threads) {
+        AtomicLong counter = new AtomicLong();
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable, "device-executor-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        // The queue is unbounded here because execute() already caps the number of waiting tasks
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), factory);
+    }
+}
@@ -0,0 +1,57 @@
+package cris.greg.io.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import cris.greg.io.model.DeviceChange;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Appends relayed events to an NDJSON file, one JSON object per line, for local testing with {@code tail -f}.
+ */
+public class FileDeviceEventSink implements DeviceEventSink, DisposableBean {
+
+    private final Path file;
+    private final ObjectMapper objectMapper;
+    private Writer writer;
+
+    public FileDeviceEventSink(Path file, ObjectMapper objectMapper) {
+        this.file = file;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public synchronized void publish(List<DeviceChange> events) throws IOException {
+        if (writer == null) {
+            writer = new BufferedWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND));
+        }
+        try {
+            for (DeviceChange event : events) {
+                writer.write(objectMapper.writeValueAsString(event));
+                writer.write('\n');
+            }
+            writer.flush();
+        } catch (IOException e) {
+            // Reopen on the next batch rather than writing after a partial line
+            destroy();
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized void destroy() throws IOException {
+        if (writer != null) {
+            Writer open = writer;
+            writer = null;
+            open.close();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package cris.greg.io.service;
+
+import cris.greg.io.model.DeviceChange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Publishes each relayed event as a Spring application event, so local listeners can consume the outbox with
+ * {@code @EventListener void on(DeviceChange change)}. Listeners run on the relay thread. Without any listener the
+ * relayed events can still be seen: each batch is logged at DEBUG, and the latest ones are kept for
+ * {@link #getRecent()}.
+ */
+public class InProcessDeviceEventSink implements DeviceEventSink {
+
+    private static final Logger logger = LoggerFactory.getLogger(InProcessDeviceEventSink.class);
+    private static final int RECENT = 1000;
+
+    private final ApplicationEventPublisher publisher;
+    private final Deque<DeviceChange> recent = new ArrayDeque<>();
+
+    public InProcessDeviceEventSink(ApplicationEventPublisher publisher) {
+        this.publisher = publisher;
+    }
+
+    @Override
+    public void publish(List<DeviceChange> events) {
+        events.forEach(publisher::publishEvent);
+        synchronized (recent) {
+            for (DeviceChange event : events) {
+                if (recent.size() == RECENT) {
+                    recent.removeFirst();
+                }
+                recent.addLast(event);
+            }
+        }
+        if (logger.isDebugEnabled() && !events.isEmpty()) {
+            logger.debug("Relayed {} device events, seq {} to {}", events.size(), events.get(0).getId(),
+                    events.get(events.size() - 1).getId());
+        }
+    }
+
+    /**
+     * @return the latest relayed events, at most 1000, oldest first
+     */
+    public List<DeviceChange> getRecent() {
+        synchronized (recent) {
+            return new ArrayList<>(recent);
+        }
+    }
+}
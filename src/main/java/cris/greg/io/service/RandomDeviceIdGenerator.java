@@ -0,0 +1,15 @@
+package cris.greg.io.service;
+
+import java.util.UUID;
+
+/**
+ * Random version 4 ids, as devices had before ids became time-ordered. New ids land anywhere in the primary-key
+ * index, so under a high insert rate they split pages all over it.
+ */
+public class RandomDeviceIdGenerator implements DeviceIdGenerator {
+
+    @Override
+    public UUID next() {
+        return UUID.randomUUID();
+    }
+}
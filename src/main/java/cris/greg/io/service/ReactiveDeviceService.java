@@ -0,0 +1,361 @@
+package cris.greg.io.service;
+
+import cris.greg.io.config.DeviceProperties;
+import cris.greg.io.exception.DeviceValidationException;
+import cris.greg.io.model.Device;
+import cris.greg.io.model.DeviceChange;
+import cris.greg.io.model.DeviceField;
+import cris.greg.io.model.DevicePage;
+import cris.greg.io.model.DeviceSearch;
+import cris.greg.io.model.DeviceState;
+import cris.greg.io.model.DeviceStats;
+import cris.greg.io.model.DeviceUpdate;
+import cris.greg.io.repository.ReactiveDeviceRepository;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.concurrent.Queues;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+import static cris.greg.io.service.DeviceReadCoalescer.key;
+
+/**
+ * Non-blocking counterpart of {@link DeviceService} for the reactive profile. It applies the same rules
+ * with the same errors, but runs on R2DBC, so no thread waits on the database and no executor is involved.
+ */
+@Service
+@Profile("reactive")
+@RequiredArgsConstructor
+public class ReactiveDeviceService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveDeviceService.class);
+    private final ReactiveDeviceRepository deviceRepository;
+    private final DeviceProperties properties;
+    private final DeviceCache deviceCache;
+    private final DeviceChangeFeed changeFeed;
+    private final DeviceStatsCounter statsCounter;
+    private final DeviceIdGenerator idGenerator;
+    private final DeviceReadCoalescer coalescer;
+
+    /**
+     * Saves a device.
+     *
+     * @param device the device to be saved; an id sent by the client is replaced
+     * @return a Mono emitting the saved device
+     * @throws DeviceValidationException (as an error signal) if the device state is missing
+     */
+    public Mono<Device> saveDevice(Device device) {
+        if (device.getState() == null) {
+            logger.debug("Invalid state: {}", device.getState());
+            return Mono.error(new DeviceValidationException("Invalid state", HttpStatus.BAD_REQUEST));
+        }
+        device.setId(idGenerator.next());
+        return deviceRepository.insert(device).doOnNext(savedDevice -> {
+            deviceCache.put(savedDevice);
+            changeFeed.created(savedDevice);
+            coalescer.invalidate();
+        });
+    }
+
+    /**
+     * Retrieves one page of devices, optionally filtered by brand and state, ordered by creation time.
+     *
+     * @param brand the brand of the devices, or null for any
+     * @param state the state of the devices, or null for any
+     * @param fields the fields to read, or null for all
+     * @param cursor the continuation token of the previous page, or null for the first page
+     * @param limit the requested page size, or null for the configured default
+     * @return a Mono emitting the page and the token for the next one
+     * @throws DeviceValidationException (as an error signal) if the cursor or limit is invalid, or no devices are found and
+     *         device.pagination.empty-not-found is set
+     */
+    public Mono<DevicePage> getDevices(String brand, DeviceState state, Set<DeviceField> fields, String cursor, Integer limit) {
+        return Mono.defer(() -> {
+            DeviceCursor after = DeviceService.decodeCursor(cursor);
+            int pageSize = DeviceService.resolvePageSize(limit, properties.getPagination());
+            return coalesced(key("getDevices", brand, state, fields, cursor, limit), deviceRepository.findPage(fields, brand,
+                            state, after == null ? null : after.getCreationTime(), after == null ? null : after.getId(), pageSize + 1)
+                    .collectList()
+                    .flatMap(devices -> {
+                        if (devices.isEmpty() && after == null && properties.getPagination().isEmptyNotFound()) {
+                            logger.debug("No devices found for brand {} and state {}", brand, state);
+                            return Mono.error(new DeviceValidationException(DeviceService.notFoundMessage(brand, state),
+                                    HttpStatus.NOT_FOUND));
+                        }
+                        return Mono.just(DeviceService.toPage(devices, pageSize, fields));
+                    }));
+        });
+    }
+
+    /**
+     * Searches devices by any combination of brand, states, name and creation time, in the order of the search.
+     * A search without results emits an empty page.
+     *
+     * @param search the criteria and order
+     * @param fields the fields to read, or null for all
+     * @param cursor the continuation token of the previous page of the same search, or null for the first page
+     * @param limit the requested page size, or null for the configured default
+     * @return a Mono emitting the page and the token for the next one
+     * @throws DeviceValidationException (as an error signal) if the cursor, limit or creation time range is invalid
+     */
+    public Mono<DevicePage> searchDevices(DeviceSearch search, Set<DeviceField> fields, String cursor, Integer limit) {
+        return Mono.defer(() -> {
+            DeviceService.checkSearch(search);
+            DeviceSearchCursor after = cursor == null ? null : DeviceSearchCursor.decode(cursor, search.getSort());
+            int pageSize = DeviceService.resolvePageSize(limit, properties.getPagination());
+            return coalesced(key("searchDevices", search, fields, cursor, limit), deviceRepository.search(search, fields,
+                            after == null ? null : after.getKey(), after == null ? null : after.getId(), pageSize + 1)
+                    .collectList()
+                    .map(devices -> DeviceService.toSearchPage(devices, pageSize, search.getSort(), fields)));
+        });
+    }
+
+    /**
+     * Streams the devices matching the optional brand and state, ordered by creation time. Rows are read
+     * from the database only as fast as the subscriber requests them.
+     *
+     * @param brand the brand of the devices, or null for any
+     * @param state the state of the devices, or null for any
+     * @param fields the fields to read, or null for all
+     * @return a Flux of the devices
+     */
+    public Flux<Device> streamDevices(String brand, DeviceState state, Set<DeviceField> fields) {
+        return deviceRepository.stream(fields, brand, state);
+    }
+
+    /**
+     * Retrieves a device by its ID, answering from the device cache when possible.
+     *
+     * @param id the UUID of the device
+     * @return a Mono emitting the device
+     * @throws DeviceValidationException (as an error signal) if the device is not found
+     */
+    public Mono<Device> getDeviceById(UUID id) {
+        // The cached lookup is shared with other requests, so one that goes away must not cancel it
+        Mono<Optional<Device>> lookup = Mono.fromFuture(() -> deviceCache.getAsync(id, missing ->
+                coalesced(key("getDeviceById", missing), deviceRepository.findById(missing)
+                        .map(Optional::of)
+                        .defaultIfEmpty(Optional.empty())).toFuture()), true);
+        return lookup.flatMap(device -> device.map(Mono::just).orElseGet(() -> {
+            logger.debug("Device not found with id: {}", id);
+            return Mono.error(new DeviceValidationException(DeviceService.DEVICE_NOT_FOUND, HttpStatus.NOT_FOUND));
+        }));
+    }
+
+    /**
+     * Updates a device with a single conditional UPDATE, like {@link DeviceService#updateDevice}.
+     *
+     * @param id the UUID of the device to be updated
+     * @param updatedDevice the updated device information
+     * @param expectedVersion the version the client last saw, or null to skip the check
+     * @return a Mono emitting the updated device
+     * @throws DeviceValidationException (as an error signal) if the state is invalid, or the device is not found,
+     *                                   was changed concurrently or cannot be updated
+     */
+    public Mono<Device> updateDevice(UUID id, Device updatedDevice, Long expectedVersion) {
+        if (updatedDevice.getState() == null) {
+            logger.debug("Invalid state: {}", updatedDevice.getState());
+            return Mono.error(new DeviceValidationException("Invalid state", HttpStatus.BAD_REQUEST));
+        }
+        return deviceRepository.updateIfAllowed(id, updatedDevice.getName(), updatedDevice.getBrand(),
+                        updatedDevice.getState().name(), expectedVersion)
+                .switchIfEmpty(rejectedMutation(id, expectedVersion, "Device is in use and cannot be updated",
+                        "Cannot update name or brand of a device " + DeviceState.IN_USE.name()))
+                .doOnNext(this::updated)
+                .map(DeviceUpdate::getDevice);
+    }
+
+    /**
+     * Applies the non-null fields of the changes with a single conditional UPDATE, like {@link DeviceService#patchDevice}.
+     *
+     * @param id the UUID of the device to be patched
+     * @param changes the name, brand and state to change; null fields are kept
+     * @param expectedVersion the version the client last saw, or null to skip the check
+     * @return a Mono emitting the updated device
+     * @throws DeviceValidationException (as an error signal) if the patch is empty, or the device is not found,
+     *                                   was changed concurrently or cannot be updated
+     */
+    public Mono<Device> patchDevice(UUID id, Device changes, Long expectedVersion) {
+        if (changes.getName() == null && changes.getBrand() == null && changes.getState() == null) {
+            logger.debug("Empty patch for device {}", id);
+            return Mono.error(new DeviceValidationException("Patch contains no changes", HttpStatus.BAD_REQUEST));
+        }
+        return deviceRepository.patchIfAllowed(id, changes.getName(), changes.getBrand(),
+                        changes.getState() == null ? null : changes.getState().name(), expectedVersion)
+                .switchIfEmpty(rejectedMutation(id, expectedVersion, "Device is in use and cannot be updated",
+                        "Cannot update name or brand of a device " + DeviceState.IN_USE.name()))
+                .doOnNext(this::updated)
+                .map(DeviceUpdate::getDevice);
+    }
+
+    /**
+     * Changes only the state of a device with a single UPDATE.
+     *
+     * @param id the UUID of the device
+     * @param state the new state
+     * @param expectedVersion the version the client last saw, or null to skip the check
+     * @return a Mono emitting the updated device
+     * @throws DeviceValidationException (as an error signal) if the state is invalid, or the device is not found
+     *                                   or was changed concurrently
+     */
+    public Mono<Device> updateDeviceState(UUID id, DeviceState state, Long expectedVersion) {
+        if (state == null) {
+            logger.debug("Invalid state: {}", state);
+            return Mono.error(new DeviceValidationException("Invalid state", HttpStatus.BAD_REQUEST));
+        }
+        return deviceRepository.updateState(id, state.name(), expectedVersion)
+                .switchIfEmpty(rejectedMutation(id, expectedVersion, "Device state cannot be updated",
+                        "Device state cannot be updated"))
+                .doOnNext(this::updated)
+                .map(DeviceUpdate::getDevice);
+    }
+
+    /**
+     * Deletes a device by its ID with a single conditional DELETE.
+     *
+     * @param id the UUID of the device to be deleted
+     * @param expectedVersion the version the client last saw, or null to skip the check
+     * @return a Mono completing once the device is deleted
+     * @throws DeviceValidationException (as an error signal) if the device is not found, was changed concurrently
+     *                                   or cannot be deleted
+     */
+    public Mono<Void> deleteDevice(UUID id, Long expectedVersion) {
+        return deviceRepository.deleteIfNotInUse(id, expectedVersion)
+                .switchIfEmpty(rejectedMutation(id, expectedVersion, "Device is in use and cannot be deleted",
+                        "In-use devices cannot be deleted"))
+                .doOnNext(deletedDevice -> {
+                    deviceCache.evict(id);
+                    changeFeed.deleted(deletedDevice);
+                    coalescer.invalidate();
+                })
+                .then();
+    }
+
+    /**
+     * Deletes all devices.
+     *
+     * @return a Mono completing once every device is deleted
+     */
+    public Mono<Void> flush() {
+        logger.info("Flushing all devices");
+        return deviceRepository.deleteAll().doOnNext(deleted -> {
+            deviceCache.clear();
+            changeFeed.flushed();
+            coalescer.invalidate();
+        }).then();
+    }
+
+    /**
+     * Retrieves the relayed outbox events after a seq, like {@link DeviceService#getEvents}.
+     *
+     * @param after the seq of the last event the consumer applied, 0 for the oldest retained event
+     * @param limit the requested number of events, or null for the configured default page size
+     * @return a Mono emitting the events in seq order; empty when the consumer is up to date
+     * @throws DeviceValidationException (as an error signal) if after or limit is invalid, or the events after
+     *                                   it are no longer retained
+     */
+    public Mono<List<DeviceChange>> getEvents(long after, Integer limit) {
+        return Mono.defer(() -> {
+            DeviceService.checkEventsAfter(after);
+            int pageSize = DeviceService.resolvePageSize(limit, properties.getPagination());
+            return deviceRepository.findEventsAfter(after, pageSize)
+                    .collectList()
+                    .map(events -> DeviceService.checkEventsRetained(after, events));
+        });
+    }
+
+    /**
+     * Counts the devices by brand and state, from the in-memory counters once they are loaded.
+     *
+     * @return a Mono emitting the counts
+     */
+    public Mono<DeviceStats> getStats() {
+        return Mono.defer(() -> {
+            DeviceStats stats = statsCounter.getStats();
+            return stats != null ? Mono.just(stats) : deviceRepository.countByBrandAndState();
+        });
+    }
+
+    /**
+     * Streams the device changes matching the optional brand and state, starting with the buffered ones after
+     * lastEventId. Up to device.changes.subscriber-queue changes wait for a slow client; past that the stream
+     * completes and the client resumes with its Last-Event-ID.
+     *
+     * @param brand the brand of the devices, or null for any
+     * @param state the state of the devices, or null for any
+     * @param lastEventId the id of the last change the client received, or null to start from now
+     * @return a Flux of the changes
+     */
+    public Flux<DeviceChange> streamChanges(String brand, DeviceState state, Long lastEventId) {
+        return Flux.defer(() -> {
+            Sinks.Many<DeviceChange> sink = Sinks.many().unicast()
+                    .onBackpressureBuffer(Queues.<DeviceChange>get(properties.getChanges().getSubscriberQueue()).get());
+            DeviceChangeFeed.Subscription subscription = changeFeed.subscribe(brand, state, lastEventId,
+                    new DeviceChangeFeed.Listener() {
+                        @Override
+                        public boolean offer(DeviceChange change) {
+                            return sink.tryEmitNext(change).isSuccess();
+                        }
+
+                        @Override
+                        public void overflowed() {
+                            sink.tryEmitComplete();
+                        }
+                    });
+            return Flux.fromIterable(subscription.getBacklog())
+                    .concatWith(sink.asFlux())
+                    .doFinally(signal -> changeFeed.unsubscribe(subscription));
+        });
+    }
+
+    /**
+     * Explains why a conditional mutation matched no row, like {@link DeviceService}. Only subscribed on the failure path.
+     *
+     * @return a Mono failing with 404 if the device does not exist, 412 if its version differs, 406 otherwise
+     */
+    private <T> Mono<T> rejectedMutation(UUID id, Long expectedVersion, String logMessage, String inUseMessage) {
+        return deviceRepository.findById(id)
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .flatMap(current -> {
+                    if (!current.isPresent()) {
+                        logger.debug("Device not found with id: {}", id);
+                        deviceCache.evict(id);
+                        return Mono.error(new DeviceValidationException(DeviceService.DEVICE_NOT_FOUND,
+                                HttpStatus.NOT_FOUND));
+                    }
+                    Device device = current.get();
+                    if (expectedVersion != null && !expectedVersion.equals(device.getVersion())) {
+                        logger.debug("Device {} is at version {}, client expected {}", id, device.getVersion(), expectedVersion);
+                        deviceCache.put(device);
+                        return Mono.error(new DeviceValidationException("Device was modified by another request",
+                                HttpStatus.PRECONDITION_FAILED));
+                    }
+                    logger.debug(logMessage);
+                    return Mono.error(new DeviceValidationException(inUseMessage, HttpStatus.NOT_ACCEPTABLE));
+                });
+    }
+
+    private void updated(DeviceUpdate update) {
+        deviceCache.put(update.getDevice());
+        changeFeed.updated(update.getDevice(), update.getPreviousBrand(), update.getPreviousState());
+        coalescer.invalidate();
+    }
+
+    /**
+     * Shares the read with identical reads running at the same time, as {@link DeviceService} does.
+     */
+    private <T> Mono<T> coalesced(List<Object> key, Mono<T> read) {
+        return Mono.fromFuture(() -> coalescer.execute(key, read::toFuture));
+    }
+}
@@ -0,0 +1,98 @@
+package cris.greg.io.service;
+
+import java.util.function.Supplier;
+
+/**
+ * Which database the reads of the current thread go to. Only the reads {@link DeviceService} wraps with
+ * {@link #route(Supplier)} may use a replica; writes, the outbox relay and everything else stay on the primary.
+ * A request that must see its own writes sets {@link #setPrimaryRequired(boolean)} on its thread, and the
+ * routing captured there follows the read onto the executor.
+ */
+public final class ReplicaReads {
+
+    private static final ThreadLocal<Boolean> primaryRequired = new ThreadLocal<>();
+    private static final ThreadLocal<Boolean> onReplica = new ThreadLocal<>();
+
+    private ReplicaReads() {
+    }
+
+    /**
+     * @return true while the current thread runs reads that may go to a replica
+     */
+    public static boolean isActive() {
+        return onReplica.get() != null;
+    }
+
+    /**
+     * @param required true to keep the reads of the current thread on the primary, false to allow replicas again
+     */
+    public static void setPrimaryRequired(boolean required) {
+        if (required) {
+            primaryRequired.set(Boolean.TRUE);
+        } else {
+            primaryRequired.remove();
+        }
+    }
+
+    public static boolean isPrimaryRequired() {
+        return primaryRequired.get() != null;
+    }
+
+    /**
+     * Captures the routing of the calling thread, so the reads can run on another one.
+     *
+     * @param reads the reads
+     * @return the reads, running on a replica unless the calling thread requires the primary
+     */
+    public static <T> Supplier<T> route(Supplier<T> reads) {
+        if (isPrimaryRequired()) {
+            return reads;
+        }
+        return () -> {
+            onReplica.set(Boolean.TRUE);
+            try {
+                return reads.get();
+            } finally {
+                onReplica.remove();
+            }
+        };
+    }
+
+    /**
+     * Runs reads on the primary even inside {@link #route(Supplier)}, for results that outlive the request.
+     *
+     * @param reads the reads
+     * @return their result
+     */
+    public static <T> T onPrimary(Supplier<T> reads) {
+        if (!isActive()) {
+            return reads.get();
+        }
+        onReplica.remove();
+        try {
+            return reads.get();
+        } finally {
+            onReplica.set(Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Carries the primary requirement of the calling thread over to a task run on another thread.
+     *
+     * @param task the task
+     * @return the task, requiring the primary if the calling thread does
+     */
+    public static Runnable propagate(Runnable task) {
+        if (!isPrimaryRequired()) {
+            return task;
+        }
+        return () -> {
+            setPrimaryRequired(true);
+            try {
+                task.run();
+            } finally {
+                setPrimaryRequired(false);
+            }
+        };
+    }
+}
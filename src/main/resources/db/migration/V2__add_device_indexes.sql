@@ -0,0 +1,8 @@
+-- Every listing is keyset-paginated on (creation_time, id), so each index ends with those columns:
+-- a filtered page is then a single index range scan with no sort step.
+CREATE INDEX idx_devices_creation_time_id ON devices (creation_time, id);
+
+-- The leading brand / state columns also serve plain equality lookups on either filter.
+CREATE INDEX idx_devices_brand_creation_time_id ON devices (brand, creation_time, id);
+CREATE INDEX idx_devices_state_creation_time_id ON devices (state, creation_time, id);
+CREATE INDEX idx_devices_brand_state_creation_time_id ON devices (brand, state, creation_time, id);
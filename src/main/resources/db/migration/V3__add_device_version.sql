@@ -0,0 +1,2 @@
+-- Optimistic-locking version, exposed to clients as the device ETag.
+ALTER TABLE devices ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
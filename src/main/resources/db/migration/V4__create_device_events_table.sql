@@ -0,0 +1,25 @@
+-- Transactional outbox: every device mutation appends a row here in its own transaction.
+-- Ids are allocated in blocks of 50 so batch writes can insert events in JDBC batches.
+CREATE SEQUENCE device_events_id_seq INCREMENT BY 50;
+
+CREATE TABLE device_events
+(
+    id            BIGINT PRIMARY KEY DEFAULT nextval('device_events_id_seq'),
+    -- Assigned by the relay in commit order without gaps; NULL until the event is relayed.
+    seq           BIGINT UNIQUE,
+    type          VARCHAR(20) NOT NULL CHECK (type IN ('CREATED', 'UPDATED', 'DELETED', 'FLUSHED')),
+    device_id     UUID,
+    name          VARCHAR(255),
+    brand         VARCHAR(255),
+    state         VARCHAR(50),
+    creation_time TIMESTAMP,
+    version       BIGINT,
+    occurred_at   TIMESTAMP   NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    published_at  TIMESTAMP
+);
+
+ALTER SEQUENCE device_events_id_seq OWNED BY device_events.id;
+
+-- The relay only scans events it has not relayed yet; the index empties as it catches up.
+CREATE INDEX idx_device_events_unrelayed ON device_events (id) WHERE seq IS NULL;
+CREATE INDEX idx_device_events_published_at ON device_events (published_at);
@@ -0,0 +1,10 @@
+-- Brand and state of the device before an UPDATED event, so consumers can maintain counts from deltas alone.
+ALTER TABLE device_events ADD COLUMN previous_brand VARCHAR(255);
+ALTER TABLE device_events ADD COLUMN previous_state VARCHAR(50);
+
+-- Events are relayed in occurred_at order. The clock is read when the event row is inserted, after the mutation
+-- has locked the device row, so two events of the same device are always in the order their changes committed.
+ALTER TABLE device_events ALTER COLUMN occurred_at SET DEFAULT clock_timestamp();
+
+DROP INDEX idx_device_events_unrelayed;
+CREATE INDEX idx_device_events_unrelayed ON device_events (occurred_at, id) WHERE seq IS NULL;
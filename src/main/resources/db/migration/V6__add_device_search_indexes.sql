@@ -0,0 +1,8 @@
+-- Indexes for GET /api/devices/search
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+-- Name prefixes (lower(name) LIKE 'abc%') and trigram matches (lower(name) % 'abc')
+CREATE INDEX idx_devices_name_trgm ON devices USING gin (lower(name) gin_trgm_ops);
+
+-- Keyset pagination sorted by name, in either direction
+CREATE INDEX idx_devices_name ON devices (name, id);
@@ -0,0 +1,157 @@
+import cris.greg.io.config.DeviceProperties;
+import cris.greg.io.exception.DeviceValidationException;
+import cris.greg.io.model.Device;
+import cris.greg.io.model.DeviceBatchResult;
+import cris.greg.io.model.DeviceChangeType;
+import cris.greg.io.model.DeviceEvent;
+import cris.greg.io.model.DeviceState;
+import cris.greg.io.repository.DeviceEventRepository;
+import cris.greg.io.repository.DeviceRepository;
+import cris.greg.io.service.DeviceBatchService;
+import cris.greg.io.service.DeviceCache;
+import cris.greg.io.service.DeviceReadCoalescer;
+import cris.greg.io.service.DeviceChangeFeed;
+import cris.greg.io.service.DeviceTaskExecutor;
+import cris.greg.io.service.TimeOrderedDeviceIdGenerator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class DeviceBatchServiceTest {
+
+    @Mock
+    private DeviceRepository deviceRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private DeviceEventRepository eventRepository;
+
+    private DeviceProperties properties;
+    private DeviceTaskExecutor executor;
+    private DeviceBatchService deviceBatchService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        properties = new DeviceProperties();
+        properties.getBatch().setChunkSize(2);
+        executor = DeviceTaskExecutor.create(properties.getExecutor());
+        deviceBatchService = new DeviceBatchService(deviceRepository, new TransactionTemplate(transactionManager),
+                properties, new DeviceCache(properties), executor, new DeviceChangeFeed(properties),
+                eventRepository, new TimeOrderedDeviceIdGenerator(), new DeviceReadCoalescer(properties));
+        when(deviceRepository.saveAll(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        executor.destroy();
+    }
+
+    @Test
+    void createDevices_ShouldReportEachItemInRequestOrder() {
+        List<Device> devices = Arrays.asList(device("A", DeviceState.AVAILABLE), device("B", null),
+                device("C", DeviceState.IN_USE));
+
+        List<DeviceBatchResult> results = deviceBatchService.createDevices(devices).join();
+
+        assertEquals(3, results.size());
+        assertEquals(HttpStatus.CREATED.value(), results.get(0).getStatus());
+        assertNotNull(results.get(0).getId());
+        assertEquals(HttpStatus.BAD_REQUEST.value(), results.get(1).getStatus());
+        assertEquals("Invalid state", results.get(1).getMessage());
+        assertEquals(HttpStatus.CREATED.value(), results.get(2).getStatus());
+        assertEquals(2, results.get(2).getIndex());
+        verify(deviceRepository, times(2)).saveAll(anyList());
+    }
+
+    @Test
+    void createDevices_ChunkFails_ShouldOnlyFailThatChunk() {
+        when(deviceRepository.saveAll(anyList()))
+                .thenThrow(new DataIntegrityViolationException("boom"))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+        List<Device> devices = Arrays.asList(device("A", DeviceState.AVAILABLE), device("B", DeviceState.AVAILABLE),
+                device("C", DeviceState.AVAILABLE));
+
+        List<DeviceBatchResult> results = deviceBatchService.createDevices(devices).join();
+
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR.value(), results.get(0).getStatus());
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR.value(), results.get(1).getStatus());
+        assertEquals(HttpStatus.CREATED.value(), results.get(2).getStatus());
+    }
+
+    @Test
+    void createDevices_TooManyItems_ShouldThrowException() {
+        properties.getBatch().setMaxItems(1);
+        List<Device> devices = Arrays.asList(device("A", DeviceState.AVAILABLE), device("B", DeviceState.AVAILABLE));
+
+        DeviceValidationException exception = assertThrows(DeviceValidationException.class,
+                () -> deviceBatchService.createDevices(devices));
+
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getStatus());
+        verifyNoInteractions(deviceRepository);
+    }
+
+    @Test
+    void updateDevices_ShouldApplyInUseRulePerItem() {
+        Device available = device("A", DeviceState.AVAILABLE);
+        available.setId(UUID.randomUUID());
+        Device inUse = device("B", DeviceState.IN_USE);
+        inUse.setId(UUID.randomUUID());
+        when(deviceRepository.findAllForUpdate(anyList())).thenReturn(Arrays.asList(available, inUse));
+
+        Device rename = Device.builder().id(available.getId()).name("Renamed").build();
+        Device renameInUse = Device.builder().id(inUse.getId()).name("Renamed").build();
+        Device missing = Device.builder().id(UUID.randomUUID()).state(DeviceState.INACTIVE).build();
+
+        List<DeviceBatchResult> results = deviceBatchService.updateDevices(Arrays.asList(rename, renameInUse, missing)).join();
+
+        assertEquals(HttpStatus.OK.value(), results.get(0).getStatus());
+        assertEquals("Renamed", available.getName());
+        assertEquals(HttpStatus.NOT_ACCEPTABLE.value(), results.get(1).getStatus());
+        assertEquals("B", inUse.getName());
+        assertEquals(HttpStatus.NOT_FOUND.value(), results.get(2).getStatus());
+    }
+
+    @Test
+    void deleteDevices_ShouldSkipInUseAndMissingDevices() {
+        Device available = device("A", DeviceState.AVAILABLE);
+        available.setId(UUID.randomUUID());
+        Device inUse = device("B", DeviceState.IN_USE);
+        inUse.setId(UUID.randomUUID());
+        when(deviceRepository.findAllForUpdate(anyList())).thenReturn(Arrays.asList(available, inUse));
+        List<UUID> ids = new ArrayList<>(Arrays.asList(available.getId(), inUse.getId(), UUID.randomUUID()));
+
+        List<DeviceBatchResult> results = deviceBatchService.deleteDevices(ids).join();
+
+        assertEquals(HttpStatus.NO_CONTENT.value(), results.get(0).getStatus());
+        assertEquals(HttpStatus.NOT_ACCEPTABLE.value(), results.get(1).getStatus());
+        assertEquals(HttpStatus.NOT_FOUND.value(), results.get(2).getStatus());
+        verify(deviceRepository, times(1)).deleteAllInBatch(Collections.singletonList(available));
+        verify(deviceRepository, never()).deleteAllInBatch(Collections.singletonList(inUse));
+        verify(eventRepository, times(1)).saveAll(argThat((List<DeviceEvent> events) -> events.size() == 1
+                && events.get(0).getType() == DeviceChangeType.DELETED
+                && available.getId().equals(events.get(0).getDeviceId())));
+    }
+
+    private static Device device(String name, DeviceState state) {
+        return Device.builder().name(name).brand("BrandA").state(state).build();
+    }
+}
@@ -0,0 +1,125 @@
+import cris.greg.io.config.DeviceProperties;
+import cris.greg.io.model.Device;
+import cris.greg.io.model.DeviceChange;
+import cris.greg.io.model.DeviceChangeType;
+import cris.greg.io.model.DeviceState;
+import cris.greg.io.service.DeviceChangeFeed;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeviceChangeFeedTest {
+
+    private DeviceChangeFeed changeFeed;
+
+    @BeforeEach
+    void setUp() {
+        DeviceProperties properties = new DeviceProperties();
+        properties.getChanges().setBufferSize(3);
+        changeFeed = new DeviceChangeFeed(properties);
+    }
+
+    @Test
+    void subscribe_ShouldOnlyReceiveMatchingChanges() {
+        RecordingListener listener = new RecordingListener(10);
+        changeFeed.subscribe("BrandA", null, null, listener);
+
+        changeFeed.created(device("BrandA"));
+        changeFeed.created(device("BrandB"));
+        changeFeed.flushed();
+
+        assertEquals(2, listener.changes.size());
+        assertEquals(DeviceChangeType.CREATED, listener.changes.get(0).getType());
+        assertEquals(DeviceChangeType.FLUSHED, listener.changes.get(1).getType());
+    }
+
+    @Test
+    void subscribe_AfterBufferedId_ShouldReturnMissedChanges() {
+        changeFeed.created(device("BrandA"));
+        changeFeed.created(device("BrandA"));
+        changeFeed.created(device("BrandA"));
+
+        DeviceChangeFeed.Subscription subscription = changeFeed.subscribe(null, null, 1L, new RecordingListener(10));
+
+        assertEquals(2, subscription.getBacklog().size());
+        assertEquals(2L, subscription.getBacklog().get(0).getId());
+        assertEquals(3L, subscription.getBacklog().get(1).getId());
+    }
+
+    @Test
+    void subscribe_AfterEvictedId_ShouldReturnReset() {
+        for (int i = 0; i < 5; i++) {
+            changeFeed.created(device("BrandA"));
+        }
+
+        DeviceChangeFeed.Subscription subscription = changeFeed.subscribe(null, null, 1L, new RecordingListener(10));
+
+        assertEquals(1, subscription.getBacklog().size());
+        assertEquals(DeviceChangeType.RESET, subscription.getBacklog().get(0).getType());
+        assertEquals(5L, subscription.getBacklog().get(0).getId());
+    }
+
+    @Test
+    void update_LeavingFilteredState_ShouldReachSubscribersOfTheOldState() {
+        RecordingListener listener = new RecordingListener(10);
+        changeFeed.subscribe(null, DeviceState.AVAILABLE, null, listener);
+        RecordingListener otherState = new RecordingListener(10);
+        changeFeed.subscribe(null, DeviceState.INACTIVE, null, otherState);
+        Device device = device("BrandA");
+        device.setState(DeviceState.IN_USE);
+
+        changeFeed.updated(device, "BrandA", DeviceState.AVAILABLE);
+
+        assertEquals(1, listener.changes.size());
+        assertEquals(DeviceState.AVAILABLE, listener.changes.get(0).getPreviousState());
+        assertEquals(DeviceState.IN_USE, listener.changes.get(0).getDevice().getState());
+        assertTrue(otherState.changes.isEmpty());
+        DeviceChangeFeed.Subscription resumed = changeFeed.subscribe(null, DeviceState.AVAILABLE, 0L,
+                new RecordingListener(10));
+        assertEquals(1, resumed.getBacklog().size());
+    }
+
+    @Test
+    void publish_FullListener_ShouldDropSubscriber() {
+        RecordingListener listener = new RecordingListener(1);
+        changeFeed.subscribe(null, null, null, listener);
+
+        changeFeed.created(device("BrandA"));
+        changeFeed.created(device("BrandA"));
+        changeFeed.created(device("BrandA"));
+
+        assertEquals(1, listener.changes.size());
+        assertTrue(listener.overflowed);
+        assertEquals(0, changeFeed.getSubscriberCount());
+        assertEquals(1, changeFeed.getOverflowCount());
+    }
+
+    private static Device device(String brand) {
+        return Device.builder().id(UUID.randomUUID()).name("Device").brand(brand).state(DeviceState.AVAILABLE).build();
+    }
+
+    private static final class RecordingListener implements DeviceChangeFeed.Listener {
+        private final int capacity;
+        private final List<DeviceChange> changes = new ArrayList<>();
+        private boolean overflowed;
+
+        private RecordingListener(int capacity) {
+            this.capacity = capacity;
+        }
+
+        @Override
+        public boolean offer(DeviceChange change) {
+            return changes.size() < capacity && changes.add(change);
+        }
+
+        @Override
+        public void overflowed() {
+            overflowed = true;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+import com.fasterxml.jackson.databind.ObjectMapper;
+import cris.greg.io.controller.DeviceController;
+import cris.greg.io.exception.DeviceValidationException;
+import cris.greg.io.model.Device;
+import cris.greg.io.model.DeviceState;
+import cris.greg.io.service.DeviceService;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class DeviceControllerTest {
+
+    private final DeviceService deviceService = mock(DeviceService.class);
+    private final DeviceController controller = new DeviceController(deviceService, new ObjectMapper());
+    private final UUID deviceId = UUID.randomUUID();
+    private final Device device = Device.builder().id(deviceId).name("Device1").brand("BrandA")
+            .state(DeviceState.AVAILABLE).version(3L).build();
+
+    @Test
+    void ifMatch_WeakTag_ShouldFailWithPreconditionFailed() {
+        Device change = Device.builder().state(DeviceState.IN_USE).build();
+
+        DeviceValidationException exception = assertThrows(DeviceValidationException.class,
+                () -> controller.updateDeviceState(deviceId, change, "W/\"3\""));
+
+        assertEquals(HttpStatus.PRECONDITION_FAILED, exception.getStatus());
+        verifyNoInteractions(deviceService);
+    }
+
+    @Test
+    void ifMatch_StrongTag_ShouldPassTheVersion() {
+        Device change = Device.builder().state(DeviceState.IN_USE).build();
+        when(deviceService.updateDeviceState(deviceId, DeviceState.IN_USE, 3L))
+                .thenReturn(CompletableFuture.completedFuture(device));
+
+        assertEquals(HttpStatus.OK, controller.updateDeviceState(deviceId, change, "\"3\"").join().getStatusCode());
+    }
+
+    @Test
+    void ifNoneMatch_WeakTag_ShouldStillMatch() {
+        when(deviceService.getDeviceById(deviceId)).thenReturn(CompletableFuture.completedFuture(device));
+
+        ResponseEntity<Device> response = controller.getDeviceById(deviceId, "W/\"3\"", null).join();
+
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+    }
+}
@@ -0,0 +1,85 @@
+import cris.greg.io.config.DeviceProperties;
+import cris.greg.io.model.Device;
+import cris.greg.io.model.DeviceChange;
+import cris.greg.io.model.DeviceChangeType;
+import cris.greg.io.model.DeviceEvent;
+import cris.greg.io.model.DeviceState;
+import cris.greg.io.repository.DeviceEventRepository;
+import cris.greg.io.service.DeviceEventRelay;
+import cris.greg.io.service.InProcessDeviceEventSink;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class DeviceEventRelayTest {
+
+    @Mock
+    private DeviceEventRepository eventRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final List<Object> published = new ArrayList<>();
+    private final InProcessDeviceEventSink sink = new InProcessDeviceEventSink(published::add);
+    private DeviceEventRelay relay;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        relay = new DeviceEventRelay(eventRepository, new TransactionTemplate(transactionManager), sink,
+                new DeviceProperties());
+        when(eventRepository.tryRelayLock()).thenReturn(true);
+    }
+
+    @Test
+    void relayBatch_ShouldPublishEventsInSeqOrderToInProcessSink() {
+        when(eventRepository.relay(500)).thenReturn(Arrays.asList(
+                event(8L, DeviceChangeType.UPDATED, DeviceState.IN_USE),
+                event(7L, DeviceChangeType.CREATED, DeviceState.AVAILABLE)));
+
+        assertEquals(2, relay.relayBatch());
+
+        List<DeviceChange> recent = sink.getRecent();
+        assertEquals(2, recent.size());
+        assertEquals(7L, recent.get(0).getId());
+        assertEquals(DeviceChangeType.CREATED, recent.get(0).getType());
+        assertEquals(8L, recent.get(1).getId());
+        assertEquals(DeviceState.IN_USE, recent.get(1).getDevice().getState());
+        assertEquals(recent, published);
+        assertEquals(2, relay.getRelayedCount());
+        assertEquals(8L, relay.getLastSeq());
+    }
+
+    @Test
+    void relayBatch_RelayLockHeldElsewhere_ShouldPublishNothing() {
+        when(eventRepository.tryRelayLock()).thenReturn(false);
+
+        assertEquals(0, relay.relayBatch());
+
+        assertTrue(sink.getRecent().isEmpty());
+        verify(eventRepository, never()).relay(anyInt());
+    }
+
+    private static DeviceEvent event(long seq, DeviceChangeType type, DeviceState state) {
+        DeviceEvent event = DeviceEvent.of(type, Device.builder()
+                .id(UUID.randomUUID())
+                .name("Device")
+                .brand("BrandA")
+                .state(state)
+                .version(0L)
+                .build());
+        event.setSeq(seq);
+        return event;
+    }
+}
@@ -0,0 +1,59 @@
+import cris.greg.io.config.DeviceProperties;
+import cris.greg.io.service.DeviceRateLimiter;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeviceRateLimiterTest {
+
+    @Test
+    void client_ShouldGetItsBurstThenWaitForTokens() {
+        DeviceRateLimiter limiter = limiter(true);
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, limiter.acquire("address:10.0.0.1", 1));
+        }
+        long wait = limiter.acquire("address:10.0.0.1", 1);
+
+        assertTrue(wait > TimeUnit.MILLISECONDS.toNanos(500) && wait <= TimeUnit.SECONDS.toNanos(1), "wait " + wait);
+        assertEquals(0, limiter.acquire("address:10.0.0.2", 1));
+        assertEquals(6, limiter.getAllowedCount());
+        assertEquals(1, limiter.getLimitedCount());
+    }
+
+    @Test
+    void expensiveRequests_ShouldTakeMoreTokens() {
+        DeviceRateLimiter limiter = limiter(true);
+
+        assertEquals(3, limiter.costOf("GET", "/api/devices"));
+        assertEquals(3, limiter.costOf("POST", "/api/devices/batch"));
+        assertEquals(1, limiter.costOf("POST", "/api/devices"));
+        assertEquals(1, limiter.costOf("GET", "/api/devices/state/IN_USE"));
+
+        assertEquals(0, limiter.acquire("key:abc", 3));
+        long wait = limiter.acquire("key:abc", 3);
+        assertTrue(wait > 0 && wait <= TimeUnit.SECONDS.toNanos(1), "wait " + wait);
+        assertEquals(0, limiter.acquire("key:abc", 1));
+    }
+
+    @Test
+    void disabled_ShouldLetEverythingThrough() {
+        DeviceRateLimiter limiter = limiter(false);
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(0, limiter.acquire("address:10.0.0.1", 3));
+        }
+    }
+
+    private static DeviceRateLimiter limiter(boolean enabled) {
+        DeviceProperties properties = new DeviceProperties();
+        DeviceProperties.RateLimit settings = properties.getRateLimit();
+        settings.setEnabled(enabled);
+        settings.setRate(1);
+        settings.setBurst(5);
+        settings.setExpensiveCost(3);
+        return new DeviceRateLimiter(properties);
+    }
+}
@@ -0,0 +1,100 @@
+import cris.greg.io.config.DeviceProperties;
+import cris.greg.io.service.DeviceReadCoalescer;
+import cris.greg.io.service.ReplicaReads;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static cris.greg.io.service.DeviceReadCoalescer.key;
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeviceReadCoalescerTest {
+
+    private final AtomicInteger queries = new AtomicInteger();
+    private CompletableFuture<String> query = new CompletableFuture<>();
+
+    @Test
+    void concurrentIdenticalReads_ShouldShareOneQuery() {
+        DeviceReadCoalescer coalescer = coalescer(Duration.ZERO);
+
+        CompletableFuture<String> first = coalescer.execute(key("getDevicesByState", "IN_USE"), this::read);
+        CompletableFuture<String> second = coalescer.execute(key("getDevicesByState", "IN_USE"), this::read);
+        CompletableFuture<String> other = coalescer.execute(key("getDevicesByState", "INACTIVE"), this::read);
+        query.complete("devices");
+
+        assertEquals("devices", first.join());
+        assertEquals("devices", second.join());
+        assertEquals("devices", other.join());
+        assertEquals(2, queries.get());
+        assertEquals(2, coalescer.getExecutedCount());
+        assertEquals(1, coalescer.getCoalescedCount());
+        assertEquals(0.5, coalescer.getCoalescedRatio());
+    }
+
+    @Test
+    void completedRead_ShouldOnlyBeReusedWithinWindowUntilInvalidated() {
+        List<Object> key = key("getDeviceById", "id");
+        DeviceReadCoalescer noWindow = coalescer(Duration.ZERO);
+        query.complete("device");
+        noWindow.execute(key, this::read).join();
+        noWindow.execute(key, this::read).join();
+        assertEquals(2, queries.get());
+
+        DeviceReadCoalescer window = coalescer(Duration.ofMinutes(1));
+        window.execute(key, this::read).join();
+        window.execute(key, this::read).join();
+        assertEquals(3, queries.get());
+
+        window.invalidate();
+        window.execute(key, this::read).join();
+        assertEquals(4, queries.get());
+    }
+
+    @Test
+    void failure_ShouldBeSharedButNotReused() {
+        DeviceReadCoalescer coalescer = coalescer(Duration.ofMinutes(1));
+        List<Object> key = key("getDeviceById", "id");
+
+        CompletableFuture<String> first = coalescer.execute(key, this::read);
+        CompletableFuture<String> second = coalescer.execute(key, this::read);
+        query.completeExceptionally(new IllegalStateException("down"));
+
+        assertThrows(CompletionException.class, first::join);
+        assertThrows(CompletionException.class, second::join);
+        assertInstanceOf(IllegalStateException.class, first.handle((value, error) -> error).join());
+        assertInstanceOf(IllegalStateException.class, second.handle((value, error) -> error).join());
+        query = CompletableFuture.completedFuture("device");
+        assertEquals("device", coalescer.execute(key, this::read).join());
+        assertEquals(2, queries.get());
+    }
+
+    @Test
+    void readYourWrites_ShouldNotBeCoalesced() {
+        DeviceReadCoalescer coalescer = coalescer(Duration.ZERO);
+        ReplicaReads.setPrimaryRequired(true);
+        try {
+            coalescer.execute(key("getAllDevices"), this::read);
+            coalescer.execute(key("getAllDevices"), this::read);
+        } finally {
+            ReplicaReads.setPrimaryRequired(false);
+        }
+
+        assertEquals(2, queries.get());
+        assertEquals(0, coalescer.getCoalescedCount());
+    }
+
+    private CompletableFuture<String> read() {
+        queries.incrementAndGet();
+        return query;
+    }
+
+    private static DeviceReadCoalescer coalescer(Duration window) {
+        DeviceProperties properties = new DeviceProperties();
+        properties.getCoalescing().setWindow(window);
+        return new DeviceReadCoalescer(properties);
+    }
+}
@@ -1,26 +1,58 @@
 
 
+import cris.greg.io.config.DeviceProperties;
 import cris.greg.io.exception.DeviceValidationException;
 import cris.greg.io.model.Device;
+import cris.greg.io.model.DeviceChange;
+import cris.greg.io.model.DeviceChangeType;
+import cris.greg.io.model.DeviceEvent;
+import cris.greg.io.model.DeviceField;
+import cris.greg.io.model.DevicePage;
+import cris.greg.io.model.DeviceSearch;
+import cris.greg.io.model.DeviceSort;
 import cris.greg.io.model.DeviceState;
+import cris.greg.io.model.DeviceStats;
+import cris.greg.io.model.DeviceUpdate;
+import cris.greg.io.repository.DeviceEventRepository;
 import cris.greg.io.repository.DeviceRepository;
+import cris.greg.io.repository.DeviceSpecifications;
+import cris.greg.io.service.DeviceCache;
+import cris.greg.io.service.DeviceReadCoalescer;
+import cris.greg.io.service.DeviceChangeFeed;
+import cris.greg.io.service.DeviceCursor;
+import cris.greg.io.service.DeviceSearchCursor;
 import cris.greg.io.service.DeviceService;
+import cris.greg.io.service.DeviceStatsCounter;
+import cris.greg.io.service.DeviceTaskExecutor;
+import cris.greg.io.service.ReplicaReads;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.data.domain.Limit;
 import org.springframework.http.HttpStatus;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 class DeviceServiceTest {
@@ -28,8 +60,18 @@ class DeviceServiceTest {
     @Mock
     private DeviceRepository deviceRepository;
 
-    @InjectMocks
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private DeviceEventRepository eventRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
     private DeviceService deviceService;
+    private DeviceCache deviceCache;
+    private DeviceTaskExecutor executor;
 
     private Device device;
     private UUID deviceId;
@@ -37,15 +79,28 @@ class DeviceServiceTest {
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
+        DeviceProperties properties = new DeviceProperties();
+        deviceCache = new DeviceCache(properties);
+        executor = DeviceTaskExecutor.create(properties.getExecutor());
+        deviceService = new DeviceService(deviceRepository, entityManager, properties, deviceCache, executor,
+                new DeviceChangeFeed(properties), eventRepository, new TransactionTemplate(transactionManager),
+                new DeviceStatsCounter(deviceRepository, eventRepository, transactionManager, properties), () -> deviceId,
+                new DeviceReadCoalescer(properties));
         deviceId = UUID.randomUUID();
         device = Device.builder()
                 .id(deviceId)
                 .name("Device1")
                 .brand("BrandA")
                 .state(DeviceState.AVAILABLE)
+                .creationTime(LocalDateTime.of(2025, 1, 1, 12, 0))
                 .build();
     }
 
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        executor.destroy();
+    }
+
     @Test
     void saveDevice_ValidState_ShouldSaveDevice() {
         when(deviceRepository.save(any(Device.class))).thenReturn(device);
@@ -57,6 +112,27 @@ class DeviceServiceTest {
         verify(deviceRepository, times(1)).save(device);
     }
 
+    @Test
+    void saveDevice_ShouldAppendCreatedEvent() {
+        when(deviceRepository.save(any(Device.class))).thenReturn(device);
+
+        deviceService.saveDevice(device).join();
+
+        verify(eventRepository).save(argThat(event -> event.getType() == DeviceChangeType.CREATED
+                && deviceId.equals(event.getDeviceId())));
+    }
+
+    @Test
+    void saveDevice_IdSentByClient_ShouldBeReplacedByGeneratedId() {
+        Device sent = Device.builder().id(UUID.randomUUID()).name("Device2").brand("BrandA")
+                .state(DeviceState.AVAILABLE).build();
+        when(deviceRepository.save(any(Device.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        Device saved = deviceService.saveDevice(sent).join();
+
+        assertEquals(deviceId, saved.getId());
+    }
+
     @Test
     void saveDevice_InvalidState_ShouldThrowException() {
         device.setState(null);
@@ -73,22 +149,115 @@ class DeviceServiceTest {
     @Test
     void getAllDevices_ShouldReturnDevices() {
         List<Device> devices = Arrays.asList(device);
-        when(deviceRepository.findAll()).thenReturn(devices);
+        when(deviceRepository.findAllByOrderByCreationTimeAscIdAsc(Limit.of(101))).thenReturn(devices);
 
-        CompletableFuture<List<Device>> result = deviceService.getAllDevices();
+        CompletableFuture<DevicePage> result = deviceService.getAllDevices(null, null, null);
 
         assertNotNull(result);
-        assertEquals(devices, result.join());
-        verify(deviceRepository, times(1)).findAll();
+        assertEquals(devices, result.join().getDevices());
+        assertNull(result.join().getNextCursor());
+        verify(deviceRepository, times(1)).findAllByOrderByCreationTimeAscIdAsc(Limit.of(101));
+    }
+
+    @Test
+    void getAllDevices_MoreDevicesThanLimit_ShouldReturnNextCursor() {
+        List<Device> devices = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            devices.add(Device.builder().id(UUID.randomUUID()).name("Device" + i).brand("BrandA")
+                    .state(DeviceState.AVAILABLE).creationTime(LocalDateTime.of(2025, 1, 1, 12, i)).build());
+        }
+        when(deviceRepository.findAllByOrderByCreationTimeAscIdAsc(Limit.of(3))).thenReturn(devices);
+
+        DevicePage page = deviceService.getAllDevices(null, null, 2).join();
+
+        assertEquals(devices.subList(0, 2), page.getDevices());
+        DeviceCursor cursor = DeviceCursor.decode(page.getNextCursor());
+        assertEquals(devices.get(1).getId(), cursor.getId());
+        assertEquals(devices.get(1).getCreationTime(), cursor.getCreationTime());
+    }
+
+    @Test
+    void getAllDevices_WithCursor_ShouldContinueAfterCursor() {
+        String cursor = DeviceCursor.after(device).encode();
+        when(deviceRepository.findAllAfter(device.getCreationTime(), deviceId, Limit.of(101))).thenReturn(Arrays.asList());
+
+        DevicePage page = deviceService.getAllDevices(null, cursor, null).join();
+
+        assertTrue(page.getDevices().isEmpty());
+        assertNull(page.getNextCursor());
+        verify(deviceRepository, times(1)).findAllAfter(device.getCreationTime(), deviceId, Limit.of(101));
+    }
+
+    @Test
+    void searchDevices_MoreDevicesThanLimit_ShouldReturnCursorInSearchOrder() {
+        List<Device> devices = new ArrayList<>();
+        for (int i = 3; i > 0; i--) {
+            devices.add(Device.builder().id(UUID.randomUUID()).name("Device" + i).state(DeviceState.AVAILABLE).build());
+        }
+        Set<DeviceField> fields = EnumSet.of(DeviceField.STATE);
+        DeviceSearch search = DeviceSearch.builder().namePrefix("dev").sort(DeviceSort.NAME_DESC).build();
+        when(deviceRepository.findPage(eq(fields), any(), eq(DeviceSpecifications.sortOf(DeviceSort.NAME_DESC)), eq(3)))
+                .thenReturn(devices);
+
+        DevicePage page = deviceService.searchDevices(search, fields, null, 2).join();
+
+        assertEquals(2, page.getDevices().size());
+        assertNull(page.getDevices().get(0).getName());
+        assertEquals(DeviceState.AVAILABLE, page.getDevices().get(0).getState());
+        DeviceSearchCursor cursor = DeviceSearchCursor.decode(page.getNextCursor(), DeviceSort.NAME_DESC);
+        assertEquals("Device2", cursor.getKey());
+        assertEquals(devices.get(1).getId(), cursor.getId());
+    }
+
+    @Test
+    void searchDevices_CursorOfAnotherSort_ShouldFailWithoutQuery() {
+        String cursor = DeviceSearchCursor.after(DeviceSort.CREATION_TIME, device).encode();
+        DeviceSearch search = DeviceSearch.builder().sort(DeviceSort.NAME).build();
+
+        DeviceValidationException exception = assertThrows(DeviceValidationException.class,
+                () -> deviceService.searchDevices(search, null, cursor, null));
+
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getStatus());
+        verifyNoInteractions(deviceRepository);
+    }
+
+    @Test
+    void searchDevices_EmptyCreationTimeRange_ShouldFailWithBadRequest() {
+        LocalDateTime time = LocalDateTime.of(2025, 1, 1, 12, 0);
+        DeviceSearch search = DeviceSearch.builder().createdFrom(time).createdTo(time).build();
+
+        DeviceValidationException exception = assertThrows(DeviceValidationException.class,
+                () -> deviceService.searchDevices(search, null, null, null));
+
+        assertEquals("createdFrom must be before createdTo", exception.getMessage());
+    }
+
+    @Test
+    void getAllDevices_LimitAboveMax_ShouldBeCapped() {
+        when(deviceRepository.findAllByOrderByCreationTimeAscIdAsc(Limit.of(1001))).thenReturn(Arrays.asList(device));
+
+        deviceService.getAllDevices(null, null, 50000).join();
+
+        verify(deviceRepository, times(1)).findAllByOrderByCreationTimeAscIdAsc(Limit.of(1001));
+    }
+
+    @Test
+    void getAllDevices_InvalidCursor_ShouldThrowException() {
+        DeviceValidationException exception = assertThrows(DeviceValidationException.class,
+                () -> deviceService.getAllDevices(null, "not-a-cursor", null));
+
+        assertEquals("Invalid cursor", exception.getMessage());
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getStatus());
+        verifyNoInteractions(deviceRepository);
     }
 
     @Test
     void getAllDevices_NoDevicesFound_ShouldThrowException() {
-        when(deviceRepository.findAll()).thenReturn(Arrays.asList());
+        when(deviceRepository.findAllByOrderByCreationTimeAscIdAsc(Limit.of(101))).thenReturn(Arrays.asList());
 
        DeviceValidationException exception = assertThrows(DeviceValidationException.class, () -> {
            try {
-               deviceService.getAllDevices().join();
+               deviceService.getAllDevices(null, null, null).join();
            } catch (CompletionException e) {
                throw (DeviceValidationException) e.getCause();
            }
@@ -96,7 +265,37 @@ class DeviceServiceTest {
 
         assertEquals("No devices found", exception.getMessage());
         assertEquals(HttpStatus.NOT_FOUND, exception.getStatus());
-        verify(deviceRepository, times(1)).findAll();
+        verify(deviceRepository, times(1)).findAllByOrderByCreationTimeAscIdAsc(Limit.of(101));
+    }
+
+    @Test
+    void getAllDevices_WithFields_ShouldReturnOnlyRequestedFields() {
+        Device second = Device.builder().id(UUID.randomUUID()).state(DeviceState.IN_USE)
+                .creationTime(LocalDateTime.of(2025, 1, 1, 12, 1)).build();
+        Device first = Device.builder().id(deviceId).state(DeviceState.AVAILABLE).creationTime(device.getCreationTime()).build();
+        Set<DeviceField> fields = EnumSet.of(DeviceField.STATE);
+        when(deviceRepository.findPage(fields, null, null, null, null, 2)).thenReturn(Arrays.asList(first, second));
+
+        DevicePage page = deviceService.getAllDevices(fields, null, 1).join();
+
+        assertEquals(1, page.getDevices().size());
+        assertEquals(DeviceState.AVAILABLE, page.getDevices().get(0).getState());
+        assertNull(page.getDevices().get(0).getId());
+        assertNull(page.getDevices().get(0).getCreationTime());
+        assertEquals(deviceId, DeviceCursor.decode(page.getNextCursor()).getId());
+        verify(deviceRepository, never()).findAllByOrderByCreationTimeAscIdAsc(any(Limit.class));
+    }
+
+    @Test
+    void streamAllDevices_ShouldDetachEachDevice() {
+        when(deviceRepository.streamAll()).thenReturn(Stream.of(device));
+        when(entityManager.contains(device)).thenReturn(true);
+        List<Device> streamed = new ArrayList<>();
+
+        deviceService.streamAllDevices(null, streamed::add);
+
+        assertEquals(Arrays.asList(device), streamed);
+        verify(entityManager, times(1)).detach(device);
     }
 
     @Test
@@ -127,6 +326,106 @@ class DeviceServiceTest {
         verify(deviceRepository, times(1)).findById(deviceId);
     }
 
+    @Test
+    void getDeviceById_NonExistingId_ShouldFailWithTheValidationExceptionItself() {
+        when(deviceRepository.findById(deviceId)).thenReturn(Optional.empty());
+        when(deviceRepository.updateState(deviceId, "IN_USE", null)).thenReturn(Optional.empty());
+
+        Throwable lookup = deviceService.getDeviceById(deviceId).handle((device, error) -> error).join();
+        Throwable update = deviceService.updateDeviceState(deviceId, DeviceState.IN_USE, null)
+                .handle((device, error) -> error).join();
+
+        assertInstanceOf(DeviceValidationException.class, lookup);
+        assertInstanceOf(DeviceValidationException.class, update);
+    }
+
+    @Test
+    void getDeviceById_RepeatedLookup_ShouldHitCache() {
+        when(deviceRepository.findById(deviceId)).thenReturn(Optional.of(device));
+
+        deviceService.getDeviceById(deviceId).join();
+        Device cached = deviceService.getDeviceById(deviceId).join();
+
+        assertEquals(device, cached);
+        verify(deviceRepository, times(1)).findById(deviceId);
+        assertEquals(1, deviceCache.getHitCount());
+        assertEquals(1, deviceCache.getMissCount());
+    }
+
+    @Test
+    void getDeviceById_RepeatedMiss_ShouldBeNegativelyCached() {
+        when(deviceRepository.findById(deviceId)).thenReturn(Optional.empty());
+
+        assertThrows(CompletionException.class, () -> deviceService.getDeviceById(deviceId).join());
+        assertThrows(CompletionException.class, () -> deviceService.getDeviceById(deviceId).join());
+
+        verify(deviceRepository, times(1)).findById(deviceId);
+    }
+
+    @Test
+    void getDeviceById_CacheDisabled_ShouldAlwaysQueryRepository() {
+        DeviceProperties properties = new DeviceProperties();
+        properties.getCache().setEnabled(false);
+        deviceService = new DeviceService(deviceRepository, entityManager, properties, new DeviceCache(properties), executor,
+                new DeviceChangeFeed(properties), eventRepository, new TransactionTemplate(transactionManager),
+                new DeviceStatsCounter(deviceRepository, eventRepository, transactionManager, properties), () -> deviceId,
+                new DeviceReadCoalescer(properties));
+        when(deviceRepository.findById(deviceId)).thenReturn(Optional.of(device));
+
+        deviceService.getDeviceById(deviceId).join();
+        deviceService.getDeviceById(deviceId).join();
+
+        verify(deviceRepository, times(2)).findById(deviceId);
+    }
+
+    @Test
+    void getDeviceById_CacheDisabled_ShouldReadFromReplicaUnlessReadYourWrites() {
+        DeviceProperties properties = new DeviceProperties();
+        properties.getCache().setEnabled(false);
+        deviceService = new DeviceService(deviceRepository, entityManager, properties, new DeviceCache(properties), executor,
+                new DeviceChangeFeed(properties), eventRepository, new TransactionTemplate(transactionManager),
+                new DeviceStatsCounter(deviceRepository, eventRepository, transactionManager, properties), () -> deviceId,
+                new DeviceReadCoalescer(properties));
+        List<Boolean> onReplica = new ArrayList<>();
+        when(deviceRepository.findById(any(UUID.class))).thenAnswer(invocation -> {
+            onReplica.add(ReplicaReads.isActive());
+            return Optional.of(device);
+        });
+
+        deviceService.getDeviceById(deviceId).join();
+        ReplicaReads.setPrimaryRequired(true);
+        try {
+            deviceService.getDeviceById(UUID.randomUUID()).join();
+        } finally {
+            ReplicaReads.setPrimaryRequired(false);
+        }
+
+        assertEquals(Arrays.asList(true, false), onReplica);
+    }
+
+    @Test
+    void getDeviceById_AfterDelete_ShouldNotCacheStaleReplicaRow() {
+        // The replica has not seen the delete yet
+        when(deviceRepository.findById(deviceId)).thenAnswer(invocation ->
+                ReplicaReads.isActive() ? Optional.of(device) : Optional.empty());
+        when(deviceRepository.deleteIfNotInUse(deviceId, null)).thenReturn(Optional.of(device));
+
+        deviceService.deleteDevice(deviceId, null).join();
+
+        assertThrows(CompletionException.class, () -> deviceService.getDeviceById(deviceId).join());
+        assertEquals(Optional.empty(), deviceCache.getIfPresent(deviceId));
+    }
+
+    @Test
+    void saveDevice_ShouldWriteThroughToCache() {
+        when(deviceRepository.save(any(Device.class))).thenReturn(device);
+
+        deviceService.saveDevice(device).join();
+
+        assertEquals(device, deviceService.getDeviceById(deviceId).join());
+        verify(deviceRepository, never()).findById(deviceId);
+    }
+
     @Test
     void updateDevice_ExistingId_ShouldUpdateDevice() {
         Device updatedDevice = Device.builder()
@@ -136,15 +435,50 @@ class DeviceServiceTest {
                 .state(DeviceState.INACTIVE)
                 .build();
 
-        when(deviceRepository.findById(deviceId)).thenReturn(Optional.of(device));
-        when(deviceRepository.save(any(Device.class))).thenReturn(updatedDevice);
+        when(deviceRepository.updateIfAllowed(deviceId, "UpdatedDevice", "UpdatedBrand", "INACTIVE", null))
+                .thenReturn(Optional.of(new DeviceUpdate(updatedDevice, "BrandA", DeviceState.AVAILABLE)));
 
-        CompletableFuture<Device> result = deviceService.updateDevice(deviceId, updatedDevice);
+        CompletableFuture<Device> result = deviceService.updateDevice(deviceId, updatedDevice, null);
 
         assertNotNull(result);
         assertEquals(updatedDevice, result.join());
-        verify(deviceRepository, times(1)).findById(deviceId);
-        verify(deviceRepository, times(1)).save(updatedDevice);
+        verify(deviceRepository, times(1)).updateIfAllowed(deviceId, "UpdatedDevice", "UpdatedBrand", "INACTIVE", null);
+        verify(deviceRepository, never()).findById(deviceId);
+    }
+
+    @Test
+    void updateDevice_InUseDeviceRenamed_ShouldThrowNotAcceptable() {
+        Device updatedDevice = Device.builder()
+                .id(deviceId)
+                .name("UpdatedDevice")
+                .brand("BrandA")
+                .state(DeviceState.IN_USE)
+                .build();
+
+        when(deviceRepository.updateIfAllowed(deviceId, "UpdatedDevice", "BrandA", "IN_USE", null)).thenReturn(Optional.empty());
+        when(deviceRepository.findById(deviceId)).thenReturn(Optional.of(device));
+
+        DeviceValidationException exception = assertThrows(DeviceValidationException.class, () -> {
+            try {
+                deviceService.updateDevice(deviceId, updatedDevice, null).join();
+            } catch (CompletionException e) {
+                throw (DeviceValidationException) e.getCause();
+            }
+        });
+
+        assertEquals("Cannot update name or brand of a device IN_USE", exception.getMessage());
+        assertEquals(HttpStatus.NOT_ACCEPTABLE, exception.getStatus());
+    }
+
+    @Test
+    void updateDevice_InvalidState_ShouldThrowException() {
+        Device updatedDevice = Device.builder().id(deviceId).name("UpdatedDevice").brand("BrandA").build();
+
+        DeviceValidationException exception = assertThrows(DeviceValidationException.class,
+                () -> deviceService.updateDevice(deviceId, updatedDevice, null));
+
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getStatus());
+        verifyNoInteractions(deviceRepository);
     }
 
     @Test
@@ -156,11 +490,12 @@ class DeviceServiceTest {
                 .state(DeviceState.AVAILABLE)
                 .build();
 
+        when(deviceRepository.updateIfAllowed(deviceId, "UpdatedDevice", "UpdatedBrand", "AVAILABLE", null)).thenReturn(Optional.empty());
         when(deviceRepository.findById(deviceId)).thenReturn(Optional.empty());
 
         DeviceValidationException exception = assertThrows(DeviceValidationException.class, () -> {
             try {
-                deviceService.updateDevice(deviceId, updatedDevice).join();
+                deviceService.updateDevice(deviceId, updatedDevice, null).join();
             } catch (CompletionException e) {
                 throw (DeviceValidationException) e.getCause();
             }
@@ -169,57 +504,149 @@ class DeviceServiceTest {
         assertEquals("Device not found", exception.getMessage());
         assertEquals(HttpStatus.NOT_FOUND, exception.getStatus());
         verify(deviceRepository, times(1)).findById(deviceId);
-        verify(deviceRepository, never()).save(any(Device.class));
+    }
+
+    @Test
+    void updateDevice_StaleVersion_ShouldThrowPreconditionFailed() {
+        Device updatedDevice = Device.builder()
+                .id(deviceId)
+                .name("UpdatedDevice")
+                .brand("UpdatedBrand")
+                .state(DeviceState.AVAILABLE)
+                .build();
+        device.setVersion(3L);
+
+        when(deviceRepository.updateIfAllowed(deviceId, "UpdatedDevice", "UpdatedBrand", "AVAILABLE", 2L)).thenReturn(Optional.empty());
+        when(deviceRepository.findById(deviceId)).thenReturn(Optional.of(device));
+
+        DeviceValidationException exception = assertThrows(DeviceValidationException.class, () -> {
+            try {
+                deviceService.updateDevice(deviceId, updatedDevice, 2L).join();
+            } catch (CompletionException e) {
+                throw (DeviceValidationException) e.getCause();
+            }
+        });
+
+        assertEquals(HttpStatus.PRECONDITION_FAILED, exception.getStatus());
+        assertEquals(device, deviceService.getDeviceById(deviceId).join());
+        verify(deviceRepository, times(1)).findById(deviceId);
+    }
+
+    @Test
+    void patchDevice_OnlyState_ShouldKeepOtherFields() {
+        Device changes = Device.builder().state(DeviceState.INACTIVE).build();
+        Device patched = Device.builder().id(deviceId).name("Device1").brand("BrandA").state(DeviceState.INACTIVE).build();
+
+        when(deviceRepository.patchIfAllowed(deviceId, null, null, "INACTIVE", null))
+                .thenReturn(Optional.of(new DeviceUpdate(patched, "BrandA", DeviceState.AVAILABLE)));
+
+        assertEquals(patched, deviceService.patchDevice(deviceId, changes, null).join());
+        assertEquals(patched, deviceService.getDeviceById(deviceId).join());
+        verify(deviceRepository, never()).findById(deviceId);
+    }
+
+    @Test
+    void patchDevice_NoChanges_ShouldThrowBadRequest() {
+        DeviceValidationException exception = assertThrows(DeviceValidationException.class,
+                () -> deviceService.patchDevice(deviceId, new Device(), null));
+
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getStatus());
+        verifyNoInteractions(deviceRepository);
+    }
+
+    @Test
+    void updateDeviceState_ExistingId_ShouldUpdateState() {
+        Device updated = Device.builder().id(deviceId).name("Device1").brand("BrandA").state(DeviceState.IN_USE).build();
+
+        when(deviceRepository.updateState(deviceId, "IN_USE", null))
+                .thenReturn(Optional.of(new DeviceUpdate(updated, "BrandA", DeviceState.AVAILABLE)));
+
+        assertEquals(updated, deviceService.updateDeviceState(deviceId, DeviceState.IN_USE, null).join());
+        verify(deviceRepository, times(1)).updateState(deviceId, "IN_USE", null);
+    }
+
+    @Test
+    void updateDeviceState_NonExistingId_ShouldThrowException() {
+        when(deviceRepository.updateState(deviceId, "IN_USE", null)).thenReturn(Optional.empty());
+        when(deviceRepository.findById(deviceId)).thenReturn(Optional.empty());
+
+        DeviceValidationException exception = assertThrows(DeviceValidationException.class, () -> {
+            try {
+                deviceService.updateDeviceState(deviceId, DeviceState.IN_USE, null).join();
+            } catch (CompletionException e) {
+                throw (DeviceValidationException) e.getCause();
+            }
+        });
+
+        assertEquals(HttpStatus.NOT_FOUND, exception.getStatus());
     }
 
     @Test
     void getDevicesByBrand_ShouldReturnDevices() {
         List<Device> devices = Arrays.asList(device);
-        when(deviceRepository.findByBrand("BrandA")).thenReturn(devices);
+        when(deviceRepository.findByBrandOrderByCreationTimeAscIdAsc("BrandA", Limit.of(101))).thenReturn(devices);
 
-        CompletableFuture<List<Device>> result = deviceService.getDevicesByBrand("BrandA");
+        CompletableFuture<DevicePage> result = deviceService.getDevicesByBrand("BrandA", null, null, null);
 
         assertNotNull(result);
-        assertEquals(devices, result.join());
-        verify(deviceRepository, times(1)).findByBrand("BrandA");
+        assertEquals(devices, result.join().getDevices());
+        verify(deviceRepository, times(1)).findByBrandOrderByCreationTimeAscIdAsc("BrandA", Limit.of(101));
     }
 
     @Test
     void getDevicesByBrand_NoDevicesFound_ShouldThrowException() {
-        when(deviceRepository.findByBrand("BrandA")).thenReturn(Arrays.asList());
+        when(deviceRepository.findByBrandOrderByCreationTimeAscIdAsc("BrandA", Limit.of(101))).thenReturn(Arrays.asList());
 
         DeviceValidationException exception = assertThrows(DeviceValidationException.class, () -> {
             try {
-                deviceService.getDevicesByBrand("BrandA").join();
+                deviceService.getDevicesByBrand("BrandA", null, null, null).join();
             } catch (CompletionException e) {
                 throw (DeviceValidationException) e.getCause();
             }
         });
 
-        assertEquals("No devices found for branc BrandA", exception.getMessage());
+        assertEquals("No devices found for brand BrandA", exception.getMessage());
         assertEquals(HttpStatus.NOT_FOUND, exception.getStatus());
-        verify(deviceRepository, times(1)).findByBrand("BrandA");
+        verify(deviceRepository, times(1)).findByBrandOrderByCreationTimeAscIdAsc("BrandA", Limit.of(101));
     }
 
     @Test
     void getDevicesByState_ShouldReturnDevices() {
         List<Device> devices = Arrays.asList(device);
-        when(deviceRepository.findByState(DeviceState.AVAILABLE)).thenReturn(devices);
+        when(deviceRepository.findByStateOrderByCreationTimeAscIdAsc(DeviceState.AVAILABLE, Limit.of(101))).thenReturn(devices);
 
-        CompletableFuture<List<Device>> result = deviceService.getDevicesByState(DeviceState.AVAILABLE);
+        CompletableFuture<DevicePage> result = deviceService.getDevicesByState(DeviceState.AVAILABLE, null, null, null);
 
         assertNotNull(result);
-        assertEquals(devices, result.join());
-        verify(deviceRepository, times(1)).findByState(DeviceState.AVAILABLE);
+        assertEquals(devices, result.join().getDevices());
+        verify(deviceRepository, times(1)).findByStateOrderByCreationTimeAscIdAsc(DeviceState.AVAILABLE, Limit.of(101));
+    }
+
+    @Test
+    void getDevicesByState_ConcurrentIdenticalReads_ShouldShareOneQuery() throws InterruptedException {
+        List<Device> devices = Arrays.asList(device);
+        CountDownLatch release = new CountDownLatch(1);
+        when(deviceRepository.findByStateOrderByCreationTimeAscIdAsc(DeviceState.AVAILABLE, Limit.of(101))).thenAnswer(invocation -> {
+            release.await();
+            return devices;
+        });
+
+        CompletableFuture<DevicePage> first = deviceService.getDevicesByState(DeviceState.AVAILABLE, null, null, null);
+        CompletableFuture<DevicePage> second = deviceService.getDevicesByState(DeviceState.AVAILABLE, null, null, null);
+        release.countDown();
+
+        assertEquals(devices, first.join().getDevices());
+        assertEquals(devices, second.join().getDevices());
+        verify(deviceRepository, times(1)).findByStateOrderByCreationTimeAscIdAsc(DeviceState.AVAILABLE, Limit.of(101));
     }
 
     @Test
     void getDevicesByState_NoDevicesFound_ShouldThrowException() {
-        when(deviceRepository.findByState(DeviceState.AVAILABLE)).thenReturn(Arrays.asList());
+        when(deviceRepository.findByStateOrderByCreationTimeAscIdAsc(DeviceState.AVAILABLE, Limit.of(101))).thenReturn(Arrays.asList());
 
         DeviceValidationException exception = assertThrows(DeviceValidationException.class, () -> {
             try {
-                deviceService.getDevicesByState(DeviceState.AVAILABLE).join();
+                deviceService.getDevicesByState(DeviceState.AVAILABLE, null, null, null).join();
             } catch (CompletionException e) {
                 throw (DeviceValidationException) e.getCause();
             }
@@ -227,28 +654,86 @@ class DeviceServiceTest {
 
         assertEquals("No devices found for state AVAILABLE", exception.getMessage());
         assertEquals(HttpStatus.NOT_FOUND, exception.getStatus());
-        verify(deviceRepository, times(1)).findByState(DeviceState.AVAILABLE);
+        verify(deviceRepository, times(1)).findByStateOrderByCreationTimeAscIdAsc(DeviceState.AVAILABLE, Limit.of(101));
+    }
+
+    @Test
+    void getDevicesByBrandAndState_ShouldReturnDevices() {
+        List<Device> devices = Arrays.asList(device);
+        when(deviceRepository.findByBrandAndStateOrderByCreationTimeAscIdAsc("BrandA", DeviceState.AVAILABLE, Limit.of(101)))
+                .thenReturn(devices);
+
+        DevicePage page = deviceService.getDevicesByBrandAndState("BrandA", DeviceState.AVAILABLE, null, null, null).join();
+
+        assertEquals(devices, page.getDevices());
+        verify(deviceRepository, times(1)).findByBrandAndStateOrderByCreationTimeAscIdAsc("BrandA", DeviceState.AVAILABLE, Limit.of(101));
+    }
+
+    @Test
+    void getDevicesByBrandAndState_NoDevicesFound_ShouldThrowException() {
+        when(deviceRepository.findByBrandAndStateOrderByCreationTimeAscIdAsc("BrandA", DeviceState.IN_USE, Limit.of(101)))
+                .thenReturn(Arrays.asList());
+
+        DeviceValidationException exception = assertThrows(DeviceValidationException.class, () -> {
+            try {
+                deviceService.getDevicesByBrandAndState("BrandA", DeviceState.IN_USE, null, null, null).join();
+            } catch (CompletionException e) {
+                throw (DeviceValidationException) e.getCause();
+            }
+        });
+
+        assertEquals("No devices found for brand BrandA and state IN_USE", exception.getMessage());
+        assertEquals(HttpStatus.NOT_FOUND, exception.getStatus());
     }
 
     @Test
     void deleteDevice_ExistingId_ShouldDeleteDevice() {
-        when(deviceRepository.findById(deviceId)).thenReturn(Optional.of(device));
+        when(deviceRepository.deleteIfNotInUse(deviceId, null)).thenReturn(Optional.of(device));
 
-        CompletableFuture<Void> result = deviceService.deleteDevice(deviceId);
+        CompletableFuture<Void> result = deviceService.deleteDevice(deviceId, null);
 
         assertNotNull(result);
         result.join();
-        verify(deviceRepository, times(1)).findById(deviceId);
-        verify(deviceRepository, times(1)).delete(device);
+        verify(deviceRepository, times(1)).deleteIfNotInUse(deviceId, null);
+        verify(deviceRepository, never()).findById(deviceId);
+    }
+
+    @Test
+    void deleteDevice_InUse_ShouldThrowNotAcceptable() {
+        when(deviceRepository.deleteIfNotInUse(deviceId, null)).thenReturn(Optional.empty());
+        when(deviceRepository.findById(deviceId)).thenReturn(Optional.of(device));
+
+        DeviceValidationException exception = assertThrows(DeviceValidationException.class, () -> {
+            try {
+                deviceService.deleteDevice(deviceId, null).join();
+            } catch (CompletionException e) {
+                throw (DeviceValidationException) e.getCause();
+            }
+        });
+
+        assertEquals("In-use devices cannot be deleted", exception.getMessage());
+        assertEquals(HttpStatus.NOT_ACCEPTABLE, exception.getStatus());
+    }
+
+    @Test
+    void deleteDevice_ShouldEvictCachedDevice() {
+        when(deviceRepository.findById(deviceId)).thenReturn(Optional.of(device));
+        when(deviceRepository.deleteIfNotInUse(deviceId, null)).thenReturn(Optional.of(device));
+        deviceService.getDeviceById(deviceId).join();
+
+        deviceService.deleteDevice(deviceId, null).join();
+
+        assertEquals(0, deviceCache.getSize());
     }
 
     @Test
     void deleteDevice_NonExistingId_ShouldThrowException() {
+        when(deviceRepository.deleteIfNotInUse(deviceId, null)).thenReturn(Optional.empty());
         when(deviceRepository.findById(deviceId)).thenReturn(Optional.empty());
 
        DeviceValidationException exception = assertThrows(DeviceValidationException.class, () -> {
             try {
-                deviceService.deleteDevice(deviceId).join();
+                deviceService.deleteDevice(deviceId, null).join();
             } catch (CompletionException e) {
                 throw (DeviceValidationException) e.getCause();
             }
@@ -257,6 +742,74 @@ class DeviceServiceTest {
         assertEquals("Device not found", exception.getMessage());
         assertEquals(HttpStatus.NOT_FOUND, exception.getStatus());
         verify(deviceRepository, times(1)).findById(deviceId);
-        verify(deviceRepository, never()).delete(any(Device.class));
+    }
+
+    @Test
+    void getEvents_ShouldReturnEventsInSeqOrder() {
+        when(eventRepository.findBySeqGreaterThanOrderBySeqAsc(eq(4L), any(Limit.class))).thenReturn(Arrays.asList(
+                event(5L, DeviceChangeType.UPDATED), event(6L, DeviceChangeType.DELETED)));
+
+        List<DeviceChange> events = deviceService.getEvents(4L, 10).join();
+
+        assertEquals(2, events.size());
+        assertEquals(5L, events.get(0).getId());
+        assertEquals(DeviceChangeType.DELETED, events.get(1).getType());
+        assertEquals(deviceId, events.get(1).getDevice().getId());
+    }
+
+    @Test
+    void getEvents_PrunedEvents_ShouldThrowGone() {
+        when(eventRepository.findBySeqGreaterThanOrderBySeqAsc(eq(4L), any(Limit.class)))
+                .thenReturn(Arrays.asList(event(9L, DeviceChangeType.UPDATED)));
+
+        DeviceValidationException exception = assertThrows(DeviceValidationException.class, () -> {
+            try {
+                deviceService.getEvents(4L, null).join();
+            } catch (CompletionException e) {
+                throw (DeviceValidationException) e.getCause();
+            }
+        });
+
+        assertEquals(HttpStatus.GONE, exception.getStatus());
+    }
+
+    @Test
+    void getStats_InMemoryDisabled_ShouldRollUpGroupedCounts() {
+        when(deviceRepository.countByBrandAndState()).thenReturn(Arrays.asList(count("BrandA", DeviceState.AVAILABLE, 2),
+                count("BrandA", DeviceState.IN_USE, 1), count("BrandB", DeviceState.IN_USE, 3)));
+
+        DeviceStats stats = deviceService.getStats().join();
+
+        assertEquals(6, stats.getTotal());
+        assertEquals(Long.valueOf(3), stats.getByBrand().get("BrandA"));
+        assertEquals(Long.valueOf(4), stats.getByState().get(DeviceState.IN_USE));
+        assertEquals(Long.valueOf(3), stats.getByBrandAndState().get("BrandB").get(DeviceState.IN_USE));
+        assertFalse(stats.getByState().containsKey(DeviceState.INACTIVE));
+        verify(deviceRepository, never()).findAll();
+    }
+
+    private static DeviceRepository.BrandStateCount count(String brand, DeviceState state, long count) {
+        return new DeviceRepository.BrandStateCount() {
+            @Override
+            public String getBrand() {
+                return brand;
+            }
+
+            @Override
+            public DeviceState getState() {
+                return state;
+            }
+
+            @Override
+            public long getCount() {
+                return count;
+            }
+        };
+    }
+
+    private DeviceEvent event(long seq, DeviceChangeType type) {
+        DeviceEvent event = DeviceEvent.of(type, device);
+        event.setSeq(seq);
+        return event;
     }
 }
\ No newline at end of file
@@ -0,0 +1,117 @@
+import cris.greg.io.config.DeviceProperties;
+import cris.greg.io.model.DeviceChangeType;
+import cris.greg.io.model.DeviceEvent;
+import cris.greg.io.model.DeviceState;
+import cris.greg.io.model.DeviceStats;
+import cris.greg.io.repository.DeviceEventRepository;
+import cris.greg.io.repository.DeviceRepository;
+import cris.greg.io.service.DeviceStatsCounter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class DeviceStatsCounterTest {
+
+    @Mock
+    private DeviceRepository deviceRepository;
+
+    @Mock
+    private DeviceEventRepository eventRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private DeviceStatsCounter statsCounter;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        DeviceProperties properties = new DeviceProperties();
+        properties.getStats().setInMemory(true);
+        statsCounter = new DeviceStatsCounter(deviceRepository, eventRepository, transactionManager, properties);
+        when(deviceRepository.countByBrandAndState()).thenReturn(Arrays.asList(count("BrandA", DeviceState.AVAILABLE, 2),
+                count("BrandB", DeviceState.IN_USE, 1)));
+        when(eventRepository.findLastSeq()).thenReturn(10L);
+        when(eventRepository.findUnrelayedIds()).thenReturn(Collections.singletonList(100L));
+    }
+
+    @Test
+    void refresh_ShouldApplyRelayedEventsToLoadedCounts() {
+        DeviceEvent update = event(102L, 12L, DeviceChangeType.UPDATED, "BrandA", DeviceState.IN_USE);
+        update.setPreviousBrand("BrandA");
+        update.setPreviousState(DeviceState.AVAILABLE);
+        when(eventRepository.findBySeqGreaterThanOrderBySeqAsc(eq(10L), any(Limit.class))).thenReturn(Arrays.asList(
+                event(100L, 11L, DeviceChangeType.CREATED, "BrandA", DeviceState.AVAILABLE),
+                update,
+                event(103L, 13L, DeviceChangeType.DELETED, "BrandB", DeviceState.IN_USE)));
+
+        statsCounter.refresh();
+
+        DeviceStats stats = statsCounter.getStats();
+        assertEquals(2, stats.getTotal());
+        assertEquals(Long.valueOf(1), stats.getByBrandAndState().get("BrandA").get(DeviceState.AVAILABLE));
+        assertEquals(Long.valueOf(1), stats.getByBrandAndState().get("BrandA").get(DeviceState.IN_USE));
+        assertFalse(stats.getByBrand().containsKey("BrandB"));
+        assertEquals(13L, statsCounter.getLastSeq());
+    }
+
+    @Test
+    void refresh_FlushedEvent_ShouldResetCounts() {
+        when(eventRepository.findBySeqGreaterThanOrderBySeqAsc(eq(10L), any(Limit.class))).thenReturn(Arrays.asList(
+                event(101L, 11L, DeviceChangeType.FLUSHED, null, null),
+                event(102L, 12L, DeviceChangeType.CREATED, "BrandC", DeviceState.INACTIVE)));
+
+        statsCounter.refresh();
+
+        DeviceStats stats = statsCounter.getStats();
+        assertEquals(1, stats.getTotal());
+        assertEquals(Collections.singleton("BrandC"), stats.getByBrand().keySet());
+    }
+
+    @Test
+    void refresh_PrunedEvents_ShouldReloadCounts() {
+        when(eventRepository.findBySeqGreaterThanOrderBySeqAsc(eq(10L), any(Limit.class)))
+                .thenReturn(Collections.singletonList(event(105L, 15L, DeviceChangeType.CREATED, "BrandA", DeviceState.AVAILABLE)))
+                .thenReturn(Collections.emptyList());
+
+        statsCounter.refresh();
+
+        verify(deviceRepository, times(2)).countByBrandAndState();
+        assertEquals(3, statsCounter.getStats().getTotal());
+    }
+
+    private static DeviceEvent event(long id, long seq, DeviceChangeType type, String brand, DeviceState state) {
+        return DeviceEvent.builder().id(id).seq(seq).type(type).deviceId(UUID.randomUUID()).brand(brand).state(state).build();
+    }
+
+    private static DeviceRepository.BrandStateCount count(String brand, DeviceState state, long count) {
+        return new DeviceRepository.BrandStateCount() {
+            @Override
+            public String getBrand() {
+                return brand;
+            }
+
+            @Override
+            public DeviceState getState() {
+                return state;
+            }
+
+            @Override
+            public long getCount() {
+                return count;
+            }
+        };
+    }
+}
@@ -0,0 +1,91 @@
+import cris.greg.io.config.DeviceProperties;
+import cris.greg.io.service.DeviceTaskExecutor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeviceTaskExecutorTest {
+
+    private DeviceTaskExecutor executor;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        executor.destroy();
+    }
+
+    @Test
+    void execute_ShouldNotRunMoreThanMaxConcurrencyTasks() throws InterruptedException {
+        executor = create(DeviceProperties.ExecutorType.VIRTUAL, 2, 10);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(8);
+
+        for (int i = 0; i < 8; i++) {
+            executor.execute(() -> {
+                peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                sleep(20);
+                running.decrementAndGet();
+                done.countDown();
+            });
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(2, peak.get());
+        // A task is counted once its permit is released, just after the body counted down
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (executor.getCompletedCount() < 8 && System.nanoTime() < deadline) {
+            sleep(1);
+        }
+        assertEquals(8, executor.getCompletedCount());
+    }
+
+    @Test
+    void execute_QueueFull_ShouldRejectTask() throws InterruptedException {
+        executor = create(DeviceProperties.ExecutorType.PLATFORM, 1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+
+        executor.execute(() -> {
+            started.countDown();
+            await(release);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        executor.execute(() -> { });
+
+        assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> { }));
+        assertEquals(1, executor.getQueueDepth());
+        assertEquals(1, executor.getActiveCount());
+        assertEquals(1, executor.getRejectedCount());
+        release.countDown();
+    }
+
+    private static DeviceTaskExecutor create(DeviceProperties.ExecutorType type, int maxConcurrency, int queueCapacity) {
+        DeviceProperties.Executor settings = new DeviceProperties.Executor();
+        settings.setType(type);
+        settings.setMaxConcurrency(maxConcurrency);
+        settings.setQueueCapacity(queueCapacity);
+        return DeviceTaskExecutor.create(settings);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
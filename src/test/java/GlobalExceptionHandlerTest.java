@@ -0,0 +1,57 @@
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import cris.greg.io.config.DeviceProperties;
+import cris.greg.io.exception.DeviceValidationException;
+import cris.greg.io.exception.GlobalExceptionHandler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GlobalExceptionHandlerTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final GlobalExceptionHandler handler = new GlobalExceptionHandler(new DeviceProperties(), meterRegistry, objectMapper);
+
+    @Test
+    void deviceValidationException_ShouldBeProblemDetail() throws Exception {
+        ResponseEntity<Object> response = handler.handleDeviceValidationException(
+                new DeviceValidationException("Device not found", HttpStatus.NOT_FOUND));
+
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+        assertEquals(MediaType.APPLICATION_PROBLEM_JSON, response.getHeaders().getContentType());
+        JsonNode body = objectMapper.readTree((byte[]) response.getBody());
+        assertEquals("Not Found", body.get("title").asText());
+        assertEquals(404, body.get("status").asInt());
+        assertEquals("Device not found", body.get("detail").asText());
+        assertEquals(1.0, meterRegistry.counter("device.validation.errors", "status", "404").count());
+    }
+
+    @Test
+    void repeatedError_ShouldReuseBodyWithoutStackTrace() {
+        DeviceValidationException first = new DeviceValidationException("Device not found", HttpStatus.NOT_FOUND);
+        DeviceValidationException second = new DeviceValidationException("Device not found", HttpStatus.NOT_FOUND);
+
+        Object body = handler.handleDeviceValidationException(first).getBody();
+
+        assertSame(body, handler.handleDeviceValidationException(second).getBody());
+        assertEquals(0, first.getStackTrace().length);
+        assertEquals(2.0, meterRegistry.counter("device.validation.errors", "status", "404").count());
+    }
+
+    @Test
+    void rejectedExecution_ShouldBeServiceUnavailableWithRetryAfter() throws Exception {
+        ResponseEntity<Object> response = handler.handleRejectedExecutionException(new RejectedExecutionException());
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+        assertNotNull(response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        assertEquals(503, objectMapper.readTree((byte[]) response.getBody()).get("status").asInt());
+    }
+}
@@ -0,0 +1,86 @@
+import com.fasterxml.jackson.databind.ObjectMapper;
+import cris.greg.io.config.DeviceProperties;
+import cris.greg.io.config.RateLimitFilter;
+import cris.greg.io.service.DeviceRateLimiter;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimitFilterTest {
+
+    private RateLimitFilter filter = newFilter(null);
+    private final AtomicInteger passed = new AtomicInteger();
+    private final FilterChain chain = (request, response) -> passed.incrementAndGet();
+
+    @Test
+    void clientOverItsRate_ShouldGet429WithRetryAfter() throws Exception {
+        assertEquals(200, filter(request("GET", "/api/devices/state/IN_USE", "10.0.0.1", null)).getStatus());
+        assertEquals(200, filter(request("GET", "/api/devices/state/IN_USE", "10.0.0.1", null)).getStatus());
+        MockHttpServletResponse limited = filter(request("GET", "/api/devices/state/IN_USE", "10.0.0.1", null));
+
+        assertEquals(429, limited.getStatus());
+        assertEquals("1", limited.getHeader("Retry-After"));
+        assertEquals("application/problem+json", limited.getContentType());
+        assertTrue(limited.getContentAsString().contains("\"status\":429"));
+        assertEquals(2, passed.get());
+    }
+
+    @Test
+    void rotatingApiKeys_WithoutClientHeader_ShouldShareTheAddressBucket() throws Exception {
+        assertEquals(200, filter(request("GET", "/api/devices/1", "10.0.0.1", "key-1")).getStatus());
+        assertEquals(200, filter(request("GET", "/api/devices/1", "10.0.0.1", "key-2")).getStatus());
+        assertEquals(429, filter(request("GET", "/api/devices/1", "10.0.0.1", "key-3")).getStatus());
+        assertEquals(200, filter(request("GET", "/api/devices/1", "10.0.0.2", "key-4")).getStatus());
+    }
+
+    @Test
+    void clients_WithClientHeader_ShouldBeToldApartByApiKeyThenAddress() throws Exception {
+        filter = newFilter("X-API-Key");
+        // List-all costs more than the burst, so it takes the whole bucket
+        assertEquals(200, filter(request("GET", "/api/devices", "10.0.0.1", null)).getStatus());
+        assertEquals(429, filter(request("GET", "/api/devices/1", "10.0.0.1", null)).getStatus());
+        assertEquals(200, filter(request("GET", "/api/devices/1", "10.0.0.1", "key-a")).getStatus());
+        assertEquals(200, filter(request("GET", "/api/devices/1", "10.0.0.2", "key-a")).getStatus());
+        assertEquals(429, filter(request("GET", "/api/devices/1", "10.0.0.2", "key-a")).getStatus());
+        assertEquals(200, filter(request("GET", "/api/devices/1", "10.0.0.2", null)).getStatus());
+    }
+
+    @Test
+    void encodedOrParameterisedListAll_ShouldCostLikeListAll() throws Exception {
+        assertEquals(200, filter(request("GET", "/api/device%73", "10.0.0.1", null)).getStatus());
+        assertEquals(429, filter(request("GET", "/api/devices/1", "10.0.0.1", null)).getStatus());
+        assertEquals(200, filter(request("GET", "/api/devices;x", "10.0.0.2", null)).getStatus());
+        assertEquals(429, filter(request("GET", "/api/devices/1", "10.0.0.2", null)).getStatus());
+    }
+
+    private MockHttpServletResponse filter(MockHttpServletRequest request) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, chain);
+        return response;
+    }
+
+    private static MockHttpServletRequest request(String method, String path, String address, String apiKey) {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, path);
+        request.setRemoteAddr(address);
+        if (apiKey != null) {
+            request.addHeader("X-API-Key", apiKey);
+        }
+        return request;
+    }
+
+    private static RateLimitFilter newFilter(String clientHeader) {
+        DeviceProperties properties = new DeviceProperties();
+        DeviceProperties.RateLimit settings = properties.getRateLimit();
+        settings.setEnabled(true);
+        settings.setRate(1);
+        settings.setBurst(2);
+        settings.setExpensiveCost(3);
+        settings.setClientHeader(clientHeader);
+        return new RateLimitFilter(new DeviceRateLimiter(properties), settings, new ObjectMapper());
+    }
+}
@@ -0,0 +1,209 @@
+
+import cris.greg.io.config.DeviceProperties;
+import cris.greg.io.exception.DeviceValidationException;
+import cris.greg.io.model.Device;
+import cris.greg.io.model.DevicePage;
+import cris.greg.io.model.DeviceState;
+import cris.greg.io.model.DeviceUpdate;
+import cris.greg.io.repository.DeviceEventRepository;
+import cris.greg.io.repository.DeviceRepository;
+import cris.greg.io.repository.ReactiveDeviceRepository;
+import cris.greg.io.service.DeviceCache;
+import cris.greg.io.service.DeviceReadCoalescer;
+import cris.greg.io.service.DeviceChangeFeed;
+import cris.greg.io.service.DeviceCursor;
+import cris.greg.io.service.DeviceStatsCounter;
+import cris.greg.io.service.ReactiveDeviceService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.PlatformTransactionManager;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ReactiveDeviceServiceTest {
+
+    @Mock
+    private ReactiveDeviceRepository deviceRepository;
+
+    private ReactiveDeviceService deviceService;
+    private DeviceCache deviceCache;
+
+    private Device device;
+    private UUID deviceId;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        DeviceProperties properties = new DeviceProperties();
+        deviceCache = new DeviceCache(properties);
+        deviceService = new ReactiveDeviceService(deviceRepository, properties, deviceCache, new DeviceChangeFeed(properties),
+                new DeviceStatsCounter(mock(DeviceRepository.class), mock(DeviceEventRepository.class),
+                        mock(PlatformTransactionManager.class), properties), () -> deviceId, new DeviceReadCoalescer(properties));
+        deviceId = UUID.randomUUID();
+        device = Device.builder()
+                .id(deviceId)
+                .name("Device1")
+                .brand("BrandA")
+                .state(DeviceState.AVAILABLE)
+                .creationTime(LocalDateTime.of(2025, 1, 1, 12, 0))
+                .version(0L)
+                .build();
+    }
+
+    @Test
+    void saveDevice_InvalidState_ShouldFailWithoutInsert() {
+        device.setState(null);
+
+        DeviceValidationException exception = assertThrows(DeviceValidationException.class,
+                () -> deviceService.saveDevice(device).block());
+
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getStatus());
+        verify(deviceRepository, never()).insert(any(Device.class));
+    }
+
+    @Test
+    void getDevices_MoreDevicesThanLimit_ShouldReturnNextCursor() {
+        List<Device> devices = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            devices.add(Device.builder().id(UUID.randomUUID()).name("Device" + i).brand("BrandA")
+                    .state(DeviceState.AVAILABLE).creationTime(LocalDateTime.of(2025, 1, 1, 12, i)).build());
+        }
+        when(deviceRepository.findPage(null, "BrandA", null, null, null, 3)).thenReturn(Flux.fromIterable(devices));
+
+        DevicePage page = deviceService.getDevices("BrandA", null, null, null, 2).block();
+
+        assertEquals(devices.subList(0, 2), page.getDevices());
+        assertEquals(devices.get(1).getId(), DeviceCursor.decode(page.getNextCursor()).getId());
+    }
+
+    @Test
+    void getDevices_FirstPageEmpty_ShouldFailWithNotFound() {
+        when(deviceRepository.findPage(null, null, DeviceState.IN_USE, null, null, 101)).thenReturn(Flux.empty());
+
+        DeviceValidationException exception = assertThrows(DeviceValidationException.class,
+                () -> deviceService.getDevices(null, DeviceState.IN_USE, null, null, null).block());
+
+        assertEquals("No devices found for state IN_USE", exception.getMessage());
+        assertEquals(HttpStatus.NOT_FOUND, exception.getStatus());
+    }
+
+    @Test
+    void getDevices_FirstPageEmptyForBrand_ShouldFailWithNotFound() {
+        when(deviceRepository.findPage(null, "BrandA", null, null, null, 101)).thenReturn(Flux.empty());
+
+        DeviceValidationException exception = assertThrows(DeviceValidationException.class,
+                () -> deviceService.getDevices("BrandA", null, null, null, null).block());
+
+        assertEquals("No devices found for brand BrandA", exception.getMessage());
+        assertEquals(HttpStatus.NOT_FOUND, exception.getStatus());
+    }
+
+    @Test
+    void getDevices_InvalidLimit_ShouldFailWithoutQuery() {
+        assertThrows(DeviceValidationException.class, () -> deviceService.getDevices(null, null, null, null, 0).block());
+
+        verifyNoInteractions(deviceRepository);
+    }
+
+    @Test
+    void getDeviceById_SecondLookup_ShouldBeAnsweredFromCache() {
+        when(deviceRepository.findById(deviceId)).thenReturn(Mono.just(device));
+
+        assertEquals(device, deviceService.getDeviceById(deviceId).block());
+        assertEquals(device, deviceService.getDeviceById(deviceId).block());
+
+        verify(deviceRepository, times(1)).findById(deviceId);
+    }
+
+    @Test
+    void getDeviceById_UpdatedWhileLoading_ShouldKeepTheUpdatedDevice() {
+        CompletableFuture<Device> slowRead = new CompletableFuture<>();
+        Device updated = Device.builder().id(deviceId).name("Device1").brand("BrandA").state(DeviceState.IN_USE)
+                .creationTime(device.getCreationTime()).version(1L).build();
+        when(deviceRepository.findById(deviceId)).thenReturn(Mono.fromFuture(slowRead));
+        when(deviceRepository.updateState(deviceId, "IN_USE", null))
+                .thenReturn(Mono.just(new DeviceUpdate(updated, "BrandA", DeviceState.AVAILABLE)));
+
+        CompletableFuture<Device> lookup = deviceService.getDeviceById(deviceId).toFuture();
+        deviceService.updateDeviceState(deviceId, DeviceState.IN_USE, null).block();
+        slowRead.complete(device);
+
+        assertEquals(device, lookup.join());
+        assertEquals(Optional.of(updated), deviceCache.getIfPresent(deviceId));
+        assertEquals(updated, deviceService.getDeviceById(deviceId).block());
+    }
+
+    @Test
+    void getDeviceById_DeletedWhileLoading_ShouldNotCacheTheDeletedDevice() {
+        CompletableFuture<Device> slowRead = new CompletableFuture<>();
+        when(deviceRepository.findById(deviceId)).thenReturn(Mono.fromFuture(slowRead));
+        when(deviceRepository.deleteIfNotInUse(deviceId, null)).thenReturn(Mono.just(device));
+
+        CompletableFuture<Device> lookup = deviceService.getDeviceById(deviceId).toFuture();
+        deviceService.deleteDevice(deviceId, null).block();
+        slowRead.complete(device);
+
+        assertEquals(device, lookup.join());
+        assertNull(deviceCache.getIfPresent(deviceId));
+    }
+
+    @Test
+    void getDeviceById_Missing_ShouldFailWithNotFound() {
+        when(deviceRepository.findById(deviceId)).thenReturn(Mono.empty());
+
+        DeviceValidationException exception = assertThrows(DeviceValidationException.class,
+                () -> deviceService.getDeviceById(deviceId).block());
+
+        assertEquals(HttpStatus.NOT_FOUND, exception.getStatus());
+    }
+
+    @Test
+    void updateDevice_StaleVersion_ShouldFailWithPreconditionFailed() {
+        device.setVersion(3L);
+        when(deviceRepository.updateIfAllowed(deviceId, "Device2", "BrandA", "AVAILABLE", 2L)).thenReturn(Mono.empty());
+        when(deviceRepository.findById(deviceId)).thenReturn(Mono.just(device));
+        Device update = Device.builder().name("Device2").brand("BrandA").state(DeviceState.AVAILABLE).build();
+
+        DeviceValidationException exception = assertThrows(DeviceValidationException.class,
+                () -> deviceService.updateDevice(deviceId, update, 2L).block());
+
+        assertEquals(HttpStatus.PRECONDITION_FAILED, exception.getStatus());
+    }
+
+    @Test
+    void patchDevice_InUse_ShouldFailWithNotAcceptable() {
+        device.setState(DeviceState.IN_USE);
+        when(deviceRepository.patchIfAllowed(deviceId, "Device2", null, null, null)).thenReturn(Mono.empty());
+        when(deviceRepository.findById(deviceId)).thenReturn(Mono.just(device));
+
+        DeviceValidationException exception = assertThrows(DeviceValidationException.class,
+                () -> deviceService.patchDevice(deviceId, Device.builder().name("Device2").build(), null).block());
+
+        assertEquals(HttpStatus.NOT_ACCEPTABLE, exception.getStatus());
+    }
+
+    @Test
+    void deleteDevice_Deleted_ShouldEvictCachedDevice() {
+        deviceCache.put(device);
+        when(deviceRepository.deleteIfNotInUse(deviceId, null)).thenReturn(Mono.just(device));
+        when(deviceRepository.findById(deviceId)).thenReturn(Mono.empty());
+
+        deviceService.deleteDevice(deviceId, null).block();
+
+        assertNull(deviceCache.getIfPresent(deviceId));
+    }
+}
@@ -0,0 +1,89 @@
+import cris.greg.io.config.DeviceProperties;
+import cris.greg.io.config.ReplicaRoutingDataSource;
+import cris.greg.io.service.ReplicaReads;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ReplicaRoutingDataSourceTest {
+
+    private final DataSource primary = mock(DataSource.class);
+    private final DataSource replica1 = mock(DataSource.class);
+    private final DataSource replica2 = mock(DataSource.class);
+    private final Connection primaryConnection = mock(Connection.class);
+    private final Connection replica1Connection = mock(Connection.class);
+    private final Connection replica2Connection = mock(Connection.class);
+    private final ReplicaRoutingDataSource dataSource = newDataSource();
+
+    @AfterEach
+    void tearDown() {
+        ReplicaReads.setPrimaryRequired(false);
+    }
+
+    @Test
+    void reads_ShouldGoToReplicasInTurnAndEverythingElseToPrimary() throws Exception {
+        assertSame(primaryConnection, connect());
+        assertSame(replica1Connection, connectForRead());
+        assertSame(replica2Connection, connectForRead());
+        assertSame(replica1Connection, connectForRead());
+        assertEquals(3, dataSource.getReplicaReadCount());
+    }
+
+    @Test
+    void failedReplica_ShouldBeSkippedThenPrimaryUsedWhenNoneLeft() throws Exception {
+        when(replica1.getConnection()).thenThrow(new SQLException("down"));
+
+        assertSame(replica2Connection, connectForRead());
+        assertSame(replica2Connection, connectForRead());
+        assertEquals(1, dataSource.getHealthyCount());
+        verify(replica1, times(1)).getConnection();
+
+        when(replica2.getConnection()).thenThrow(new SQLException("down"));
+        assertSame(primaryConnection, connectForRead());
+        assertEquals(0, dataSource.getHealthyCount());
+        assertEquals(1, dataSource.getFallbackCount());
+    }
+
+    @Test
+    void readYourWrites_ShouldKeepReadsOnPrimary() throws Exception {
+        ReplicaReads.setPrimaryRequired(true);
+
+        assertSame(primaryConnection, connectForRead());
+        assertEquals(0, dataSource.getReplicaReadCount());
+    }
+
+    private ReplicaRoutingDataSource newDataSource() {
+        try {
+            when(primary.getConnection()).thenReturn(primaryConnection);
+            when(replica1.getConnection()).thenReturn(replica1Connection);
+            when(replica2.getConnection()).thenReturn(replica2Connection);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+        DeviceProperties.Replicas settings = new DeviceProperties.Replicas();
+        settings.setUrls(Arrays.asList("jdbc:postgresql://replica-1/devices", "jdbc:postgresql://replica-2/devices"));
+        return new ReplicaRoutingDataSource(primary, Arrays.asList(replica1, replica2), settings);
+    }
+
+    // The physical connection the proxy would take on the first statement
+    private Connection connect() throws SQLException {
+        return dataSource.getTargetDataSource().getConnection();
+    }
+
+    private Connection connectForRead() throws SQLException {
+        return ReplicaReads.route(() -> {
+            try {
+                return connect();
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }).get();
+    }
+}
@@ -0,0 +1,35 @@
+import cris.greg.io.service.TimeOrderedDeviceIdGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimeOrderedDeviceIdGeneratorTest {
+
+    private final TimeOrderedDeviceIdGenerator generator = new TimeOrderedDeviceIdGenerator();
+
+    @Test
+    void next_ShouldBeVersion7WithCurrentTimestamp() {
+        long before = System.currentTimeMillis();
+        UUID id = generator.next();
+        long after = System.currentTimeMillis();
+
+        assertEquals(7, id.version());
+        assertEquals(2, id.variant());
+        long millis = id.getMostSignificantBits() >>> 16;
+        assertTrue(millis >= before && millis <= after + 1, "timestamp " + millis);
+        assertEquals(id, UUID.fromString(id.toString()));
+    }
+
+    @Test
+    void next_ManyInSameMillisecond_ShouldStrictlyIncrease() {
+        UUID previous = generator.next();
+        for (int i = 0; i < 100_000; i++) {
+            UUID id = generator.next();
+            // Postgres compares uuid bytes unsigned, as the string form does
+            assertTrue(id.toString().compareTo(previous.toString()) > 0, previous + " then " + id);
+            previous = id;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+
+import com.github.luben.zstd.ZstdInputStream;
+import cris.greg.io.config.ZstdCompressionFilter;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.web.server.Compression;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ZstdCompressionFilterTest {
+
+    private final ZstdCompressionFilter filter = new ZstdCompressionFilter(compression());
+
+    @Test
+    void largeJson_AcceptingZstd_ShouldBeCompressed() throws Exception {
+        byte[] body = body(10000);
+        MockHttpServletResponse response = filter(request("gzip, zstd"), "application/json", body);
+
+        assertEquals("zstd", response.getHeader("Content-Encoding"));
+        assertTrue(response.getContentAsByteArray().length < body.length);
+        assertArrayEquals(body, new ZstdInputStream(new ByteArrayInputStream(response.getContentAsByteArray())).readAllBytes());
+    }
+
+    @Test
+    void smallJson_AcceptingZstd_ShouldBeSentWithContentLength() throws Exception {
+        byte[] body = body(100);
+        MockHttpServletResponse response = filter(request("zstd"), "application/json", body);
+
+        assertNull(response.getHeader("Content-Encoding"));
+        assertEquals(body.length, response.getContentLength());
+        assertArrayEquals(body, response.getContentAsByteArray());
+    }
+
+    @Test
+    void largeBody_NotCompressibleOrNotAccepted_ShouldBeSentAsIs() throws Exception {
+        byte[] body = body(10000);
+
+        MockHttpServletResponse image = filter(request("zstd"), "image/png", body);
+        MockHttpServletResponse refused = filter(request("gzip, zstd;q=0"), "application/json", body);
+
+        assertNull(image.getHeader("Content-Encoding"));
+        assertArrayEquals(body, image.getContentAsByteArray());
+        assertNull(refused.getHeader("Content-Encoding"));
+        assertArrayEquals(body, refused.getContentAsByteArray());
+    }
+
+    @Test
+    void malformedWeight_ShouldSendBodyAsIs() throws Exception {
+        byte[] body = body(10000);
+        MockHttpServletResponse response = filter(request("gzip, zstd;q=abc"), "application/json", body);
+
+        assertEquals(200, response.getStatus());
+        assertNull(response.getHeader("Content-Encoding"));
+        assertArrayEquals(body, response.getContentAsByteArray());
+    }
+
+    private MockHttpServletResponse filter(MockHttpServletRequest request, String contentType, byte[] body) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        FilterChain chain = (req, res) -> {
+            res.setContentType(contentType);
+            res.getOutputStream().write(body);
+            res.getOutputStream().flush();
+        };
+        filter.doFilter(request, response, chain);
+        return response;
+    }
+
+    private static MockHttpServletRequest request(String acceptEncoding) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/devices");
+        request.addHeader("Accept-Encoding", acceptEncoding);
+        return request;
+    }
+
+    private static byte[] body(int length) {
+        char[] chars = new char[length];
+        Arrays.fill(chars, 'a');
+        return new String(chars).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Compression compression() {
+        Compression compression = new Compression();
+        compression.setMimeTypes(new String[]{"application/json"});
+        compression.setMinResponseSize(DataSize.ofKilobytes(2));
+        return compression;
+    }
+}